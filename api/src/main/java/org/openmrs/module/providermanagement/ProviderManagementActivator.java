@@ -16,14 +16,23 @@ package org.openmrs.module.providermanagement;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.module.providermanagement.job.BulkJobRunner;
+import org.openmrs.module.providermanagement.suggestion.SuggestionEvaluationExecutor;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
  */
-public class ProviderManagementActivator implements ModuleActivator {
+public class ProviderManagementActivator implements ModuleActivator, DaemonTokenAware {
 	
 	protected Log log = LogFactory.getLog(getClass());
+
+	private DaemonToken daemonToken;
 		
 	/**
 	 * @see ModuleActivator#willRefreshContext()
@@ -50,6 +59,9 @@ public class ProviderManagementActivator implements ModuleActivator {
 	 * @see ModuleActivator#started()
 	 */
 	public void started() {
+		// pick up any bulk jobs that were interrupted when the server was last stopped
+		BulkJobRunner.resumeUnfinishedJobs();
+		buildProviderNameTokens();
 		log.info("Provider Management Module started");
 	}
 	
@@ -64,7 +76,38 @@ public class ProviderManagementActivator implements ModuleActivator {
 	 * @see ModuleActivator#stopped()
 	 */
 	public void stopped() {
+		SuggestionEvaluationExecutor.shutdown();
 		log.info("Provider Management Module stopped");
 	}
+
+	/**
+	 * @see DaemonTokenAware#setDaemonToken(DaemonToken)
+	 */
+	public void setDaemonToken(DaemonToken token) {
+		daemonToken = token;
+		BulkJobRunner.setDaemonToken(token);
+	}
+
+	/**
+	 * Builds the provider name search index in the background the first time the module is started (after that it is
+	 * kept up to date as names and providers are saved); until it is built, searching by name falls back to matching
+	 * the person names directly
+	 */
+	private void buildProviderNameTokens() {
+		if (daemonToken == null) {
+			log.warn("Unable to build the provider name search index, as no daemon token has been set");
+			return;
+		}
+
+		Daemon.runInDaemonThread(new Runnable() {
+			@Override
+			public void run() {
+				int indexed = Context.getService(ProviderManagementService.class).rebuildProviderNameTokens(true);
+				if (indexed > 0) {
+					log.info("Indexed the names of " + indexed + " providers");
+				}
+			}
+		}, daemonToken);
+	}
 		
 }
@@ -38,4 +38,7 @@ public class ProviderManagementConstants {
 
     public static final String GP_RESTRICTED_ROLES = "providermanagement.restrictedRoles";
 
+    // set to true once the provider name search index has been completely built
+    public static final String GP_PROVIDER_NAME_TOKENS_BUILT = "providermanagement.providerNameTokensBuilt";
+
 }
@@ -15,91 +15,298 @@
 package org.openmrs.module.providermanagement;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.openmrs.PersonAttributeType;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.cache.GlobalPropertyValueCache;
+import org.openmrs.module.providermanagement.cache.GlobalPropertyValueCache.Property;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Accessors for the global properties used by this module
+ *
+ * The parsed values are cached, and only re-read when the global property changes (see
+ * {@link ProviderManagementGlobalPropertyListener}); the accessors return copies of any lists or maps, so callers are
+ * free to modify them. Controllers that need several values should use {@link #getSnapshot()} instead.
+ *
+ * Only the uuids of the person attribute types are cached, and the types themselves are looked up on each call, so that
+ * no Hibernate entity is ever shared between sessions (or kept once its session has closed)
+ */
 public class ProviderManagementGlobalProperties {
 
+    private static final GlobalPropertyValueCache cache = new GlobalPropertyValueCache();
+
+    private static final Property<List<String>> PERSON_ATTRIBUTE_TYPES = new Property<List<String>>("providermanagement.personAttributeTypes") {
+        @Override
+        public List<String> parse(String propertyValue) {
+            List<String> l = new ArrayList<String>();
+            if (StringUtils.isNotBlank(propertyValue)) {
+                for (String s : propertyValue.split("\\|")) {
+                    l.add(s);
+                }
+            }
+            return Collections.unmodifiableList(l);
+        }
+    };
+
+    private static final Property<Map<String,String>> PROVIDER_SEARCH_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.providerSearchDisplayFields") {
+        @Override
+        protected Map<String, String> strip(Map<String, String> map) {
+            return stripLeadingPersonReferences(map);
+        }
+    };
+
+    private static final Property<Map<String,String>> PROVIDER_LIST_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.providerListDisplayFields");
+
+    private static final Property<Map<String,String>> HISTORICAL_PROVIDER_LIST_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.historicalProviderListDisplayFields");
+
+    private static final Property<Map<String,String>> PATIENT_LIST_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.patientListDisplayFields");
+
+    private static final Property<Map<String,String>> HISTORICAL_PATIENT_LIST_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.historicalPatientListDisplayFields");
+
+    private static final Property<Map<String,String>> PATIENT_SEARCH_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.patientSearchDisplayFields") {
+        @Override
+        protected Map<String, String> strip(Map<String, String> map) {
+            return stripLeadingPatientReferences(map);
+        }
+    };
+
+    private static final Property<Map<String,String>> PERSON_SEARCH_DISPLAY_FIELDS = new DisplayFieldsProperty("providermanagement.personSearchDisplayFields") {
+        @Override
+        protected Map<String, String> strip(Map<String, String> map) {
+            return stripLeadingPersonReferences(map);
+        }
+    };
+
+    private static final Property<String> ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE = new Property<String>("providermanagement.advancedSearchPersonAttributeType") {
+        @Override
+        public String parse(String propertyValue) {
+            if (StringUtils.isNotBlank(propertyValue)) {
+                return propertyValue;
+            }
+            else {
+                return null;
+            }
+        }
+    };
+
+    private static final Property<String> ADDRESS_WIDGET = new Property<String>("providermanagement.addressWidget") {
+        @Override
+        public String parse(String propertyValue) {
+            if (StringUtils.isNotBlank(propertyValue)) {
+                return propertyValue;
+            }
+            else {
+                return "personAddress";
+            }
+        }
+    };
+
+    private static final Property<Boolean> RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES = new Property<Boolean>("providermanagement.restrictSearchToProvidersWithProviderRoles") {
+        @Override
+        public Boolean parse(String propertyValue) {
+            return stringToBoolean(propertyValue);
+        }
+    };
+
+    private static final Property<Integer> SUGGESTION_EVALUATION_THREADS = new Property<Integer>("providermanagement.suggestionEvaluationThreads") {
+        @Override
+        public Integer parse(String propertyValue) {
+            return Math.max(NumberUtils.toInt(StringUtils.trim(propertyValue), 1), 1);
+        }
+    };
+
+    private static final Property<Long> SUGGESTION_EVALUATION_TIMEOUT = new Property<Long>("providermanagement.suggestionEvaluationTimeout") {
+        @Override
+        public Long parse(String propertyValue) {
+            return Math.max(NumberUtils.toLong(StringUtils.trim(propertyValue), 0), 0);
+        }
+    };
+
+    private static final Property<Integer> SUGGESTION_CACHE_SIZE = new Property<Integer>("providermanagement.suggestionCacheSize") {
+        @Override
+        public Integer parse(String propertyValue) {
+            return Math.max(NumberUtils.toInt(StringUtils.trim(propertyValue), 0), 0);
+        }
+    };
+
+    private static final Property<Long> SUGGESTION_CACHE_MAX_AGE = new Property<Long>("providermanagement.suggestionCacheMaxAge") {
+        @Override
+        public Long parse(String propertyValue) {
+            return Math.max(NumberUtils.toLong(StringUtils.trim(propertyValue), 60), 0) * 60 * 1000;
+        }
+    };
+
+    private static final Property<Integer> BULK_JOB_CHUNK_SIZE = new Property<Integer>("providermanagement.bulkJobChunkSize") {
+        @Override
+        public Integer parse(String propertyValue) {
+            return Math.max(NumberUtils.toInt(StringUtils.trim(propertyValue), 100), 1);
+        }
+    };
+
+    private static final Property<Integer> SEARCH_PAGE_SIZE = new Property<Integer>("providermanagement.searchPageSize") {
+        @Override
+        public Integer parse(String propertyValue) {
+            return Math.max(NumberUtils.toInt(StringUtils.trim(propertyValue), 25), 1);
+        }
+    };
+
+    /**
+     * @return the current values of the global properties used by the user interface
+     */
+    public static ProviderManagementGlobalPropertySnapshot getSnapshot() {
+        return new ProviderManagementGlobalPropertySnapshot(Collections.unmodifiableList(getPersonAttributeTypes(cache.get(PERSON_ATTRIBUTE_TYPES))),
+                cache.get(PROVIDER_SEARCH_DISPLAY_FIELDS), cache.get(PROVIDER_LIST_DISPLAY_FIELDS),
+                cache.get(HISTORICAL_PROVIDER_LIST_DISPLAY_FIELDS), cache.get(PATIENT_LIST_DISPLAY_FIELDS),
+                cache.get(HISTORICAL_PATIENT_LIST_DISPLAY_FIELDS), cache.get(PATIENT_SEARCH_DISPLAY_FIELDS),
+                cache.get(PERSON_SEARCH_DISPLAY_FIELDS), getPersonAttributeType(cache.get(ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE)),
+                cache.get(ADDRESS_WIDGET), cache.get(RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES),
+                cache.get(SEARCH_PAGE_SIZE));
+    }
+
+    /**
+     * Drops the cached value of the specified global property, so that it is re-read the next time it is used
+     *
+     * @param propertyName
+     */
+    public static void refresh(String propertyName) {
+        cache.invalidate(propertyName);
+    }
+
+    /**
+     * Drops the cached values of all global properties
+     */
+    public static void refreshAll() {
+        cache.invalidateAll();
+    }
+
     /**
      * @return person attribute types to be displayed on the provider dashboard
      */
     public static final List<PersonAttributeType> GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES() {
-        String propertyValue = Context.getAdministrationService().getGlobalProperty("providermanagement.personAttributeTypes");
-        List<PersonAttributeType> l = new ArrayList<PersonAttributeType>();
-        if (StringUtils.isNotBlank(propertyValue)) {
-            for (String s : propertyValue.split("\\|")) {
-                PersonAttributeType t = Context.getPersonService().getPersonAttributeTypeByUuid(s);
-                if (t != null) {
-                    l.add(t);
-                }
-            }
-        }
-        return l;
+        return getPersonAttributeTypes(cache.get(PERSON_ATTRIBUTE_TYPES));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS() {
-        return stripLeadingPersonReferences(globalPropertyToMap("providermanagement.providerSearchDisplayFields"));
+        return new LinkedHashMap<String,String>(cache.get(PROVIDER_SEARCH_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS() {
-        return globalPropertyToMap("providermanagement.providerListDisplayFields");
+        return new LinkedHashMap<String,String>(cache.get(PROVIDER_LIST_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_HISTORICAL_PROVIDER_LIST_DISPLAY_FIELDS() {
-        return globalPropertyToMap("providermanagement.historicalProviderListDisplayFields");
+        return new LinkedHashMap<String,String>(cache.get(HISTORICAL_PROVIDER_LIST_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_PATIENT_LIST_DISPLAY_FIELDS() {
-        return globalPropertyToMap("providermanagement.patientListDisplayFields");
+        return new LinkedHashMap<String,String>(cache.get(PATIENT_LIST_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_HISTORICAL_PATIENT_LIST_DISPLAY_FIELDS() {
-        return globalPropertyToMap("providermanagement.historicalPatientListDisplayFields");
+        return new LinkedHashMap<String,String>(cache.get(HISTORICAL_PATIENT_LIST_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_PATIENT_SEARCH_DISPLAY_FIELDS() {
-        return stripLeadingPatientReferences(globalPropertyToMap("providermanagement.patientSearchDisplayFields"));
+        return new LinkedHashMap<String,String>(cache.get(PATIENT_SEARCH_DISPLAY_FIELDS));
     }
 
     public static final Map<String,String> GLOBAL_PROPERTY_PERSON_SEARCH_DISPLAY_FIELDS() {
-        return stripLeadingPersonReferences(globalPropertyToMap("providermanagement.personSearchDisplayFields"));
+        return new LinkedHashMap<String,String>(cache.get(PERSON_SEARCH_DISPLAY_FIELDS));
     }
 
     public static final PersonAttributeType GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE() {
-        String propertyValue = Context.getAdministrationService().getGlobalProperty("providermanagement.advancedSearchPersonAttributeType");
-
-        if (StringUtils.isNotBlank(propertyValue)) {
-            return Context.getPersonService().getPersonAttributeTypeByUuid(propertyValue);
-        }
-        else {
-            return null;
-        }
+        return getPersonAttributeType(cache.get(ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE));
     }
 
     public static final String GLOBAL_PROPERTY_ADDRESS_WIDGET() {
-        String propertyValue = Context.getAdministrationService().getGlobalProperty("providermanagement.addressWidget");
-        if (StringUtils.isNotBlank(propertyValue)) {
-            return propertyValue;
-        }
-        else {
-            return "personAddress";
-        }
+        return cache.get(ADDRESS_WIDGET);
     }
 
     public static final Boolean GLOBAL_PROPERTY_RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES() {
-        String propertyValue = Context.getAdministrationService().getGlobalProperty("providermanagement.restrictSearchToProvidersWithProviderRoles");
-        return stringToBoolean(propertyValue);
+        return cache.get(RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES);
+    }
+
+    /**
+     * @return the maximum number of suggestion rules to evaluate concurrently (1 by default, as configured in config.xml);
+     * if 1 (or if the property is blank), rules are evaluated one after another in the calling thread
+     */
+    public static final Integer GLOBAL_PROPERTY_SUGGESTION_EVALUATION_THREADS() {
+        return cache.get(SUGGESTION_EVALUATION_THREADS);
+    }
+
+    /**
+     * @return the time, in milliseconds, that a single suggestion rule is allowed to run for when rules are evaluated
+     * concurrently (5000 by default, as configured in config.xml); 0 (or a blank property) means no limit
+     */
+    public static final Long GLOBAL_PROPERTY_SUGGESTION_EVALUATION_TIMEOUT() {
+        return cache.get(SUGGESTION_EVALUATION_TIMEOUT);
+    }
+
+    /**
+     * @return the maximum number of patient/relationship type pairs to store provider suggestion results for;
+     * 0 (the default if not set) disables storing suggestion results
+     */
+    public static final Integer GLOBAL_PROPERTY_SUGGESTION_CACHE_SIZE() {
+        return cache.get(SUGGESTION_CACHE_SIZE);
+    }
+
+    /**
+     * @return the time, in milliseconds, that stored provider suggestion results are used for; configured
+     * in minutes, 60 if not set
+     */
+    public static final Long GLOBAL_PROPERTY_SUGGESTION_CACHE_MAX_AGE() {
+        return cache.get(SUGGESTION_CACHE_MAX_AGE);
+    }
+
+    /**
+     * @return the number of items a bulk job processes (and commits) at a time; requests with more items than this
+     * are run in the background; 100 if not set
+     */
+    public static final Integer GLOBAL_PROPERTY_BULK_JOB_CHUNK_SIZE() {
+        return cache.get(BULK_JOB_CHUNK_SIZE);
+    }
+
+    /**
+     * @return the number of results provider search widgets fetch (and display) at a time; 25 if not set
+     */
+    public static final Integer GLOBAL_PROPERTY_SEARCH_PAGE_SIZE() {
+        return cache.get(SEARCH_PAGE_SIZE);
+    }
+
+    /**
+     * Looks up the person attribute types with the specified uuids, skipping any that don't exist
+     */
+    private static List<PersonAttributeType> getPersonAttributeTypes(List<String> uuids) {
+        List<PersonAttributeType> types = new ArrayList<PersonAttributeType>();
+        for (String uuid : uuids) {
+            PersonAttributeType type = Context.getPersonService().getPersonAttributeTypeByUuid(uuid);
+            if (type != null) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Looks up the person attribute type with the specified uuid; null if the uuid is null
+     */
+    private static PersonAttributeType getPersonAttributeType(String uuid) {
+        return uuid != null ? Context.getPersonService().getPersonAttributeTypeByUuid(uuid) : null;
     }
 
     public static final Map<String,String> globalPropertyToMap(String globalPropertyName) {
 
         // load the appropriate global property
-        String propertyValue = Context.getAdministrationService().getGlobalProperty(globalPropertyName);
+        return stringToMap(Context.getAdministrationService().getGlobalProperty(globalPropertyName));
+    }
+
+    private static Map<String,String> stringToMap(String propertyValue) {
 
         Map<String,String> map = new LinkedHashMap<String,String>();
         if (StringUtils.isNotBlank(propertyValue)) {
@@ -184,4 +391,24 @@ public class ProviderManagementGlobalProperties {
             return null;
         }
     }
+
+    /**
+     * A global property in the "label:field|label:field" format used to configure the fields displayed in lists
+     * and search results
+     */
+    private static class DisplayFieldsProperty extends Property<Map<String,String>> {
+
+        private DisplayFieldsProperty(String name) {
+            super(name);
+        }
+
+        @Override
+        public Map<String, String> parse(String propertyValue) {
+            return Collections.unmodifiableMap(strip(stringToMap(propertyValue)));
+        }
+
+        protected Map<String,String> strip(Map<String,String> map) {
+            return map;
+        }
+    }
 }
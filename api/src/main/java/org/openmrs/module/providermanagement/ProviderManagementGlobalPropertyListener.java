@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.GlobalPropertyListener;
+
+/**
+ * Refreshes the cached value of a providermanagement.* global property (see {@link ProviderManagementGlobalProperties})
+ * whenever it is saved or purged; registers itself with the administration service when the module context is started
+ */
+public class ProviderManagementGlobalPropertyListener implements GlobalPropertyListener {
+
+    private AdministrationService administrationService;
+
+    public void setAdministrationService(AdministrationService administrationService) {
+        this.administrationService = administrationService;
+    }
+
+    public void register() {
+        administrationService.addGlobalPropertyListener(this);
+    }
+
+    public void unregister() {
+        administrationService.removeGlobalPropertyListener(this);
+        ProviderManagementGlobalProperties.refreshAll();
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return propertyName != null && propertyName.startsWith("providermanagement.");
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        ProviderManagementGlobalProperties.refresh(newValue.getProperty());
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        ProviderManagementGlobalProperties.refresh(propertyName);
+    }
+}
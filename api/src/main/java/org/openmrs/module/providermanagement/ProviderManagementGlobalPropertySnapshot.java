@@ -0,0 +1,136 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.openmrs.PersonAttributeType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of the global properties used by the user interface, as of when the snapshot was taken (see
+ * {@link ProviderManagementGlobalProperties#getSnapshot()}); the lists and maps are unmodifiable
+ */
+public class ProviderManagementGlobalPropertySnapshot {
+
+    private final List<PersonAttributeType> personAttributeTypes;
+
+    private final Map<String,String> providerSearchDisplayFields;
+
+    private final Map<String,String> providerListDisplayFields;
+
+    private final Map<String,String> historicalProviderListDisplayFields;
+
+    private final Map<String,String> patientListDisplayFields;
+
+    private final Map<String,String> historicalPatientListDisplayFields;
+
+    private final Map<String,String> patientSearchDisplayFields;
+
+    private final Map<String,String> personSearchDisplayFields;
+
+    private final PersonAttributeType advancedSearchPersonAttributeType;
+
+    private final String addressWidget;
+
+    private final Boolean restrictSearchToProvidersWithProviderRoles;
+
+    private final Integer searchPageSize;
+
+    ProviderManagementGlobalPropertySnapshot(List<PersonAttributeType> personAttributeTypes,
+                                             Map<String, String> providerSearchDisplayFields,
+                                             Map<String, String> providerListDisplayFields,
+                                             Map<String, String> historicalProviderListDisplayFields,
+                                             Map<String, String> patientListDisplayFields,
+                                             Map<String, String> historicalPatientListDisplayFields,
+                                             Map<String, String> patientSearchDisplayFields,
+                                             Map<String, String> personSearchDisplayFields,
+                                             PersonAttributeType advancedSearchPersonAttributeType,
+                                             String addressWidget,
+                                             Boolean restrictSearchToProvidersWithProviderRoles,
+                                             Integer searchPageSize) {
+        this.personAttributeTypes = personAttributeTypes;
+        this.providerSearchDisplayFields = providerSearchDisplayFields;
+        this.providerListDisplayFields = providerListDisplayFields;
+        this.historicalProviderListDisplayFields = historicalProviderListDisplayFields;
+        this.patientListDisplayFields = patientListDisplayFields;
+        this.historicalPatientListDisplayFields = historicalPatientListDisplayFields;
+        this.patientSearchDisplayFields = patientSearchDisplayFields;
+        this.personSearchDisplayFields = personSearchDisplayFields;
+        this.advancedSearchPersonAttributeType = advancedSearchPersonAttributeType;
+        this.addressWidget = addressWidget;
+        this.restrictSearchToProvidersWithProviderRoles = restrictSearchToProvidersWithProviderRoles;
+        this.searchPageSize = searchPageSize;
+    }
+
+    /**
+     * @return person attribute types to be displayed on the provider dashboard
+     */
+    public List<PersonAttributeType> getPersonAttributeTypes() {
+        return personAttributeTypes;
+    }
+
+    public Map<String, String> getProviderSearchDisplayFields() {
+        return providerSearchDisplayFields;
+    }
+
+    public Map<String, String> getProviderListDisplayFields() {
+        return providerListDisplayFields;
+    }
+
+    public Map<String, String> getHistoricalProviderListDisplayFields() {
+        return historicalProviderListDisplayFields;
+    }
+
+    public Map<String, String> getPatientListDisplayFields() {
+        return patientListDisplayFields;
+    }
+
+    public Map<String, String> getHistoricalPatientListDisplayFields() {
+        return historicalPatientListDisplayFields;
+    }
+
+    public Map<String, String> getPatientSearchDisplayFields() {
+        return patientSearchDisplayFields;
+    }
+
+    public Map<String, String> getPersonSearchDisplayFields() {
+        return personSearchDisplayFields;
+    }
+
+    public PersonAttributeType getAdvancedSearchPersonAttributeType() {
+        return advancedSearchPersonAttributeType;
+    }
+
+    public String getAddressWidget() {
+        return addressWidget;
+    }
+
+    public Boolean getRestrictSearchToProvidersWithProviderRoles() {
+        return restrictSearchToProvidersWithProviderRoles;
+    }
+
+    /**
+     * @return true if provider searches should only return providers with provider roles
+     */
+    public boolean isRestrictSearchToProvidersWithProviderRoles() {
+        return restrictSearchToProvidersWithProviderRoles != null && restrictSearchToProvidersWithProviderRoles;
+    }
+
+    public Integer getSearchPageSize() {
+        return searchPageSize;
+    }
+}
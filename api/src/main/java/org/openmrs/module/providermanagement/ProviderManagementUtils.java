@@ -17,12 +17,9 @@ package org.openmrs.module.providermanagement;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang3.StringUtils;
-import org.openmrs.Patient;
-import org.openmrs.Person;
 import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
 import org.openmrs.api.APIException;
-import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.exception.InvalidRelationshipTypeException;
@@ -34,7 +31,9 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ProviderManagementUtils {
     /**
@@ -118,36 +117,7 @@ public class ProviderManagementUtils {
             throws PersonIsNotProviderException {
 
         ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
-        List<ProviderPersonRelationship> supervisors = new ArrayList<ProviderPersonRelationship>();
-        Person person = provider.getPerson();
-        List<Person> supervisorPersons = providerManagementService.getSupervisorsForProvider(person);
-        for (Person supervisor : supervisorPersons) {
-            List<Provider> providersByPerson = providerManagementService.getProvidersByPerson(supervisor, true);
-            if (providersByPerson !=null && providersByPerson.size() > 0) {
-                RelationshipType supervisorRelationshipType = providerManagementService.getSupervisorRelationshipType();
-                Relationship supervisorRelationship = null;
-                Provider supervisorProvider = providersByPerson.get(0);
-                List<Relationship> relationships = Context.getPersonService().getRelationships(supervisor,
-                        person, supervisorRelationshipType, null);
-                if (relationships != null && relationships.size() > 0 ){
-                    for (Relationship relationship : relationships) {
-                        if ( ( supervisorRelationship == null && relationship.getEndDate() == null ) ||
-                                (supervisorRelationship != null && relationship.getEndDate() == null
-                                        && relationship.getStartDate().after(supervisorRelationship.getStartDate()))) {
-                            // select the most recent active relationship
-                            supervisorRelationship = relationship;
-                        }
-                    }
-                }
-                supervisors.add(new ProviderPersonRelationship(
-                        supervisorProvider.getPerson(),
-                        supervisorProvider.getIdentifier(),
-                        supervisor.getId(),
-                        supervisorRelationship,
-                        supervisorRelationshipType));
-            }
-        }
-        return supervisors;
+        return toProviderPersonRelationships(providerManagementService.getSupervisorRelationshipsForProvider(provider.getPerson()), true);
     }
 
     /**
@@ -160,36 +130,52 @@ public class ProviderManagementUtils {
             throws PersonIsNotProviderException {
 
         ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
-        List<ProviderPersonRelationship> supervisees = new ArrayList<ProviderPersonRelationship>();
-        Person person = provider.getPerson();
-        List<Person> superviseesForSupervisor = providerManagementService.getSuperviseesForSupervisor(person);
-        for (Person supervisee : superviseesForSupervisor) {
-            List<Provider> providersByPerson = providerManagementService.getProvidersByPerson(supervisee, true);
-            if (providersByPerson !=null && providersByPerson.size() > 0) {
-                RelationshipType supervisorRelationshipType = providerManagementService.getSupervisorRelationshipType();
-                Relationship supervisorRelationship = null;
-                Provider supervisorProvider = providersByPerson.get(0);
-                List<Relationship> relationships = Context.getPersonService().getRelationships(person, supervisee,
-                        supervisorRelationshipType, null);
-                if (relationships != null && relationships.size() > 0 ){
-                    for (Relationship relationship : relationships) {
-                        if ( ( supervisorRelationship == null && relationship.getEndDate() == null ) ||
-                                (supervisorRelationship != null && relationship.getEndDate() == null
-                                        && relationship.getStartDate().after(supervisorRelationship.getStartDate()))) {
-                            // select the most recent active relationship
-                            supervisorRelationship = relationship;
-                        }
-                    }
-                }
-                supervisees.add(new ProviderPersonRelationship(
-                        supervisorProvider.getPerson(),
-                        supervisorProvider.getIdentifier(),
-                        supervisee.getId(),
-                        supervisorRelationship,
+        return toProviderPersonRelationships(providerManagementService.getSuperviseeRelationshipsForSupervisor(provider.getPerson()), false);
+    }
+
+    /**
+     * Resolves the (current and historical) supervision relationships of a provider into one entry per supervisor or
+     * supervisee that is a provider, with the most recent active relationship with that person (or null, if none
+     * are active); the providers of all the persons are fetched with a single query, and the persons aren't loaded
+     *
+     * @param relationships the supervision relationships of the provider
+     * @param supervisors true if the relationships are with the supervisors of the provider, false if with the supervisees
+     * @return List<ProviderPersonRelationship>
+     */
+    private static List<ProviderPersonRelationship> toProviderPersonRelationships(List<Relationship> relationships, boolean supervisors) {
+
+        ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
+        RelationshipType supervisorRelationshipType = providerManagementService.getSupervisorRelationshipType();
+
+        // key on person id, as getting the id doesn't load the person
+        Map<Integer, Relationship> latestRelationships = new LinkedHashMap<Integer, Relationship>();
+        for (Relationship relationship : relationships) {
+            Integer personId = (supervisors ? relationship.getPersonA() : relationship.getPersonB()).getPersonId();
+            Relationship latest = latestRelationships.get(personId);
+
+            // select the most recent active relationship
+            if (relationship.getEndDate() == null && (latest == null || (relationship.getStartDate() != null
+                    && (latest.getStartDate() == null || relationship.getStartDate().after(latest.getStartDate()))))) {
+                latest = relationship;
+            }
+            latestRelationships.put(personId, latest);
+        }
+
+        List<ProviderPersonRelationship> result = new ArrayList<ProviderPersonRelationship>();
+        Map<Integer, List<Provider>> providersByPersonId = providerManagementService.getProvidersByPersonIds(latestRelationships.keySet(), true);
+
+        for (Map.Entry<Integer, Relationship> entry : latestRelationships.entrySet()) {
+            List<Provider> providers = providersByPersonId.get(entry.getKey());
+            if (providers != null && providers.size() > 0) {
+                result.add(new ProviderPersonRelationship(
+                        providers.get(0).getPerson(),
+                        providers.get(0).getIdentifier(),
+                        entry.getKey(),
+                        entry.getValue(),
                         supervisorRelationshipType));
             }
         }
-        return supervisees;
+        return result;
     }
 
     /**
@@ -202,27 +188,19 @@ public class ProviderManagementUtils {
     public static List<ProviderPersonRelationship> getAssignedPatients(Provider provider)
             throws InvalidRelationshipTypeException, PersonIsNotProviderException {
 
-        ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
-        PatientService patientService = Context.getService(PatientService.class);
-        List<ProviderPersonRelationship> patientsList = new ArrayList<ProviderPersonRelationship>();
+        List<RelationshipType> relationshipTypes = new ArrayList<RelationshipType>();
         for (RelationshipType relationshipType : provider.getProviderRole().getRelationshipTypes() ) {
             if (!relationshipType.isRetired()) {
-                for (Relationship relationship : providerManagementService.getPatientRelationshipsForProvider(provider.getPerson(), relationshipType, null)) {
-                    if (relationship.getPersonB().isPatient()) {
-                        Patient temp = patientService.getPatient(relationship.getPersonB().getId());
-                        if (!temp.isVoided()) {
-                            patientsList.add(new ProviderPersonRelationship(
-                                    temp,
-                                    (temp.getPatientIdentifier() != null) ? temp.getPatientIdentifier().getIdentifier() : null,
-                                    temp.getPatientId(),
-                                    relationship,
-                                    relationshipType));
-                        }
-                    }
-                }
+                relationshipTypes.add(relationshipType);
             }
         }
-        return patientsList;
+
+        if (relationshipTypes.isEmpty()) {
+            return new ArrayList<ProviderPersonRelationship>();
+        }
+
+        // fetch the relationships, patients and identifiers for all the relationship types in one go
+        return Context.getService(ProviderManagementService.class).getPatientRelationshipsOfProvider(provider.getPerson(), relationshipTypes, null);
     }
 
     /**
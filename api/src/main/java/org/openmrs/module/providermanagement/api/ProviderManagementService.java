@@ -14,6 +14,7 @@
 package org.openmrs.module.providermanagement.api;
 
 import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
@@ -35,9 +36,18 @@ import org.openmrs.module.providermanagement.exception.ProviderDoesNotSupportRel
 import org.openmrs.module.providermanagement.exception.ProviderNotAssignedToSupervisorException;
 import org.openmrs.module.providermanagement.exception.ProviderRoleInUseException;
 import org.openmrs.module.providermanagement.exception.SourceProviderSameAsDestinationProviderException;
-
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.relationship.AssignmentOutcome;
+import org.openmrs.module.providermanagement.relationship.PatientOfProvider;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
+
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Provider Management Service
@@ -168,6 +178,106 @@ public interface ProviderManagementService extends OpenmrsService {
     @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
     public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired);
 
+    /**
+     * Gets a page of the list of providers that match a specified name OR identifier, restricting based on specified
+     * provider roles (If query is null, empty list is returned)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param start index of the first result to return (null for 0)
+     * @param length maximum number of results to return (null for no limit)
+     * @return result list of providers
+     * @should return the requested page of providers
+     * @should return empty list if query null
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length);
+
+    /**
+     * Gets the number of providers that match a specified name OR identifier, restricting based on specified provider
+     * roles (If query is null, 0 is returned)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @return the number of providers
+     * @should return the number of matching providers
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Integer getCountOfProviders(String query, List<ProviderRole> providerRoles, Boolean includeRetired);
+
+    /**
+     * Gets a page of the list of providers that match a specified name OR identifier, restricting based on specified
+     * provider roles, and leaving out the current supervisees of a supervisor and/or a specific provider; the exclusions
+     * are part of the query, so pages are always full and agree with getCountOfProviders (If query is null, empty
+     * list is returned)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are left out
+     * @param excludeProvider if not null, this provider is left out
+     * @param start index of the first result to return (null for 0)
+     * @param length maximum number of results to return (null for no limit)
+     * @return result list of providers
+     * @should exclude supervisees of supervisor and excluded provider before paging
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                              Person excludeSuperviseesOf, Person excludeProvider, Integer start, Integer length);
+
+    /**
+     * Gets the number of providers that match a specified name OR identifier, restricting based on specified provider
+     * roles, and leaving out the current supervisees of a supervisor and/or a specific provider (If query is null, 0 is
+     * returned)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are not counted
+     * @param excludeProvider if not null, this provider is not counted
+     * @return the number of providers
+     * @should not count supervisees of supervisor and excluded provider
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Integer getCountOfProviders(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                       Person excludeSuperviseesOf, Person excludeProvider);
+
+    /**
+     * Passes the providers that match a specified name OR identifier to the specified handler, a batch at a time and
+     * ordered by name, without ever holding all the results in memory (If query is null, nothing is passed)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param handler receives the results
+     * @throws IOException if thrown by the handler
+     * @should pass all matching providers to the handler
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public void streamProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired, ProviderSearchResultHandler handler)
+            throws IOException;
+
+    /**
+     * Passes the providers that match a specified name OR identifier to the specified handler, a batch at a time and
+     * ordered by name, leaving out the current supervisees of a supervisor and/or a specific provider (If query is
+     * null, nothing is passed)
+     *
+     * @param query name or identifier to search on (does a like 'query%' search)
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are left out
+     * @param excludeProvider if not null, this provider is left out
+     * @param handler receives the results
+     * @throws IOException if thrown by the handler
+     * @should not pass supervisees of supervisor and excluded provider to the handler
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public void streamProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                         Person excludeSuperviseesOf, Person excludeProvider, ProviderSearchResultHandler handler)
+            throws IOException;
+
     /**
      * Gets the list of providers that match the specified name, identifier, and provider roles
      * (If any field is null it is ignored)
@@ -196,6 +306,40 @@ public interface ProviderManagementService extends OpenmrsService {
     @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
      public List<Person> getProvidersAsPersons(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired);
 
+    /**
+     * Gets a page of the list of providers that match the specified name, identifier, and provider roles
+     * (If any field is null it is ignored)
+     *
+     * @param name name to search on (does an ilike 'name%' search against name fields)
+     * @param identifier provider identifier (does an ilike 'identifier%' search)
+     * @param personAddress address to match on (does an ilike 'addressField%' search against each field that is not null)
+     * @param personAttribute person attribute to match on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param start index of the first result to return (null for 0)
+     * @param length maximum number of results to return (null for no limit)
+     * @return result list of providers
+     * @should return the requested page of providers
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getProvidersAsPersons(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length);
+
+    /**
+     * Gets the number of providers that match the specified name, identifier, and provider roles
+     * (If any field is null it is ignored)
+     *
+     * @param name name to search on (does an ilike 'name%' search against name fields)
+     * @param identifier provider identifier (does an ilike 'identifier%' search)
+     * @param personAddress address to match on (does an ilike 'addressField%' search against each field that is not null)
+     * @param personAttribute person attribute to match on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @return the number of providers
+     * @should return the number of matching providers
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Integer getCountOfProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired);
+
     /**
      * Returns the provider roles associated with the specified provider
      *
@@ -274,6 +418,22 @@ public interface ProviderManagementService extends OpenmrsService {
     @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
     public List<Person> getProvidersAsPersonsByRelationshipType(RelationshipType relationshipType);
 
+    /**
+     * Gets those of the specified persons that are providers that support the specified relationship type;
+     * the equivalent of intersecting the persons with {@link #getProvidersAsPersonsByRelationshipType(RelationshipType)},
+     * but without loading all the providers that support the relationship type
+     *  (Excludes retired providers)
+     *
+     * @param relationshipType
+     * @param personIds the ids of the persons to check
+     * @return the persons that are providers that support the specified relationship type
+     * @should return only persons that are providers that support the relationship type
+     * @should return empty list if no person ids passed
+     * @should throw API Exception if relationship type is null
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getProvidersAsPersonsByRelationshipType(RelationshipType relationshipType, Collection<Integer> personIds);
+
     /**
      * Gets all the provider roles that can server as supervisors of the specified provider
      *  (Excludes retired providers)
@@ -304,6 +464,19 @@ public interface ProviderManagementService extends OpenmrsService {
      @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
     public boolean isProvider(Person person);
 
+    /**
+     * Returns the ids of those passed persons that have one or more associated providers (unretired or retired);
+     * this is the bulk equivalent of {@link #isProvider(Person)}, answered with a single query per chunk of persons
+     *
+     * @param persons
+     * @return the person ids of the persons that are providers; an empty set if persons is null or empty
+     * @should return ids of persons that are providers
+     * @should include persons only associated with retired providers
+     * @should return empty set if no persons passed
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Set<Integer> getProviderPersonIds(Collection<Person> persons);
+
     /**
      * Returns whether or not the passed provider has the specified provider role
      *
@@ -376,6 +549,30 @@ public interface ProviderManagementService extends OpenmrsService {
             throws ProviderDoesNotSupportRelationshipTypeException, PatientAlreadyAssignedToProviderException,
             PersonIsNotProviderException;
 
+    /**
+     * Assigns all the specified patients to the provider using the specified relationship type, as
+     * assignPatientToProvider would for each patient in turn, but validating the provider once and checking for
+     * existing relationships with a single query (per chunk of patients); each new relationship is still validated
+     * and inserted on its own
+     *
+     * Rather than failing the whole assignment, voided patients and patients already assigned to the provider are
+     * skipped, and reported as such in the returned outcomes
+     *
+     * @param patients
+     * @param provider
+     * @param relationshipType
+     * @param date the date the relationships should start (if null, uses the current date)
+     * @return map from each of the specified patients to the outcome of assigning them
+     * @should assign patients to provider
+     * @should skip patients already assigned to provider
+     * @should skip voided patients
+     * @should fail if provider does not support the specified relationship type
+     * @should fail if provider is null
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public Map<Patient, AssignmentOutcome> assignPatientsToProvider(Collection<Patient> patients, Person provider, RelationshipType relationshipType, Date date)
+            throws ProviderDoesNotSupportRelationshipTypeException, PersonIsNotProviderException, DateCannotBeInFutureException;
+
     /**
      * Unassigns the patient from the provider on the specified date
      *
@@ -439,6 +636,22 @@ public interface ProviderManagementService extends OpenmrsService {
     public void unassignAllPatientsFromProvider(Person provider)
             throws PersonIsNotProviderException;
 
+    /**
+     * Unassigned all patients currently assigned to this patient by ending all active provider role relationships on
+     * the current date
+     *
+     * If clearSession is true, the relationships are ended a chunk at a time, and the Hibernate session is flushed
+     * and cleared after each chunk, so that the memory used doesn't grow with the number of relationships; note that
+     * this detaches any objects the caller loaded before calling this method
+     *
+     * @param provider
+     * @param clearSession
+     * @should end all active provider role relationships and clear session if clear session is true
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public void unassignAllPatientsFromProvider(Person provider, boolean clearSession)
+            throws PersonIsNotProviderException;
+
     // TODO: we will probably need a "purge" option for purging relationships created by accident, (will need to be implemented when we take on PROV-1)
 
     // TODO: unit test these two methods (see PROV-51)
@@ -509,8 +722,56 @@ public interface ProviderManagementService extends OpenmrsService {
     public List<Patient> getPatientsOfProvider(Person provider, RelationshipType relationshipType)
             throws PersonIsNotProviderException, InvalidRelationshipTypeException;
 
+    /**
+     * Gets a page of the patients of the specified provider with the specified relationship type on the specified date,
+     * projected to just their id, preferred name and preferred identifier (or first identifier, if none is preferred);
+     * intended for paging through large caseloads without loading full Patient objects (use getPatientsOfProviderCount
+     * to get the total number of patients)
+     * Voided patients are excluded
+     *
+     * @param provider
+     * @param relationshipType limits returned patients to those related to the provider by a specific relationship type (if null, returns all patients linked by any provider relationships)
+     * @param date the date the relationship must be active on (if null, returns patients linked on any date)
+     * @param start index of the first patient to return
+     * @param length maximum number of patients to return
+     * @param sortField one of familyName, givenName, identifier or patientId (if null, sorts by familyName)
+     * @return the page of patients associated with the specified provider
+     * @throws PersonIsNotProviderException
+     * @throws InvalidRelationshipTypeException
+     * @should get page of patients of provider sorted by the specified field
+     * @should use first identifier of patients without a preferred identifier
+     * @should fail if provider is null
+     * @should fail if relationship type is not a provider/patient relationship type
+     * @should fail if sort field is invalid
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<PatientOfProvider> getPatientsOfProvider(Person provider, RelationshipType relationshipType, Date date, int start, int length, String sortField)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException;
+
+    /**
+     * Gets the relationships between the specified provider and their (non-voided) patients via any of the specified
+     * relationship types on the specified date, each along with the patient and their preferred identifier (or their
+     * first identifier, if none is preferred); everything is loaded in a single query, so this is preferable to
+     * looping over getPatientRelationshipsForProvider when listing a provider's patients
+     *
+     * @param provider
+     * @param relationshipTypes the relationship types to include (if null, includes all provider/patient relationship types)
+     * @param date the date the relationship must be active on (if null, returns relationships active on any date)
+     * @return the relationships, ordered by relationship type and then relationship id
+     * @throws PersonIsNotProviderException
+     * @throws InvalidRelationshipTypeException
+     * @should get patient relationships of provider with preferred identifiers
+     * @should use first identifier of patients without a preferred identifier
+     * @should fail if provider is null
+     * @should fail if relationship type is not a provider/patient relationship type
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<ProviderPersonRelationship> getPatientRelationshipsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException;
+
     /**
      * Gets a count of all the patients that are patients of the specified provider with the specified relationship type on the specified date
+     * (Voided patients are not counted; a patient related to the provider via multiple relationship types is only counted once)
      *
      * @param provider
      * @param relationshipType limits returned patients to those related to the provider by a specific relationship type (if null, returns all patients linked by any provider relationships)
@@ -523,6 +784,51 @@ public interface ProviderManagementService extends OpenmrsService {
     public int getPatientsOfProviderCount(Person provider, RelationshipType relationshipType, Date date)
             throws PersonIsNotProviderException, InvalidRelationshipTypeException;
 
+    /**
+     * Gets the non-voided patients with the specified ids using a single query (per chunk of ids),
+     * for use when rendering lists of patients related to a provider
+     *
+     * @param patientIds
+     * @return map from patient id to patient; voided or unknown patients are not included
+     * @should get patients by id
+     * @should return empty map if no ids passed
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Map<Integer, Patient> getPatients(Collection<Integer> patientIds);
+
+    /**
+     * Gets the non-voided patient programs of the patients with the specified ids using a single query (per chunk of ids),
+     * grouped by patient id
+     *
+     * @param patientIds
+     * @param includeCompleted whether or not to include patient programs that have been completed (if false, only active programs are returned)
+     * @return map from patient id to the patient's programs ordered by enrollment date; patients without programs map to an empty list
+     * @should get patient programs grouped by patient
+     * @should exclude completed programs if includeCompleted is false
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Map<Integer, List<PatientProgram>> getPatientPrograms(Collection<Integer> patientIds, boolean includeCompleted);
+
+    /**
+     * Gets counts of the patients of each of the specified providers, grouped by relationship type, on the specified date;
+     * the counts are calculated in the database, so this is suitable for providers with large caseloads
+     * Voided patients and voided relationships are not counted
+     *
+     * @param providers
+     * @param relationshipTypes the relationship types to count (if null, counts all provider/patient relationship types)
+     * @param date
+     * @return map from each provider to a map from relationship type to count of patients (types without patients map to zero)
+     * @throws PersonIsNotProviderException if any of the persons is not a provider
+     * @throws InvalidRelationshipTypeException if any of the relationship types is not a provider/patient relationship type
+     * @should get counts of patients for each provider grouped by relationship type
+     * @should not count voided patients
+     * @should fail if person is not a provider
+     * @should fail if relationship type is not a provider/patient relationship type
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Map<Person, Map<RelationshipType, Integer>> getPatientsOfProvidersCount(Collection<Person> providers, Collection<RelationshipType> relationshipTypes, Date date)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException;
+
 
     /**
      * Returns all the provider relationships associated with the given patient
@@ -637,11 +943,14 @@ public interface ProviderManagementService extends OpenmrsService {
      * Transfers all patients currently assigned to the source provider with the specified relationship type to the destination provider on the specified date
      * (ie., unassigns all patients with the specified relationship type from the source provider and assigns them to the destination provider)
      * (uses current date if date = null)
+     * Voided patients are not patients of the provider as far as getPatientsOfProvider is concerned, so (as has always been the case)
+     * any relationships with voided patients are left with the source provider
      *
      * @param sourceProvider
      * @param destinationProvider
      * @param relationshipType
      * @param date
+     * @should leave relationships with voided patients with source provider
      * @should fail if sourceProvider is null
      * @should fail if destinationProvider is null
      * @should fail if sourceProvider is not associated with a person
@@ -756,6 +1065,29 @@ public interface ProviderManagementService extends OpenmrsService {
             throws PersonIsNotProviderException, InvalidSupervisorException,
             ProviderAlreadyAssignedToSupervisorException;
 
+    /**
+     * Assigns all the specified providers to the supervisor on the specified date, as assignProviderToSupervisor
+     * would for each provider in turn, but working out the roles the supervisor can supervise once, and fetching
+     * the roles of all the providers and their existing relationships with the supervisor with a single query each
+     *
+     * Rather than failing the whole assignment, providers that are not providers, that the supervisor cannot
+     * supervise or that are already assigned to the supervisor are skipped, and reported as such in the returned
+     * outcomes
+     *
+     * @param providers
+     * @param supervisor
+     * @param date the date the relationships should start (if null, uses the current date)
+     * @return map from each of the specified providers to the outcome of assigning them
+     * @should assign providers to supervisor
+     * @should skip providers already assigned to supervisor
+     * @should skip providers the supervisor cannot supervise
+     * @should fail if supervisor is null
+     * @should fail if supervisor is not a provider
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public Map<Person, AssignmentOutcome> assignProvidersToSupervisor(Collection<Person> providers, Person supervisor, Date date)
+            throws PersonIsNotProviderException, DateCannotBeInFutureException;
+
     /**
      * Unassigns the provider from the supervisor on the specified date
      *
@@ -799,6 +1131,19 @@ public interface ProviderManagementService extends OpenmrsService {
     public void unassignAllSupervisorsFromProvider(Person provider)
             throws PersonIsNotProviderException;
 
+    /**
+     * Unassignes all of the supervisors currently associated with the passed provider; if clearSession is true, the
+     * Hibernate session is flushed and cleared after each chunk of relationships, as with
+     * unassignAllPatientsFromProvider(Person, boolean)
+     *
+     * @param provider
+     * @param clearSession
+     * @should end all supervisor relationships and clear session if clear session is true
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public void unassignAllSupervisorsFromProvider(Person provider, boolean clearSession)
+            throws PersonIsNotProviderException;
+
     /**
      * Unassignes all of the providers currently associated with the passed supervisor
      *
@@ -810,6 +1155,19 @@ public interface ProviderManagementService extends OpenmrsService {
     public void unassignAllProvidersFromSupervisor(Person supervisor)
             throws PersonIsNotProviderException;
 
+    /**
+     * Unassignes all of the providers currently associated with the passed supervisor; if clearSession is true, the
+     * Hibernate session is flushed and cleared after each chunk of relationships, as with
+     * unassignAllPatientsFromProvider(Person, boolean)
+     *
+     * @param supervisor
+     * @param clearSession
+     * @should end all supervisee relationships and clear session if clear session is true
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public void unassignAllProvidersFromSupervisor(Person supervisor, boolean clearSession)
+            throws PersonIsNotProviderException;
+
 
     /**
      * Returns all the relationships this provider has with supervisors on the given date
@@ -917,6 +1275,55 @@ public interface ProviderManagementService extends OpenmrsService {
     public List<Person> getSuperviseesForSupervisor(Person supervisor)
             throws PersonIsNotProviderException;
 
+    /**
+     * Returns all the persons supervised by this supervisor on the specified date, either directly or via one or more
+     * intermediate supervisors, walking the whole hierarchy in memory (see SupervisionGraph) rather than querying
+     * each level separately
+     *
+     * @param supervisor
+     * @param date if null, the current date
+     * @param maxDepth the number of levels to descend (1 for direct supervisees only); if null, all levels
+     * @return the supervisees, nearest levels first
+     * @throws PersonIsNotProviderException
+     * @should fail if supervisor is null
+     * @should fail if supervisor is not a provider
+     * @should return supervisees at all levels
+     * @should only return supervisees down to the maximum depth
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getAllSuperviseesForSupervisor(Person supervisor, Date date, Integer maxDepth)
+            throws PersonIsNotProviderException;
+
+    /**
+     * Returns all the persons that supervise this provider on the specified date, either directly or via one or more
+     * intermediate supervisors
+     *
+     * @param provider
+     * @param date if null, the current date
+     * @param maxDepth the number of levels to ascend (1 for direct supervisors only); if null, all levels
+     * @return the supervisors, nearest levels first
+     * @throws PersonIsNotProviderException
+     * @should fail if provider is null
+     * @should fail if provider is not a provider
+     * @should return supervisors at all levels
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<Person> getAllSupervisorsForProvider(Person provider, Date date, Integer maxDepth)
+            throws PersonIsNotProviderException;
+
+    /**
+     * Returns true if assigning the specified provider to the specified supervisor today would make a provider
+     * (directly or indirectly) their own supervisor
+     *
+     * @param provider
+     * @param supervisor
+     * @return true if the assignment would create a supervision cycle, false otherwise
+     * @should return true if supervisor is supervised by provider at any level
+     * @should return false if supervisor is not supervised by provider
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public boolean wouldCreateSupervisionCycle(Person provider, Person supervisor);
+
 
     /**
      * Transfers the specified supervises from the source supervisor to the destination supervisor on the specified date
@@ -975,4 +1382,150 @@ public interface ProviderManagementService extends OpenmrsService {
      */
     @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
     public List<Provider> getProvidersByPerson(Person person, boolean includeRetired);
-}
\ No newline at end of file
+
+    /**
+     * Bulk version of {@link #getProvidersByPerson(Person, boolean)}; fetches the providers of all the passed persons
+     * with a single query per chunk of persons
+     * Should generally only be used internally, since the idea is this API "hides" knowledge of the Provider object
+     *
+     * @param persons
+     * @param includeRetired whether or not to include retired providers
+     * @return map from each passed person to its providers (ordered by provider id); persons without providers map to an empty list
+     * @should return providers for each person
+     * @should map persons that are not providers to an empty list
+     * @should not include retired providers unless requested
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Map<Person, List<Provider>> getProvidersByPersons(Collection<Person> persons, boolean includeRetired);
+
+    /**
+     * Version of {@link #getProvidersByPersons(Collection, boolean)} keyed on person id, for callers that only have
+     * (possibly uninitialized) references to the persons; the persons are not loaded
+     *
+     * @param personIds
+     * @param includeRetired whether or not to include retired providers
+     * @return map from each passed person id to the providers of that person (ordered by provider id); persons without providers map to an empty list
+     * @should return providers for each person id
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public Map<Integer, List<Provider>> getProvidersByPersonIds(Collection<Integer> personIds, boolean includeRetired);
+
+    /**
+     * Gets the bulk job referenced by the specified id
+     *
+     * @param id
+     * @return the bulk job referenced by the specified id
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public BulkJob getBulkJob(Integer id);
+
+    /**
+     * Gets the bulk job referenced by the specified uuid
+     *
+     * @param uuid
+     * @return the bulk job referenced by the specified uuid
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public BulkJob getBulkJobByUuid(String uuid);
+
+    /**
+     * Gets all the bulk jobs that are pending or running (or were running when the server was stopped)
+     *
+     * @return the unfinished bulk jobs, oldest first
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<BulkJob> getUnfinishedBulkJobs();
+
+    /**
+     * Gets the bulk jobs that are pending or running (or were running when the server was stopped) that involve the
+     * specified provider, either as the provider or as the destination provider
+     *
+     * @param provider
+     * @return the unfinished bulk jobs of the provider, oldest first
+     * @should get unfinished bulk jobs involving provider
+     * @should fail if provider null
+     */
+    @Authorized(value = { ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE, ProviderManagementConstants.PROVIDER_MANAGEMENT_API_READ_ONLY_PRIVILEGE }, requireAll = false)
+    public List<BulkJob> getUnfinishedBulkJobs(Person provider);
+
+    /**
+     * Saves the specified bulk job
+     *
+     * @param job
+     * @return the saved bulk job
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public BulkJob saveBulkJob(BulkJob job);
+
+    /**
+     * Submits the specified transfer, unassignment or retirement; the items of the job should be the ids of the patients
+     * (TRANSFER_PATIENTS, REMOVE_PATIENTS) or supervisees (TRANSFER_SUPERVISEES) to process, and are set by this method
+     * for RETIRE_PROVIDER jobs (the provider's current patient and supervision relationships)
+     *
+     * If the job has no more items than the providermanagement.bulkJobChunkSize global property, it is processed right away,
+     * within the current transaction; otherwise it is saved as pending, and is processed a chunk at a time in the background
+     * once the current transaction commits, each chunk in its own transaction
+     *
+     * Items that cannot be processed (for instance a patient no longer assigned to the source provider) are recorded as
+     * failures of the job, and do not prevent the other items from being processed
+     *
+     * @param job
+     * @return the saved job; check its status to see whether it has been processed
+     * @throws PersonIsNotProviderException
+     * @throws DateCannotBeInFutureException
+     * @should process job right away if it is no larger than chunk size
+     * @should save larger job as pending
+     * @should fail if provider is not a provider
+     * @should fail if date is in the future
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public BulkJob submitBulkJob(BulkJob job)
+            throws PersonIsNotProviderException, DateCannotBeInFutureException;
+
+    /**
+     * Processes the next chunk of the items of the specified job, and saves its progress; when the last chunk has been
+     * processed the job is marked as completed (and, for RETIRE_PROVIDER jobs, the provider is retired)
+     *
+     * A job the providers of which are no longer valid (for instance if the destination provider has been retired) is
+     * marked as failed
+     *
+     * Chunks may be processed in the background as the daemon user, so the relationships created and changed are
+     * recorded as created and changed by the user that submitted the job
+     *
+     * @param job
+     * @return true if there are still items to process
+     * @should process next chunk of items and record progress
+     * @should record failures and continue
+     * @should retire provider after last chunk of retire provider job
+     * @should not assign supervisees that are not assigned to source supervisor
+     * @should record changes as made by user that submitted job
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public boolean processBulkJobChunk(BulkJob job);
+
+    /**
+     * Updates the name search tokens of the specified person: if the person is a provider, the tokens are replaced by
+     * the tokens of the person's current (non-voided) names, otherwise nothing is done (any tokens left behind by a
+     * purged provider are never matched, as name searches only return providers, and are dropped by the next rebuild);
+     * called whenever a person, patient, person name or provider is saved, so requires no privilege
+     *
+     * @param person
+     * @should index names of provider
+     * @should do nothing if person is not a provider
+     */
+    public void updateProviderNameTokens(Person person);
+
+    /**
+     * Rebuilds the name search tokens used to search for providers by name from the names of all providers; name
+     * searches only use the tokens once a rebuild has been committed (see the providermanagement.providerNameTokensBuilt
+     * global property), and match the person names directly until then
+     *
+     * @param onlyIfNotBuilt if true, does nothing if the tokens have already been built
+     * @return the number of persons indexed
+     * @should index provider names so that name search uses them
+     * @should do nothing if only if not built and tokens have been built
+     * @should not use tokens for name search until they have been built
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public int rebuildProviderNameTokens(boolean onlyIfNotBuilt);
+}
@@ -123,6 +123,18 @@ public interface ProviderSuggestionService {
     public List<Person> suggestProvidersForPatient(Patient patient, RelationshipType relationshipType)
             throws InvalidRelationshipTypeException, SuggestionEvaluationException;
 
+    /**
+     * Re-evaluates the suggestion rules for the stored provider suggestion results (see the
+     * providermanagement.suggestionCacheSize global property) that are more than half-way through their
+     * maximum age, least-recently-used first; intended to be called from a scheduled task
+     *
+     * @param maxEntries the maximum number of results to refresh
+     * @return the number of results refreshed
+     * @should refresh nothing if suggestion results are not stored
+     */
+    @Authorized(ProviderManagementConstants.PROVIDER_MANAGEMENT_API_PRIVILEGE)
+    public int refreshStoredProviderSuggestions(int maxEntries);
+
     /**
      * Gets the Supervision Suggestion referenced by the specified id
      *
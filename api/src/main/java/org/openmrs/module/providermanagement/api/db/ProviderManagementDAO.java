@@ -13,18 +13,32 @@
  */
 package org.openmrs.module.providermanagement.api.db;
 
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
+import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
 import org.openmrs.module.providermanagement.Provider;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.job.BulkJobStatus;
+import org.openmrs.module.providermanagement.relationship.PatientOfProvider;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
+import org.openmrs.module.providermanagement.search.ProviderNameToken;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
 import org.openmrs.module.providermanagement.suggestion.ProviderSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestionType;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *  Database methods for {@link ProviderManagementService}.
@@ -51,6 +65,14 @@ public interface ProviderManagementDAO {
      */
     public ProviderRole getProviderRole(Integer id);
 
+    /**
+     * Gets the relationship type referenced by the specified id
+     *
+     * @param id
+     * @return relationshipType
+     */
+    public RelationshipType getRelationshipType(Integer id);
+
     /**
      * Gets the provider role referenced by the specified uui
      *
@@ -106,6 +128,90 @@ public interface ProviderManagementDAO {
      */
     public List<Person> getProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired);
 
+    /**
+     * Gets a page of the list of providers that match the specified name, identifier, and provider roles
+     * (If any field is null it is ignored)
+     *
+     * @param name name to search on
+     * @param identifier provider identifier
+     * @param personAddress address to search on
+     * @param personAttribute person attribute to search
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param start index of the first result to return (null for 0)
+     * @param length maximum number of results to return (null for no limit)
+     * @return result list of providers
+     */
+    public List<Person> getProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length);
+
+    /**
+     * Gets the number of providers that match the specified name, identifier, and provider roles
+     * (If any field is null it is ignored)
+     *
+     * @param name name to search on
+     * @param identifier provider identifier
+     * @param personAddress address to search on
+     * @param personAttribute person attribute to search
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @return the number of providers
+     */
+    public Long getCountOfProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired);
+
+    /**
+     * Gets the list of providers whose name or identifier matches the specified query, in a single query,
+     * ordered by name and without duplicates
+     *
+     * @param query name or identifier to search on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @return result list of providers
+     */
+    public List<Person> getProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired);
+
+    /**
+     * Gets a page of the list of providers whose name or identifier matches the specified query
+     *
+     * @param query name or identifier to search on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are left out
+     * @param excludeProvider if not null, this provider is left out
+     * @param start index of the first result to return (null for 0)
+     * @param length maximum number of results to return (null for no limit)
+     * @return result list of providers
+     */
+    public List<Person> getProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                       Person excludeSuperviseesOf, Person excludeProvider, Integer start, Integer length);
+
+    /**
+     * Gets the number of providers whose name or identifier matches the specified query
+     *
+     * @param query name or identifier to search on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are not counted
+     * @param excludeProvider if not null, this provider is not counted
+     * @return the number of providers
+     */
+    public Long getCountOfProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                      Person excludeSuperviseesOf, Person excludeProvider);
+
+    /**
+     * Passes the providers whose name or identifier matches the specified query to the specified handler, a batch at
+     * a time, ordered by name and without duplicates
+     *
+     * @param query name or identifier to search on
+     * @param providerRoles restrict results to providers with at least one of these roles
+     * @param includeRetired whether or not to include retired providers
+     * @param excludeSuperviseesOf if not null, providers currently supervised by this supervisor are left out
+     * @param excludeProvider if not null, this provider is left out
+     * @param handler receives the results
+     * @throws IOException if thrown by the handler
+     */
+    public void scrollProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                  Person excludeSuperviseesOf, Person excludeProvider, ProviderSearchResultHandler handler) throws IOException;
+
     /**
      * Gets all providers associated with the current person
      *
@@ -115,6 +221,34 @@ public interface ProviderManagementDAO {
      */
     public List<Provider> getProvidersByPerson(Person person, boolean includeRetired);
 
+    /**
+     * Returns the ids of those passed persons that are associated with at least one provider
+     *
+     * @param personIds
+     * @param includeRetired whether or not to consider retired providers
+     * @return the ids of the persons that are providers
+     */
+    public Set<Integer> getProviderPersonIds(Collection<Integer> personIds, boolean includeRetired);
+
+    /**
+     * Gets all providers associated with any of the passed persons, ordered by provider id
+     *
+     * @param persons
+     * @param includeRetired whether or not to include retired providers
+     * @return all providers associated with the passed persons
+     */
+    public List<Provider> getProvidersByPersons(Collection<Person> persons, boolean includeRetired);
+
+    /**
+     * Gets all providers associated with any of the persons with the passed ids, ordered by provider id, without
+     * loading the persons
+     *
+     * @param personIds
+     * @param includeRetired whether or not to include retired providers
+     * @return all providers associated with the persons
+     */
+    public List<Provider> getProvidersByPersonIds(Collection<Integer> personIds, boolean includeRetired);
+
     /**
      * Gets all providers with the selected provider roles
      *
@@ -124,6 +258,173 @@ public interface ProviderManagementDAO {
      */
     public List<Provider> getProvidersByProviderRoles(List<ProviderRole> roles, boolean includeRetired);
 
+    /**
+     * Gets those of the specified persons that are associated with a provider whose (non-retired) role
+     * supports the specified relationship type
+     *
+     * @param relationshipType
+     * @param personIds the ids of the persons to check
+     * @param includeRetired whether or not to consider retired providers
+     * @return the matching persons
+     */
+    public List<Person> getProviderPersonsByRelationshipType(RelationshipType relationshipType, Collection<Integer> personIds, boolean includeRetired);
+
+    /**
+     * Counts the distinct, non-voided patients related to the specified provider via any of the specified
+     * relationship types on the specified date (voided relationships are ignored)
+     *
+     * @param provider
+     * @param relationshipTypes the relationship types to count
+     * @param date the date the relationship must be active on (if null, all relationships are counted)
+     * @return the count of patients
+     */
+    public int getPatientsOfProviderCount(Person provider, Collection<RelationshipType> relationshipTypes, Date date);
+
+    /**
+     * Counts the distinct, non-voided patients related to each of the specified providers, grouped by
+     * relationship type, on the specified date (voided relationships are ignored)
+     *
+     * @param providerIds person ids of the providers
+     * @param relationshipTypes the relationship types to count
+     * @param date the date the relationship must be active on (if null, all relationships are counted)
+     * @return map from provider person id to a map from relationship type id to count; zero counts are omitted
+     */
+    public Map<Integer, Map<Integer, Integer>> getPatientsOfProvidersCount(Collection<Integer> providerIds, Collection<RelationshipType> relationshipTypes, Date date);
+
+    /**
+     * Gets a page of the distinct, non-voided patients related to the specified provider via any of the specified
+     * relationship types on the specified date, projected to their id, preferred name and preferred identifier
+     *
+     * @param provider
+     * @param relationshipTypes the relationship types to include
+     * @param date the date the relationship must be active on (if null, all relationships are included)
+     * @param start index of the first result to return (if null, starts at the first result)
+     * @param length maximum number of results to return (if null, returns all results)
+     * @param sortField one of familyName, givenName, identifier or patientId (if null, sorts by familyName)
+     * @return the page of patients
+     */
+    public List<PatientOfProvider> getPatientsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date,
+                                                         Integer start, Integer length, String sortField);
+
+    /**
+     * Gets the non-voided relationships between the specified provider and non-voided patients via any of the
+     * specified relationship types on the specified date, along with the patient and their preferred identifier,
+     * using a single query
+     *
+     * @param provider
+     * @param relationshipTypes the relationship types to include
+     * @param date the date the relationship must be active on (if null, all relationships are included)
+     * @return the relationships, ordered by relationship type and then relationship id
+     */
+    public List<ProviderPersonRelationship> getPatientRelationshipsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date);
+
+    /**
+     * Gets the ids of the distinct, non-voided patients related to the specified provider via any of the specified
+     * relationship types on the specified date (voided relationships are ignored)
+     *
+     * @param provider
+     * @param relationshipTypes the relationship types to include
+     * @param date the date the relationship must be active on (if null, all relationships are included)
+     * @return the ids of the patients
+     */
+    public Set<Integer> getPatientIdsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date);
+
+    /**
+     * Gets the non-voided relationships of the specified type between person a and any of the specified person bs
+     * that have started on or before the specified date and have no end date
+     *
+     * @param personA
+     * @param personBIds
+     * @param relationshipType
+     * @param date
+     * @return the relationships, with person b fetched
+     */
+    public List<Relationship> getActiveRelationships(Person personA, Collection<Integer> personBIds, RelationshipType relationshipType, Date date);
+
+    /**
+     * Saves the specified relationships directly, without going through the person service;
+     * callers are responsible for any validation and for setting the audit fields
+     *
+     * This saves the per-relationship overhead of the person service (and its AOP), but not the insert statements:
+     * relationship ids are generated by the database, so each new relationship is still inserted one at a time
+     *
+     * @param relationships
+     */
+    public void saveRelationships(Collection<Relationship> relationships);
+
+    /**
+     * Gets the non-voided patients with the specified ids
+     *
+     * @param patientIds
+     * @return the patients
+     */
+    public List<Patient> getPatients(Collection<Integer> patientIds);
+
+    /**
+     * Gets the non-voided patient programs of the patients with the specified ids
+     *
+     * @param patientIds
+     * @param includeCompleted whether or not to include patient programs that have been completed
+     * @return the patient programs, ordered by patient id and then enrollment date
+     */
+    public List<PatientProgram> getPatientPrograms(Collection<Integer> patientIds, boolean includeCompleted);
+
+    /**
+     * Gets the non-voided relationships with the specified ids
+     *
+     * @param relationshipIds
+     * @return the relationships, ordered by id
+     */
+    public List<Relationship> getRelationships(Collection<Integer> relationshipIds);
+
+    /**
+     * Gets the ids of the non-voided relationships between the specified persons of the specified type that are
+     * active on the specified date (the same relationships as PersonService.getRelationships, without loading them)
+     *
+     * @param personA if null, relationships with any person a are included
+     * @param personB if null, relationships with any person b are included
+     * @param relationshipType if null, relationships of any type are included
+     * @param effectiveDate if null, relationships active on any date are included
+     * @return the relationship ids, in ascending order
+     */
+    public List<Integer> getRelationshipIds(Person personA, Person personB, RelationshipType relationshipType, Date effectiveDate);
+
+    /**
+     * Gets the ids of the persons related by the non-voided relationships of the specified type that are active on
+     * the specified date, without loading the relationships
+     *
+     * @param relationshipType
+     * @param effectiveDate
+     * @return the ids of the b persons of the relationships, keyed on the id of the a person
+     */
+    public Map<Integer, Set<Integer>> getRelationshipPersonIds(RelationshipType relationshipType, Date effectiveDate);
+
+    /**
+     * Gets the persons with the specified ids
+     *
+     * @param personIds
+     * @return the persons, in the same order as the ids
+     */
+    public List<Person> getPersons(List<Integer> personIds);
+
+    /**
+     * Flushes the session, and then evicts the specified objects from it, so that processing a large number of objects
+     * a chunk at a time doesn't grow the session (without detaching any other objects the caller may be using)
+     *
+     * @param objects
+     */
+    public void flushAndEvict(Collection<?> objects);
+
+    /**
+     * Flushes and then clears the session, detaching all the objects loaded in it
+     */
+    public void flushAndClearSession();
+
+    /**
+     * @return true if the session holds changes that haven't been flushed to the database yet
+     */
+    public boolean isSessionDirty();
+
     /**
      * Gets the provider suggestion referenced by the specified id
      *
@@ -222,4 +523,95 @@ public interface ProviderManagementDAO {
      */
     public void deleteSupervisionSuggestion(SupervisionSuggestion suggestion);
 
+    /**
+     * @return true if the provider name search index has been completely built (as recorded by
+     * setProviderNameTokenIndexBuilt); until then, searching by name matches the person names directly
+     */
+    public boolean isProviderNameTokenIndexBuilt();
+
+    /**
+     * Records whether the provider name search index has been completely built
+     *
+     * @param built
+     */
+    public void setProviderNameTokenIndexBuilt(boolean built);
+
+    /**
+     * Gets the ids of all persons associated with a provider (including retired providers)
+     *
+     * @return the person ids, in ascending order
+     */
+    public List<Integer> getAllProviderPersonIds();
+
+    /**
+     * Gets the name search tokens of the non-voided names of the specified persons, without loading the persons
+     *
+     * @param personIds
+     * @return map from person id to tokens; persons without names are not included
+     */
+    public Map<Integer, Set<String>> getPersonNameTokens(Collection<Integer> personIds);
+
+    /**
+     * Saves the specified tokens as the name search tokens of the specified person
+     *
+     * @param personId
+     * @param tokens
+     * @return the saved tokens
+     */
+    public List<ProviderNameToken> saveProviderNameTokens(Integer personId, Collection<String> tokens);
+
+    /**
+     * Deletes the name search tokens of the specified person
+     *
+     * @param personId
+     */
+    public void deleteProviderNameTokens(Integer personId);
+
+    /**
+     * Deletes all the name search tokens
+     */
+    public void deleteAllProviderNameTokens();
+
+    /**
+     * Gets the bulk job referenced by the specified id
+     *
+     * @param id
+     * @return bulk job
+     */
+    public BulkJob getBulkJob(Integer id);
+
+    /**
+     * Gets the bulk job referenced by the specified uuid
+     *
+     * @param uuid
+     * @return bulk job
+     */
+    public BulkJob getBulkJobByUuid(String uuid);
+
+    /**
+     * Gets the bulk jobs with any of the specified statuses
+     *
+     * @param statuses
+     * @return the bulk jobs, oldest first
+     */
+    public List<BulkJob> getBulkJobsByStatus(Collection<BulkJobStatus> statuses);
+
+    /**
+     * Gets the bulk jobs with any of the specified statuses that involve the specified provider, either as the
+     * provider or as the destination provider
+     *
+     * @param provider
+     * @param statuses
+     * @return the bulk jobs, oldest first
+     */
+    public List<BulkJob> getBulkJobsByProviderAndStatus(Person provider, Collection<BulkJobStatus> statuses);
+
+    /**
+     * Saves the specified bulk job
+     *
+     * @param job
+     * @return bulk job
+     */
+    public BulkJob saveBulkJob(BulkJob job);
+
 }
@@ -17,29 +17,86 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.openmrs.api.db.hibernate.DbSessionFactory;  
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
+import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
+import org.openmrs.api.db.DAOException;
 import org.openmrs.module.providermanagement.Provider;
+import org.openmrs.module.providermanagement.ProviderManagementConstants;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.db.ProviderManagementDAO;
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.job.BulkJobStatus;
+import org.openmrs.module.providermanagement.relationship.PatientOfProvider;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
+import org.openmrs.module.providermanagement.search.ProviderNameToken;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
 import org.openmrs.module.providermanagement.suggestion.ProviderSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestionType;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * It is a default implementation of  {@link ProviderManagementDAO}.
  */
 public class HibernateProviderManagementDAO implements ProviderManagementDAO {
 	protected final Log log = LogFactory.getLog(this.getClass());
+
+    // maximum number of values bound to a single IN clause
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+
+    // the number of persons loaded (and evicted) at a time when scrolling through provider search results
+    private static final int SCROLL_BATCH_SIZE = 100;
+
+    // fields the patients of a provider can be sorted by, mapped to the order by clause that implements them
+    private static final Map<String, String> PATIENT_OF_PROVIDER_SORT_FIELDS = new LinkedHashMap<String, String>();
+
+    static {
+        PATIENT_OF_PROVIDER_SORT_FIELDS.put("familyName", "name.familyName, name.givenName");
+        PATIENT_OF_PROVIDER_SORT_FIELDS.put("givenName", "name.givenName, name.familyName");
+        PATIENT_OF_PROVIDER_SORT_FIELDS.put("identifier", "identifier.identifier");
+        PATIENT_OF_PROVIDER_SORT_FIELDS.put("patientId", "p.patientId");
+    }
+
+    /**
+     * HQL restriction for queries that left join patient "p" to its non-voided identifiers as "identifier": keeps only
+     * the preferred identifier, or the first one if none is preferred (as Patient.getPatientIdentifier does), so that
+     * each patient has one row, with a null identifier only if they have no non-voided identifiers at all
+     */
+    private static final String PATIENT_IDENTIFIER_RESTRICTION = "(identifier.patientIdentifierId is null"
+            + " or identifier.patientIdentifierId = (select min(i.patientIdentifierId) from PatientIdentifier i"
+            + " where i.patient = p and i.voided = false and (i.preferred = true or not exists"
+            + " (select pi.patientIdentifierId from PatientIdentifier pi where pi.patient = p and pi.voided = false and pi.preferred = true))))";
 	
 	private DbSessionFactory sessionFactory;
 
@@ -71,6 +128,11 @@ public class HibernateProviderManagementDAO implements ProviderManagementDAO {
         return (ProviderRole) sessionFactory.getCurrentSession().get(ProviderRole.class, id);
     }
 
+    @Override
+    public RelationshipType getRelationshipType(Integer id) {
+        return (RelationshipType) sessionFactory.getCurrentSession().get(RelationshipType.class, id);
+    }
+
     @Override
     public ProviderRole getProviderRoleByUuid(String uuid) {
         Criteria criteria = sessionFactory.getCurrentSession().createCriteria(ProviderRole.class);
@@ -107,80 +169,118 @@ public class HibernateProviderManagementDAO implements ProviderManagementDAO {
 
     @Override
     public List<Person> getProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired) {
+        return listProviders(createProviderSearchCriteria(name, identifier, personAddress, personAttribute, providerRoles, includeRetired));
+    }
 
-        // first, create the provider criteria
-         Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+    @Override
+    public List<Person> getProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length) {
+        return listProviders(createProviderSearchCriteria(name, identifier, personAddress, personAttribute, providerRoles, includeRetired), start, length);
+    }
 
-        // we want the result to be a list of person
-        criteria.setProjection(Property.forName("person"));
+    @Override
+    public Long getCountOfProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired) {
+        return countProviders(createProviderSearchCriteria(name, identifier, personAddress, personAttribute, providerRoles, includeRetired));
+    }
 
-        // restrict to ignore retired if flag is set
+    @Override
+    public List<Provider> getProvidersByPerson(Person person, boolean includeRetired) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+
+        criteria.add(Restrictions.eq("person", person));
         if (!includeRetired) {
             criteria.add(Restrictions.eq("retired", false));
         }
+        criteria.addOrder(Order.asc("providerId"));
 
-        // restrict to providers with a specific identifier, if specified
-        if (identifier != null && identifier.length() > 0) {
-            criteria.add(Restrictions.ilike("identifier", identifier, MatchMode.START));
-        }
+        @SuppressWarnings("unchecked")
+        List<Provider> list = criteria.list();
+        return list;
+    }
 
-        // restrict to provider with one of set of provider roles, if specified
-        if (providerRoles != null && providerRoles.size() > 0) {
-            criteria.add(Restrictions.in("providerRole", providerRoles));
+    @Override
+    public Set<Integer> getProviderPersonIds(Collection<Integer> personIds, boolean includeRetired) {
+
+        Set<Integer> providerPersonIds = new HashSet<Integer>();
+
+        if (personIds == null || personIds.isEmpty()) {
+            return providerPersonIds;
         }
 
-        // create person criteria on top of the provider criteria
-        criteria = criteria.createCriteria("person");
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(personIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
 
-        // we only want distinct people
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+            criteria.createAlias("person", "person");
+            criteria.add(Restrictions.in("person.personId", chunk));
+            if (!includeRetired) {
+                criteria.add(Restrictions.eq("retired", false));
+            }
+            criteria.setProjection(Projections.distinct(Projections.property("person.personId")));
 
-        // ignore voided people
-        criteria.add(Restrictions.eq("personVoided", false));
+            @SuppressWarnings("unchecked")
+            List<Integer> list = criteria.list();
+            providerPersonIds.addAll(list);
+        }
 
-        // create the join to the person table
-        criteria.createAlias("names", "name");
+        return providerPersonIds;
+    }
 
-        // order by name
-        criteria.addOrder(Order.asc("name.givenName"));
-        criteria.addOrder(Order.asc("name.middleName"));
-        criteria.addOrder(Order.asc("name.familyName"));
+    @Override
+    public List<Provider> getProvidersByPersons(Collection<Person> persons, boolean includeRetired) {
 
-        // handle restricting by name if any names have been specified
-        if (name != null && name.length() > 0) {
-            addNameCriteria(criteria, name);
-        }
+        List<Provider> providers = new ArrayList<Provider>();
 
-        // handle querying by address if an address has been specified
-        if (personAddress != null) {
-            addAddressCriteria(criteria, personAddress);
+        if (persons == null || persons.isEmpty()) {
+            return providers;
         }
 
-        // handle querying by person attribute if an attribute has been specified
-        // TODO: create functionality to allow searching against multiple attributes(see PROV-11) (see Hibernate ticket https://hibernate.onjira.com/browse/HHH-879 for why this will take a little work)
-        if (personAttribute != null && StringUtils.isNotBlank(personAttribute.getValue())) {
-            criteria.createAlias("attributes", "attribute");
-            criteria.add(Restrictions.and(Restrictions.eq("attribute.attributeType", personAttribute.getAttributeType()),
-                    Restrictions.ilike("attribute.value", personAttribute.getValue(), MatchMode.EXACT)));
-        }
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Person> personList = new ArrayList<Person>(new HashSet<Person>(persons));
+        for (int start = 0; start < personList.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Person> chunk = personList.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, personList.size()));
+
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+            criteria.add(Restrictions.in("person", chunk));
+            if (!includeRetired) {
+                criteria.add(Restrictions.eq("retired", false));
+            }
+            criteria.addOrder(Order.asc("providerId"));
 
-        return (List<Person>) criteria.list();
+            @SuppressWarnings("unchecked")
+            List<Provider> list = criteria.list();
+            providers.addAll(list);
+        }
 
+        return providers;
     }
 
     @Override
-    public List<Provider> getProvidersByPerson(Person person, boolean includeRetired) {
-        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+    public List<Provider> getProvidersByPersonIds(Collection<Integer> personIds, boolean includeRetired) {
 
-        criteria.add(Restrictions.eq("person", person));
-        if (!includeRetired) {
-            criteria.add(Restrictions.eq("retired", false));
+        List<Provider> providers = new ArrayList<Provider>();
+
+        if (personIds == null || personIds.isEmpty()) {
+            return providers;
         }
-        criteria.addOrder(Order.asc("providerId"));
 
-        @SuppressWarnings("unchecked")
-        List<Provider> list = criteria.list();
-        return list;
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(personIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            // restricting on the id of the person doesn't require the person to be joined (or loaded)
+            Query query = sessionFactory.getCurrentSession().createQuery("from Provider p where p.person.personId in (:personIds)"
+                    + (includeRetired ? "" : " and p.retired = false") + " order by p.providerId");
+            query.setParameterList("personIds", chunk);
+
+            @SuppressWarnings("unchecked")
+            List<Provider> list = query.list();
+            providers.addAll(list);
+        }
+
+        return providers;
     }
 
     @Override
@@ -196,6 +296,407 @@ public class HibernateProviderManagementDAO implements ProviderManagementDAO {
         return list;
     }
 
+    @Override
+    public List<Person> getProviderPersonsByRelationshipType(RelationshipType relationshipType, Collection<Integer> personIds, boolean includeRetired) {
+
+        Set<Person> persons = new HashSet<Person>();
+
+        if (personIds == null || personIds.isEmpty()) {
+            return new ArrayList<Person>();
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(personIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            // same semantics as getProviderRolesByRelationshipType followed by getProvidersByProviderRoles
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+            criteria.createAlias("person", "person");
+            criteria.createAlias("providerRole", "providerRole");
+            criteria.createAlias("providerRole.relationshipTypes", "relationshipType");
+            criteria.add(Restrictions.in("person.personId", chunk));
+            criteria.add(Restrictions.eq("providerRole.retired", false));
+            criteria.add(Restrictions.eq("relationshipType.relationshipTypeId", relationshipType.getId()));
+            if (!includeRetired) {
+                criteria.add(Restrictions.eq("retired", false));
+            }
+            criteria.setProjection(Projections.distinct(Projections.property("person")));
+
+            @SuppressWarnings("unchecked")
+            List<Person> list = criteria.list();
+            persons.addAll(list);
+        }
+
+        return new ArrayList<Person>(persons);
+    }
+
+    @Override
+    public int getPatientsOfProviderCount(Person provider, Collection<RelationshipType> relationshipTypes, Date date) {
+
+        if (relationshipTypes == null || relationshipTypes.isEmpty()) {
+            return 0;
+        }
+
+        Query query = sessionFactory.getCurrentSession().createQuery(
+                "select count(distinct r.personB.personId) from Relationship r, Patient p where "
+                        + patientRelationshipRestrictions(date) + " and r.personA.personId = :providerId");
+
+        query.setInteger("providerId", provider.getId());
+        setPatientRelationshipParameters(query, relationshipTypes, date);
+
+        Number count = (Number) query.uniqueResult();
+        return count != null ? count.intValue() : 0;
+    }
+
+    @Override
+    public Map<Integer, Map<Integer, Integer>> getPatientsOfProvidersCount(Collection<Integer> providerIds, Collection<RelationshipType> relationshipTypes, Date date) {
+
+        Map<Integer, Map<Integer, Integer>> counts = new HashMap<Integer, Map<Integer, Integer>>();
+
+        if (providerIds == null || providerIds.isEmpty() || relationshipTypes == null || relationshipTypes.isEmpty()) {
+            return counts;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(providerIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            Query query = sessionFactory.getCurrentSession().createQuery(
+                    "select r.personA.personId, r.relationshipType.relationshipTypeId, count(distinct r.personB.personId) "
+                            + "from Relationship r, Patient p where " + patientRelationshipRestrictions(date)
+                            + " and r.personA.personId in (:providerIds)"
+                            + " group by r.personA.personId, r.relationshipType.relationshipTypeId");
+
+            query.setParameterList("providerIds", chunk);
+            setPatientRelationshipParameters(query, relationshipTypes, date);
+
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.list();
+            for (Object[] row : rows) {
+                Integer providerId = (Integer) row[0];
+                if (!counts.containsKey(providerId)) {
+                    counts.put(providerId, new HashMap<Integer, Integer>());
+                }
+                counts.get(providerId).put((Integer) row[1], ((Number) row[2]).intValue());
+            }
+        }
+
+        return counts;
+    }
+
+    @Override
+    public List<PatientOfProvider> getPatientsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date,
+                                                         Integer start, Integer length, String sortField) {
+
+        List<PatientOfProvider> patients = new ArrayList<PatientOfProvider>();
+
+        if (relationshipTypes == null || relationshipTypes.isEmpty()) {
+            return patients;
+        }
+
+        String orderBy = PATIENT_OF_PROVIDER_SORT_FIELDS.get(sortField != null ? sortField : "familyName");
+        if (orderBy == null) {
+            throw new DAOException("Invalid sort field " + sortField + ", must be one of " + PATIENT_OF_PROVIDER_SORT_FIELDS.keySet());
+        }
+
+        // project only the fields we need, picking up the preferred name and identifier of each patient
+        Query query = sessionFactory.getCurrentSession().createQuery(
+                "select distinct p.patientId, name.givenName, name.middleName, name.familyName, identifier.identifier"
+                        + " from Relationship r, Patient p"
+                        + " left join p.names as name with name.preferred = true and name.voided = false"
+                        + " left join p.identifiers as identifier with identifier.voided = false"
+                        + " where " + patientRelationshipRestrictions(date) + " and r.personA.personId = :providerId"
+                        + " and " + PATIENT_IDENTIFIER_RESTRICTION
+                        + " order by " + orderBy + ", p.patientId");
+
+        query.setInteger("providerId", provider.getId());
+        setPatientRelationshipParameters(query, relationshipTypes, date);
+
+        if (start != null) {
+            query.setFirstResult(start);
+        }
+        if (length != null) {
+            query.setMaxResults(length);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        for (Object[] row : rows) {
+            patients.add(new PatientOfProvider((Integer) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4]));
+        }
+
+        return patients;
+    }
+
+    @Override
+    public List<ProviderPersonRelationship> getPatientRelationshipsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date) {
+
+        if (relationshipTypes == null || relationshipTypes.isEmpty()) {
+            return new ArrayList<ProviderPersonRelationship>();
+        }
+
+        // load the relationship, the patient (with their names) and the preferred identifier together; fetching the
+        // names means a patient may come back on more than one row, so we key the results on relationship id
+        Query query = sessionFactory.getCurrentSession().createQuery(
+                "select r, p, identifier.identifier"
+                        + " from Relationship r, Patient p"
+                        + " left join fetch p.names"
+                        + " left join p.identifiers as identifier with identifier.voided = false"
+                        + " where " + patientRelationshipRestrictions(date) + " and r.personA.personId = :providerId"
+                        + " and " + PATIENT_IDENTIFIER_RESTRICTION
+                        + " order by r.relationshipType.relationshipTypeId, r.relationshipId");
+
+        query.setInteger("providerId", provider.getId());
+        setPatientRelationshipParameters(query, relationshipTypes, date);
+
+        Map<Integer, ProviderPersonRelationship> relationships = new LinkedHashMap<Integer, ProviderPersonRelationship>();
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        for (Object[] row : rows) {
+            Relationship relationship = (Relationship) row[0];
+            Patient patient = (Patient) row[1];
+            if (!relationships.containsKey(relationship.getRelationshipId())) {
+                relationships.put(relationship.getRelationshipId(), new ProviderPersonRelationship(patient, (String) row[2],
+                        patient.getPatientId(), relationship, relationship.getRelationshipType()));
+            }
+        }
+
+        return new ArrayList<ProviderPersonRelationship>(relationships.values());
+    }
+
+    @Override
+    public Set<Integer> getPatientIdsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date) {
+
+        Set<Integer> patientIds = new HashSet<Integer>();
+
+        if (relationshipTypes == null || relationshipTypes.isEmpty()) {
+            return patientIds;
+        }
+
+        Query query = sessionFactory.getCurrentSession().createQuery(
+                "select distinct p.patientId from Relationship r, Patient p where "
+                        + patientRelationshipRestrictions(date) + " and r.personA.personId = :providerId");
+
+        query.setInteger("providerId", provider.getId());
+        setPatientRelationshipParameters(query, relationshipTypes, date);
+
+        @SuppressWarnings("unchecked")
+        List<Integer> list = query.list();
+        patientIds.addAll(list);
+        return patientIds;
+    }
+
+    @Override
+    public List<Relationship> getActiveRelationships(Person personA, Collection<Integer> personBIds, RelationshipType relationshipType, Date date) {
+
+        List<Relationship> relationships = new ArrayList<Relationship>();
+
+        if (personBIds == null || personBIds.isEmpty()) {
+            return relationships;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(personBIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Relationship.class);
+            criteria.createAlias("personB", "personB");
+            criteria.setFetchMode("personB", FetchMode.JOIN);
+            criteria.add(Restrictions.eq("personA", personA));
+            criteria.add(Restrictions.in("personB.personId", chunk));
+            criteria.add(Restrictions.eq("relationshipType", relationshipType));
+            criteria.add(Restrictions.eq("voided", false));
+            criteria.add(Restrictions.isNull("endDate"));
+            criteria.add(Restrictions.or(Restrictions.isNull("startDate"), Restrictions.le("startDate", date)));
+            criteria.addOrder(Order.asc("relationshipId"));
+
+            @SuppressWarnings("unchecked")
+            List<Relationship> list = criteria.list();
+            relationships.addAll(list);
+        }
+
+        return relationships;
+    }
+
+    @Override
+    public void saveRelationships(Collection<Relationship> relationships) {
+        // relationship ids are generated by the database, so each new relationship is inserted as soon as it is saved
+        // (hibernate can't batch these inserts); only the updates to existing relationships are deferred until flush
+        for (Relationship relationship : relationships) {
+            sessionFactory.getCurrentSession().saveOrUpdate(relationship);
+        }
+    }
+
+    @Override
+    public List<Patient> getPatients(Collection<Integer> patientIds) {
+
+        List<Patient> patients = new ArrayList<Patient>();
+
+        if (patientIds == null || patientIds.isEmpty()) {
+            return patients;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(patientIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
+            criteria.add(Restrictions.in("patientId", chunk));
+            criteria.add(Restrictions.eq("voided", false));
+
+            @SuppressWarnings("unchecked")
+            List<Patient> list = criteria.list();
+            patients.addAll(list);
+        }
+
+        return patients;
+    }
+
+    @Override
+    public List<PatientProgram> getPatientPrograms(Collection<Integer> patientIds, boolean includeCompleted) {
+
+        List<PatientProgram> patientPrograms = new ArrayList<PatientProgram>();
+
+        if (patientIds == null || patientIds.isEmpty()) {
+            return patientPrograms;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(patientIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(PatientProgram.class);
+            criteria.createAlias("patient", "patient");
+            criteria.add(Restrictions.in("patient.patientId", chunk));
+            criteria.add(Restrictions.eq("voided", false));
+            if (!includeCompleted) {
+                criteria.add(Restrictions.isNull("dateCompleted"));
+            }
+
+            // fetch the programs as well, since the caller will generally display them
+            criteria.setFetchMode("program", FetchMode.JOIN);
+            criteria.addOrder(Order.asc("patient.patientId"));
+            criteria.addOrder(Order.asc("dateEnrolled"));
+
+            @SuppressWarnings("unchecked")
+            List<PatientProgram> list = criteria.list();
+            patientPrograms.addAll(list);
+        }
+
+        return patientPrograms;
+    }
+
+    @Override
+    public List<Relationship> getRelationships(Collection<Integer> relationshipIds) {
+
+        List<Relationship> relationships = new ArrayList<Relationship>();
+
+        if (relationshipIds == null || relationshipIds.isEmpty()) {
+            return relationships;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(relationshipIds));
+        Collections.sort(ids);
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Relationship.class);
+            criteria.add(Restrictions.in("relationshipId", chunk));
+            criteria.add(Restrictions.eq("voided", false));
+            criteria.addOrder(Order.asc("relationshipId"));
+
+            @SuppressWarnings("unchecked")
+            List<Relationship> list = criteria.list();
+            relationships.addAll(list);
+        }
+
+        return relationships;
+    }
+
+    @Override
+    public List<Integer> getRelationshipIds(Person personA, Person personB, RelationshipType relationshipType, Date effectiveDate) {
+
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Relationship.class);
+
+        if (personA != null) {
+            criteria.add(Restrictions.eq("personA", personA));
+        }
+
+        if (personB != null) {
+            criteria.add(Restrictions.eq("personB", personB));
+        }
+
+        if (relationshipType != null) {
+            criteria.add(Restrictions.eq("relationshipType", relationshipType));
+        }
+
+        // mirrors the effective date restriction used by PersonService.getRelationships
+        if (effectiveDate != null) {
+            criteria.add(Restrictions.or(Restrictions.isNull("startDate"), Restrictions.le("startDate", effectiveDate)));
+            criteria.add(Restrictions.or(Restrictions.isNull("endDate"), Restrictions.ge("endDate", effectiveDate)));
+        }
+
+        criteria.add(Restrictions.eq("voided", false));
+        criteria.setProjection(Projections.property("relationshipId"));
+        criteria.addOrder(Order.asc("relationshipId"));
+
+        return (List<Integer>) criteria.list();
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getRelationshipPersonIds(RelationshipType relationshipType, Date effectiveDate) {
+
+        // only fetch the person ids, rather than loading the relationships; mirrors the restrictions of getRelationshipIds
+        Query query = sessionFactory.getCurrentSession().createQuery("select r.personA.personId, r.personB.personId from Relationship r "
+                + "where r.relationshipType = :relationshipType and r.voided = false "
+                + "and (r.startDate is null or r.startDate <= :effectiveDate) and (r.endDate is null or r.endDate >= :effectiveDate)");
+        query.setParameter("relationshipType", relationshipType);
+        query.setTimestamp("effectiveDate", effectiveDate);
+
+        Map<Integer, Set<Integer>> personIds = new HashMap<Integer, Set<Integer>>();
+        for (Object[] row : (List<Object[]>) query.list()) {
+            Set<Integer> personBIds = personIds.get((Integer) row[0]);
+            if (personBIds == null) {
+                personBIds = new HashSet<Integer>();
+                personIds.put((Integer) row[0], personBIds);
+            }
+            personBIds.add((Integer) row[1]);
+        }
+
+        return personIds;
+    }
+
+    @Override
+    public List<Person> getPersons(List<Integer> personIds) {
+        return getPersonsInOrder(personIds);
+    }
+
+    @Override
+    public void flushAndEvict(Collection<?> objects) {
+        sessionFactory.getCurrentSession().flush();
+        for (Object object : objects) {
+            sessionFactory.getCurrentSession().evict(object);
+        }
+    }
+
+    @Override
+    public void flushAndClearSession() {
+        sessionFactory.getCurrentSession().flush();
+        sessionFactory.getCurrentSession().clear();
+    }
+
+    @Override
+    public boolean isSessionDirty() {
+        return sessionFactory.getCurrentSession().isDirty();
+    }
+
     @Override
     public ProviderSuggestion getProviderSuggestion(Integer id) {
         return (ProviderSuggestion) sessionFactory.getCurrentSession().get(ProviderSuggestion.class, id);
@@ -285,17 +786,451 @@ public class HibernateProviderManagementDAO implements ProviderManagementDAO {
         sessionFactory.getCurrentSession().delete(suggestion);
     }
 
-    private void addNameCriteria(Criteria criteria, String name) {
-        name = name.replace(", ", " ");
-        String[] names = name.split("\\s+");
+    @Override
+    public boolean isProviderNameTokenIndexBuilt() {
+        GlobalProperty gp = (GlobalProperty) sessionFactory.getCurrentSession().get(GlobalProperty.class, ProviderManagementConstants.GP_PROVIDER_NAME_TOKENS_BUILT);
+        return gp != null && "true".equalsIgnoreCase(gp.getPropertyValue());
+    }
+
+    @Override
+    public void setProviderNameTokenIndexBuilt(boolean built) {
+        // saved directly rather than via the administration service, so that rebuilding the index doesn't require the
+        // privilege to manage global properties; the value isn't cached, so no listeners need to be notified
+        GlobalProperty gp = (GlobalProperty) sessionFactory.getCurrentSession().get(GlobalProperty.class, ProviderManagementConstants.GP_PROVIDER_NAME_TOKENS_BUILT);
+        if (gp == null) {
+            gp = new GlobalProperty(ProviderManagementConstants.GP_PROVIDER_NAME_TOKENS_BUILT);
+        }
+        gp.setPropertyValue(String.valueOf(built));
+        sessionFactory.getCurrentSession().saveOrUpdate(gp);
+    }
+
+    @Override
+    public List<Integer> getAllProviderPersonIds() {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class);
+        criteria.createAlias("person", "person");
+        criteria.setProjection(Projections.distinct(Projections.property("person.personId")));
+        criteria.addOrder(Order.asc("person.personId"));
+        return (List<Integer>) criteria.list();
+    }
+
+    @Override
+    public Map<Integer, Set<String>> getPersonNameTokens(Collection<Integer> personIds) {
+
+        Map<Integer, Set<String>> tokens = new HashMap<Integer, Set<String>>();
+
+        if (personIds == null || personIds.isEmpty()) {
+            return tokens;
+        }
+
+        // split into chunks so that we don't exceed the maximum number of parameters some databases allow in an IN clause
+        List<Integer> ids = new ArrayList<Integer>(new HashSet<Integer>(personIds));
+        for (int start = 0; start < ids.size(); start += MAX_IN_CLAUSE_SIZE) {
+            List<Integer> chunk = ids.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, ids.size()));
+
+            // only fetch the name columns, rather than loading the names
+            Query query = sessionFactory.getCurrentSession().createQuery("select n.person.personId, n.givenName, n.middleName, n.familyName, n.familyName2 "
+                    + "from PersonName n where n.voided = false and n.person.personId in (:personIds)");
+            query.setParameterList("personIds", chunk);
+
+            for (Object[] row : (List<Object[]>) query.list()) {
+                Integer personId = (Integer) row[0];
+                Set<String> personTokens = tokens.get(personId);
+                if (personTokens == null) {
+                    personTokens = new HashSet<String>();
+                    tokens.put(personId, personTokens);
+                }
+                personTokens.addAll(ProviderNameToken.getTokens((String) row[1], (String) row[2], (String) row[3], (String) row[4]));
+            }
+        }
+
+        return tokens;
+    }
+
+    @Override
+    public List<ProviderNameToken> saveProviderNameTokens(Integer personId, Collection<String> tokens) {
+        List<ProviderNameToken> saved = new ArrayList<ProviderNameToken>();
+        for (String token : tokens) {
+            ProviderNameToken providerNameToken = new ProviderNameToken(personId, token);
+            sessionFactory.getCurrentSession().save(providerNameToken);
+            saved.add(providerNameToken);
+        }
+        return saved;
+    }
+
+    @Override
+    public void deleteProviderNameTokens(Integer personId) {
+        Query query = sessionFactory.getCurrentSession().createQuery("delete from ProviderNameToken where personId = :personId");
+        query.setParameter("personId", personId);
+        query.executeUpdate();
+    }
+
+    @Override
+    public void deleteAllProviderNameTokens() {
+        sessionFactory.getCurrentSession().createQuery("delete from ProviderNameToken").executeUpdate();
+    }
+
+    @Override
+    public BulkJob getBulkJob(Integer id) {
+        return (BulkJob) sessionFactory.getCurrentSession().get(BulkJob.class, id);
+    }
 
-        for (String n : names) {
-            if (n != null && n.length() > 0) {
-                criteria.add(Restrictions.or(Restrictions.ilike("name.givenName", n, MatchMode.START), Restrictions.or(Restrictions
+    @Override
+    public BulkJob getBulkJobByUuid(String uuid) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(BulkJob.class);
+        criteria.add(Restrictions.eq("uuid", uuid));
+        return (BulkJob) criteria.uniqueResult();
+    }
+
+    @Override
+    public List<BulkJob> getBulkJobsByStatus(Collection<BulkJobStatus> statuses) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(BulkJob.class);
+        criteria.add(Restrictions.in("status", statuses));
+        criteria.addOrder(Order.asc("bulkJobId"));
+        return (List<BulkJob>) criteria.list();
+    }
+
+    @Override
+    public List<BulkJob> getBulkJobsByProviderAndStatus(Person provider, Collection<BulkJobStatus> statuses) {
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(BulkJob.class);
+        criteria.add(Restrictions.or(Restrictions.eq("provider", provider), Restrictions.eq("destinationProvider", provider)));
+        criteria.add(Restrictions.in("status", statuses));
+        criteria.addOrder(Order.asc("bulkJobId"));
+        return (List<BulkJob>) criteria.list();
+    }
+
+    @Override
+    public BulkJob saveBulkJob(BulkJob job) {
+        sessionFactory.getCurrentSession().saveOrUpdate(job);
+        return job;
+    }
+
+    /**
+     * Builds the restrictions shared by the patient-of-provider queries (which alias Relationship as r and Patient as p):
+     * non-voided relationships, of one of the relationship types bound to :relationshipTypeIds, whose person b is a
+     * non-voided patient, and (if a date is specified) that are active on the date bound to :date
+     * (the date restriction mirrors the one used by PersonService.getRelationships)
+     */
+    private String patientRelationshipRestrictions(Date date) {
+        StringBuilder hql = new StringBuilder("p.patientId = r.personB.personId and p.voided = false and r.voided = false"
+                + " and r.relationshipType.relationshipTypeId in (:relationshipTypeIds)");
+
+        if (date != null) {
+            hql.append(" and (r.startDate is null or r.startDate <= :date) and (r.endDate is null or r.endDate >= :date)");
+        }
+
+        return hql.toString();
+    }
+
+    private void setPatientRelationshipParameters(Query query, Collection<RelationshipType> relationshipTypes, Date date) {
+        List<Integer> relationshipTypeIds = new ArrayList<Integer>();
+        for (RelationshipType relationshipType : relationshipTypes) {
+            relationshipTypeIds.add(relationshipType.getId());
+        }
+        query.setParameterList("relationshipTypeIds", relationshipTypeIds);
+
+        if (date != null) {
+            query.setTimestamp("date", date);
+        }
+    }
+
+    @Override
+    public List<Person> getProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired) {
+        return listProviders(createProviderSearchCriteria(query, providerRoles, includeRetired));
+    }
+
+    @Override
+    public List<Person> getProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                       Person excludeSuperviseesOf, Person excludeProvider, Integer start, Integer length) {
+        Criteria criteria = createProviderSearchCriteria(query, providerRoles, includeRetired);
+        addExclusionCriteria(criteria, excludeSuperviseesOf, excludeProvider);
+        return listProviders(criteria, start, length);
+    }
+
+    @Override
+    public void scrollProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                  Person excludeSuperviseesOf, Person excludeProvider, ProviderSearchResultHandler handler) throws IOException {
+        Criteria criteria = createProviderSearchCriteria(query, providerRoles, includeRetired);
+        addExclusionCriteria(criteria, excludeSuperviseesOf, excludeProvider);
+        scrollProviders(criteria, handler);
+    }
+
+    @Override
+    public Long getCountOfProvidersByNameOrIdentifier(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                                      Person excludeSuperviseesOf, Person excludeProvider) {
+        Criteria criteria = createProviderSearchCriteria(query, providerRoles, includeRetired);
+        addExclusionCriteria(criteria, excludeSuperviseesOf, excludeProvider);
+        return countProviders(criteria);
+    }
+
+    /**
+     * Creates the criteria for searching for providers by name, identifier, address and/or attribute
+     */
+    private Criteria createProviderSearchCriteria(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired) {
+
+        Criteria criteria = createProviderPersonCriteria(providerRoles, includeRetired);
+
+        // restrict to providers with a specific identifier, if specified
+        if (identifier != null && identifier.length() > 0) {
+            criteria.add(Restrictions.ilike("provider.identifier", identifier, MatchMode.START));
+        }
+
+        // handle restricting by name if any names have been specified
+        if (name != null && name.length() > 0) {
+            Criterion nameCriterion = getNameCriterion(name);
+            if (nameCriterion != null) {
+                criteria.add(nameCriterion);
+            }
+        }
+
+        // handle querying by address if an address has been specified
+        if (personAddress != null) {
+            addAddressCriteria(criteria, personAddress);
+        }
+
+        // handle querying by person attribute if an attribute has been specified
+        // TODO: create functionality to allow searching against multiple attributes(see PROV-11) (see Hibernate ticket https://hibernate.onjira.com/browse/HHH-879 for why this will take a little work)
+        if (personAttribute != null && StringUtils.isNotBlank(personAttribute.getValue())) {
+            criteria.createAlias("attributes", "attribute");
+            criteria.add(Restrictions.and(Restrictions.eq("attribute.attributeType", personAttribute.getAttributeType()),
+                    Restrictions.ilike("attribute.value", personAttribute.getValue(), MatchMode.EXACT)));
+        }
+
+        return criteria;
+    }
+
+    /**
+     * Creates the criteria for searching for providers by name or identifier
+     */
+    private Criteria createProviderSearchCriteria(String query, List<ProviderRole> providerRoles, Boolean includeRetired) {
+
+        Criteria criteria = createProviderPersonCriteria(providerRoles, includeRetired);
+
+        // a single query matching either the identifier or the name, so that the database does the union
+        Criterion identifierCriterion = Restrictions.ilike("provider.identifier", query, MatchMode.START);
+        Criterion nameCriterion = getNameCriterion(query);
+        criteria.add(nameCriterion != null ? Restrictions.or(identifierCriterion, nameCriterion) : identifierCriterion);
+
+        return criteria;
+    }
+
+    /**
+     * Adds restrictions to the specified provider search criteria leaving out the providers currently supervised by the
+     * specified supervisor (as PersonService.getRelationships would find them) and the specified provider, as subqueries
+     * so that the database does the excluding before any paging or counting
+     */
+    private void addExclusionCriteria(Criteria criteria, Person excludeSuperviseesOf, Person excludeProvider) {
+
+        if (excludeSuperviseesOf != null) {
+            Date now = new Date();
+
+            DetachedCriteria supervisees = DetachedCriteria.forClass(Relationship.class, "supervision");
+            supervisees.createAlias("supervision.relationshipType", "supervisionType");
+            supervisees.createAlias("supervision.personB", "supervisee");
+            supervisees.add(Restrictions.eq("supervisionType.uuid", ProviderManagementConstants.SUPERVISOR_RELATIONSHIP_TYPE_UUID));
+            supervisees.add(Restrictions.eq("supervision.personA", excludeSuperviseesOf));
+            supervisees.add(Restrictions.eq("supervision.voided", false));
+            supervisees.add(Restrictions.or(Restrictions.isNull("supervision.startDate"), Restrictions.le("supervision.startDate", now)));
+            supervisees.add(Restrictions.or(Restrictions.isNull("supervision.endDate"), Restrictions.ge("supervision.endDate", now)));
+            supervisees.setProjection(Projections.property("supervisee.personId"));
+
+            criteria.add(Subqueries.propertyNotIn("personId", supervisees));
+        }
+
+        if (excludeProvider != null) {
+            criteria.add(Restrictions.ne("personId", excludeProvider.getPersonId()));
+        }
+    }
+
+    /**
+     * Creates the criteria shared by the provider searches: a criteria on the persons of the non-voided providers with
+     * one of the specified roles; the provider itself can be referenced via the "provider" alias and the person names
+     * via the "name" alias
+     */
+    private Criteria createProviderPersonCriteria(List<ProviderRole> providerRoles, Boolean includeRetired) {
+
+        // first, create the provider criteria
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Provider.class, "provider");
+
+        // we want the result to be a list of person
+        criteria.setProjection(Property.forName("person"));
+
+        // restrict to ignore retired if flag is set
+        if (!includeRetired) {
+            criteria.add(Restrictions.eq("retired", false));
+        }
+
+        // restrict to provider with one of set of provider roles, if specified
+        if (providerRoles != null && providerRoles.size() > 0) {
+            criteria.add(Restrictions.in("providerRole", providerRoles));
+        }
+
+        // create person criteria on top of the provider criteria
+        criteria = criteria.createCriteria("person");
+
+        // ignore voided people
+        criteria.add(Restrictions.eq("personVoided", false));
+
+        // create the join to the person table
+        criteria.createAlias("names", "name");
+
+        return criteria;
+    }
+
+    /**
+     * Returns all the distinct persons matched by the specified provider search criteria, ordered by name; as with the
+     * paged and scrolled variants, the persons are grouped (rather than de-duplicated in memory), so that all of them
+     * return the same persons in the same order
+     */
+    private List<Person> listProviders(Criteria criteria) {
+        return listProviders(criteria, null, null);
+    }
+
+    /**
+     * Returns a page of the distinct persons matched by the specified provider search criteria, ordered by name; since
+     * a person matches once per name and provider, the ids of the persons are paged (grouped by person, so that the
+     * database does the limiting), and then the persons on the page are loaded
+     */
+    private List<Person> listProviders(Criteria criteria, Integer start, Integer length) {
+
+        setPersonIdProjection(criteria);
+
+        if (start != null) {
+            criteria.setFirstResult(start);
+        }
+        if (length != null) {
+            criteria.setMaxResults(length);
+        }
+
+        List<Integer> personIds = new ArrayList<Integer>();
+        for (Object[] row : (List<Object[]>) criteria.list()) {
+            personIds.add((Integer) row[0]);
+        }
+
+        return getPersonsInOrder(personIds);
+    }
+
+    /**
+     * Passes the distinct persons matched by the specified provider search criteria, ordered by name, to the specified
+     * handler a batch at a time; only the ids of the persons are scrolled through, and each batch of persons is loaded
+     * when needed and evicted from the session once handled, so that the number of results doesn't affect memory use
+     */
+    private void scrollProviders(Criteria criteria, ProviderSearchResultHandler handler) throws IOException {
+
+        setPersonIdProjection(criteria);
+        criteria.setFetchSize(SCROLL_BATCH_SIZE);
+
+        ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            List<Integer> batch = new ArrayList<Integer>();
+            while (results.next()) {
+                batch.add((Integer) results.get(0));
+                if (batch.size() == SCROLL_BATCH_SIZE) {
+                    handleProviderBatch(batch, handler);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                handleProviderBatch(batch, handler);
+            }
+        }
+        finally {
+            results.close();
+        }
+    }
+
+    private void handleProviderBatch(List<Integer> personIds, ProviderSearchResultHandler handler) throws IOException {
+        List<Person> persons = getPersonsInOrder(personIds);
+        handler.handle(persons);
+        for (Person person : persons) {
+            sessionFactory.getCurrentSession().evict(person);
+        }
+    }
+
+    /**
+     * Projects the specified provider search criteria onto the distinct ids of the persons matched, ordered by name
+     * (and then by id, so that the order is stable)
+     */
+    private void setPersonIdProjection(Criteria criteria) {
+
+        // the projection is relative to the person criteria
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("personId"), "groupedPersonId")
+                .add(Projections.min("name.givenName"), "minGivenName")
+                .add(Projections.min("name.middleName"), "minMiddleName")
+                .add(Projections.min("name.familyName"), "minFamilyName"));
+
+        criteria.addOrder(Order.asc("minGivenName"));
+        criteria.addOrder(Order.asc("minMiddleName"));
+        criteria.addOrder(Order.asc("minFamilyName"));
+        criteria.addOrder(Order.asc("groupedPersonId"));
+    }
+
+    /**
+     * Loads the persons with the specified ids, in the same order as the ids
+     */
+    private List<Person> getPersonsInOrder(List<Integer> personIds) {
+
+        if (personIds.isEmpty()) {
+            return new ArrayList<Person>();
+        }
+
+        Map<Integer, Person> persons = new HashMap<Integer, Person>();
+        for (int i = 0; i < personIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+            Criteria personCriteria = sessionFactory.getCurrentSession().createCriteria(Person.class);
+            personCriteria.add(Restrictions.in("personId", personIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, personIds.size()))));
+            for (Person person : (List<Person>) personCriteria.list()) {
+                persons.put(person.getPersonId(), person);
+            }
+        }
+
+        List<Person> ordered = new ArrayList<Person>();
+        for (Integer personId : personIds) {
+            if (persons.containsKey(personId)) {
+                ordered.add(persons.get(personId));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the number of distinct persons matched by the specified provider search criteria
+     */
+    private Long countProviders(Criteria criteria) {
+        criteria.setProjection(Projections.countDistinct("personId"));
+        return ((Number) criteria.uniqueResult()).longValue();
+    }
+
+    /**
+     * Returns a criterion matching persons with a name that starts with each of the words of the specified name, using
+     * the name search index unless it has not been completely built yet; null if the name contains no words
+     */
+    private Criterion getNameCriterion(String name) {
+
+        List<String> words = ProviderNameToken.getSearchTokens(name);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        Conjunction conjunction = Restrictions.conjunction();
+
+        if (isProviderNameTokenIndexBuilt()) {
+            // each word searched for must be the start of a word of one of the person's names
+            for (String token : words) {
+                DetachedCriteria matches = DetachedCriteria.forClass(ProviderNameToken.class);
+                matches.add(Restrictions.like("token", token, MatchMode.START));
+                matches.setProjection(Projections.property("personId"));
+                conjunction.add(Subqueries.propertyIn("personId", matches));
+            }
+        }
+        else {
+            for (String n : words) {
+                conjunction.add(Restrictions.or(Restrictions.ilike("name.givenName", n, MatchMode.START), Restrictions.or(Restrictions
                         .ilike("name.familyName", n, MatchMode.START), Restrictions.or(Restrictions.ilike("name.middleName", n,
                         MatchMode.START), Restrictions.ilike("name.familyName2", n, MatchMode.START)))));
             }
         }
+
+        return conjunction;
     }
 
     private void addAddressCriteria(Criteria criteria, PersonAddress personAddress) {
@@ -13,29 +13,34 @@
  */
 package org.openmrs.module.providermanagement.api.impl;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.ListUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.exception.ConstraintViolationException;
 import org.openmrs.Patient;
+import org.openmrs.PatientProgram;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
 import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.db.DAOException;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.providermanagement.Provider;
 import org.openmrs.module.providermanagement.ProviderManagementConstants;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
 import org.openmrs.module.providermanagement.ProviderManagementUtils;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.api.db.ProviderManagementDAO;
-import org.openmrs.module.providermanagement.comparator.PersonByFirstNameComparator;
+import org.openmrs.module.providermanagement.cache.ProviderLookupMemo;
+import org.openmrs.module.providermanagement.cache.ProviderRoleMetadataCache;
+import org.openmrs.module.providermanagement.cache.ProviderRoleMetadataSnapshot;
+import org.openmrs.module.providermanagement.cache.SupervisionGraph;
+import org.openmrs.module.providermanagement.cache.SupervisionGraphCache;
 import org.openmrs.module.providermanagement.exception.DateCannotBeInFutureException;
 import org.openmrs.module.providermanagement.exception.InvalidRelationshipTypeException;
 import org.openmrs.module.providermanagement.exception.InvalidSupervisorException;
@@ -47,14 +52,33 @@ import org.openmrs.module.providermanagement.exception.ProviderDoesNotSupportRel
 import org.openmrs.module.providermanagement.exception.ProviderNotAssignedToSupervisorException;
 import org.openmrs.module.providermanagement.exception.ProviderRoleInUseException;
 import org.openmrs.module.providermanagement.exception.SourceProviderSameAsDestinationProviderException;
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.job.BulkJobRunner;
+import org.openmrs.module.providermanagement.job.BulkJobStatus;
+import org.openmrs.module.providermanagement.job.BulkJobType;
+import org.openmrs.module.providermanagement.relationship.AssignmentOutcome;
+import org.openmrs.module.providermanagement.relationship.PatientOfProvider;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
+import org.openmrs.module.providermanagement.search.ProviderNameToken;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.validator.ValidateUtil;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -69,6 +93,13 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
 	private ProviderManagementDAO dao;
 
     private static RelationshipType supervisorRelationshipType = null;
+
+    // the number of relationships to end at a time when unassigning in bulk
+    private static final int RELATIONSHIP_CHUNK_SIZE = 500;
+
+    private final ProviderRoleMetadataCache providerRoleMetadataCache = ProviderRoleMetadataCache.getInstance();
+
+    private final SupervisionGraphCache supervisionGraphCache = new SupervisionGraphCache();
 	
 	/**
      * @param dao the dao to set
@@ -157,7 +188,9 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     @Override
     @Transactional
     public ProviderRole saveProviderRole(ProviderRole role) {
-        return dao.saveProviderRole(role);
+        ProviderRole savedRole = dao.saveProviderRole(role);
+        providerRoleMetadataCache.invalidate();
+        return savedRole;
     }
 
     @Override
@@ -165,6 +198,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     public void retireProviderRole(ProviderRole role, String reason) {
         // BaseRetireHandler handles retiring the object
         dao.saveProviderRole(role);
+        providerRoleMetadataCache.invalidate();
     }
 
     @Override
@@ -172,6 +206,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     public void unretireProviderRole(ProviderRole role) {
         // BaseUnretireHandler handles unretiring the object
         dao.saveProviderRole(role);
+        providerRoleMetadataCache.invalidate();
     }
 
     @Override
@@ -185,6 +220,8 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             Context.getService(ProviderManagementService.class).saveProviderRole(r);   // call through service so AOP save handler picks this up
         }
 
+        providerRoleMetadataCache.invalidate();
+
         try {
             dao.deleteProviderRole(role);
             Context.flushSession();  // shouldn't really have to do this, but we do to force a commit so that the exception will be thrown if necessary
@@ -198,53 +235,100 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     @Override
     @Transactional(readOnly = true)
     public List<RelationshipType> getAllProviderRoleRelationshipTypes(boolean includeRetired) {
+        // served from the role metadata snapshot; if includeRetired is false, retired roles and retired relationship types are filtered out
+        List<RelationshipType> relationshipTypes = new ArrayList<RelationshipType>();
+        for (Integer relationshipTypeId : providerRoleMetadataCache.getSnapshot(dao).getRelationshipTypeIds(includeRetired)) {
+            RelationshipType relationshipType = dao.getRelationshipType(relationshipTypeId);
+            if (relationshipType != null) {
+                relationshipTypes.add(relationshipType);
+            }
+        }
+        return relationshipTypes;
+    }
 
-        Set<RelationshipType> relationshipTypes = new HashSet<RelationshipType>();
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired) {
 
-        for (ProviderRole providerRole : getAllProviderRoles(includeRetired)) {
-            
-            if (includeRetired) {
-                relationshipTypes.addAll(providerRole.getRelationshipTypes());
-            }
-            // filter out any retired relationships
-            else {
-                relationshipTypes.addAll(CollectionUtils.select(providerRole.getRelationshipTypes(), new Predicate() {
-                    @Override
-                    public boolean evaluate(Object relationshipType) {
-                        return !((RelationshipType) relationshipType).getRetired();
-                    }
-                }));
-            }
+        // return empty list if no query
+        if (query == null || query.length() == 0) {
+            return new ArrayList<Person>();
+        }
+
+        if (includeRetired == null) {
+            throw new RuntimeException("include retired must be specified when searching for providers");
         }
 
-        return new ArrayList<RelationshipType>(relationshipTypes);
+        return dao.getProvidersByNameOrIdentifier(query, providerRoles, includeRetired);
     }
 
     @Override
-    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired) {
+    @Transactional(readOnly = true)
+    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length) {
+        return getProvidersAsPersons(query, providerRoles, includeRetired, null, null, start, length);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Integer getCountOfProviders(String query, List<ProviderRole> providerRoles, Boolean includeRetired) {
+        return getCountOfProviders(query, providerRoles, includeRetired, null, null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                              Person excludeSuperviseesOf, Person excludeProvider, Integer start, Integer length) {
 
         // return empty list if no query
         if (query == null || query.length() == 0) {
             return new ArrayList<Person>();
         }
 
-        List<Person> nameMatches = getProvidersAsPersons(query, null, providerRoles, includeRetired);
-        List<Person> identifierMatches = getProvidersAsPersons(null, query, providerRoles, includeRetired);
+        if (includeRetired == null) {
+            throw new RuntimeException("include retired must be specified when searching for providers");
+        }
+
+        return dao.getProvidersByNameOrIdentifier(query, providerRoles, includeRetired, excludeSuperviseesOf, excludeProvider, start, length);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Integer getCountOfProviders(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                       Person excludeSuperviseesOf, Person excludeProvider) {
 
-        if (identifierMatches == null || identifierMatches.size() == 0) {
-            return nameMatches;
+        if (query == null || query.length() == 0) {
+            return 0;
         }
-        else if (nameMatches == null || nameMatches.size() == 0) {
-            return identifierMatches;
+
+        if (includeRetired == null) {
+            throw new RuntimeException("include retired must be specified when searching for providers");
         }
-        else {
-            // do a union
-            // TODO: how is the performance of this?
-            nameMatches.removeAll(identifierMatches);
-            identifierMatches.addAll(nameMatches);
-            Collections.sort(identifierMatches, new PersonByFirstNameComparator());
-            return identifierMatches;
+
+        return dao.getCountOfProvidersByNameOrIdentifier(query, providerRoles, includeRetired, excludeSuperviseesOf, excludeProvider).intValue();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired, ProviderSearchResultHandler handler)
+            throws IOException {
+        streamProvidersAsPersons(query, providerRoles, includeRetired, null, null, handler);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamProvidersAsPersons(String query, List<ProviderRole> providerRoles, Boolean includeRetired,
+                                         Person excludeSuperviseesOf, Person excludeProvider, ProviderSearchResultHandler handler)
+            throws IOException {
+
+        if (query == null || query.length() == 0) {
+            return;
         }
+
+        if (includeRetired == null) {
+            throw new RuntimeException("include retired must be specified when searching for providers");
+        }
+
+        dao.scrollProvidersByNameOrIdentifier(query, providerRoles, includeRetired, excludeSuperviseesOf, excludeProvider, handler);
     }
 
     @Override
@@ -266,6 +350,18 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         return dao.getProviders(name, identifier, personAddress, personAttribute, providerRoles, includeRetired);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getProvidersAsPersons(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired, Integer start, Integer length) {
+        return dao.getProviders(name, identifier, personAddress, personAttribute, providerRoles, includeRetired, start, length);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Integer getCountOfProviders(String name, String identifier, PersonAddress personAddress, PersonAttribute personAttribute, List<ProviderRole> providerRoles, Boolean includeRetired) {
+        return dao.getCountOfProviders(name, identifier, personAddress, personAttribute, providerRoles, includeRetired).intValue();
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<ProviderRole> getProviderRoles(Person provider) {
@@ -320,6 +416,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         p.setIdentifier(identifier);
         p.setProviderRole(role);
         Context.getProviderService().saveProvider(p);
+        ProviderLookupMemo.invalidate();
     }
 
     @Override
@@ -345,6 +442,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         for (Provider p : getProvidersByPerson(provider, true)) {
             if (p.getProviderRole().equals(role)) {
                 Context.getProviderService().retireProvider(p, "removing provider role " + role + " from " + provider);
+                ProviderLookupMemo.invalidate();
             }
         }
     }
@@ -371,6 +469,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         for (Provider p : getProvidersByPerson(provider, true)) {
             if (p.getProviderRole().equals(role)) {
                 Context.getProviderService().purgeProvider(p);
+                ProviderLookupMemo.invalidate();
             }
         }
     }
@@ -422,6 +521,21 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getProvidersAsPersonsByRelationshipType(RelationshipType relationshipType, Collection<Integer> personIds) {
+
+        if (relationshipType == null) {
+            throw new  APIException("Relationship type cannot be null");
+        }
+
+        if (personIds == null || personIds.isEmpty()) {
+            return new ArrayList<Person>();
+        }
+
+        return dao.getProviderPersonsByRelationshipType(relationshipType, personIds, false);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<ProviderRole> getProviderRolesThatCanSuperviseThisProvider(Person provider) {
@@ -455,17 +569,16 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throw new APIException("Provider cannot be null");
         }
 
-        Set<ProviderRole> rolesThatProviderCanSupervise = new HashSet<ProviderRole>();
+        List<ProviderRole> rolesThatProviderCanSupervise = new ArrayList<ProviderRole>();
 
-        // iterate through all the provider roles this provider supports
-        for (ProviderRole role : getProviderRoles(provider)) {
-            // add all roles that this role can supervise
-            if (role.getSuperviseeProviderRoles() != null && role.getSuperviseeProviderRoles().size() > 0) {
-                rolesThatProviderCanSupervise.addAll(role.getSuperviseeProviderRoles());
+        for (Integer roleId : getProviderRoleIdsThatProviderCanSupervise(provider)) {
+            ProviderRole role = dao.getProviderRole(roleId);
+            if (role != null) {
+                rolesThatProviderCanSupervise.add(role);
             }
         }
 
-        return new ArrayList<ProviderRole> (rolesThatProviderCanSupervise);
+        return rolesThatProviderCanSupervise;
     }
 
     @Override
@@ -480,6 +593,25 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         return providers == null || providers.size() == 0 ? false : true;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Set<Integer> getProviderPersonIds(Collection<Person> persons) {
+
+        if (persons == null || persons.isEmpty()) {
+            return new HashSet<Integer>();
+        }
+
+        Set<Integer> personIds = new HashSet<Integer>();
+        for (Person person : persons) {
+            if (person != null && person.getId() != null) {
+                personIds.add(person.getId());
+            }
+        }
+
+        // like isProvider, include persons only associated with retired providers
+        return dao.getProviderPersonIds(personIds, true);
+    }
+
 
     @Override
     @Transactional(readOnly = true)
@@ -534,12 +666,16 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
 
         // get all the provider roles the supervisor can supervise
-        List<ProviderRole> rolesThatProviderCanSupervisee = getProviderRolesThatProviderCanSupervise(supervisor);
+        Set<Integer> rolesThatProviderCanSupervise = getProviderRoleIdsThatProviderCanSupervise(supervisor);
 
-        // get all the roles associated with the supervisee
-        List<ProviderRole> superviseeProviderRoles = getProviderRoles(supervisee);
+        // see if any of the roles associated with the supervisee is one of them
+        for (ProviderRole role : getProviderRoles(supervisee)) {
+            if (rolesThatProviderCanSupervise.contains(role.getId())) {
+                return true;
+            }
+        }
 
-        return ListUtils.intersection(rolesThatProviderCanSupervisee, superviseeProviderRoles).size() > 0 ? true : false;
+        return false;
     }
 
 
@@ -620,6 +756,98 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
     }
 
+    @Override
+    @Transactional
+    public Map<Patient, AssignmentOutcome> assignPatientsToProvider(Collection<Patient> patients, Person provider, RelationshipType relationshipType, Date date)
+            throws ProviderDoesNotSupportRelationshipTypeException, PersonIsNotProviderException, DateCannotBeInFutureException {
+
+        if (patients == null) {
+            throw new APIException("Patients cannot be null");
+        }
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (relationshipType == null) {
+            throw new APIException("Relationship type cannot be null");
+        }
+
+        if (provider.isVoided()) {
+            throw new APIException("Provider cannot be voided");
+        }
+
+        if (!isProvider(provider)) {
+            throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
+        }
+
+        if (!supportsRelationshipType(provider, relationshipType)) {
+            throw new ProviderDoesNotSupportRelationshipTypeException(provider.getPersonName() + " cannot support " + relationshipType);
+        }
+
+        // use current date if no date specified
+        if (date == null) {
+            date = new Date();
+        }
+
+        if (date.after(new Date())) {
+            throw new DateCannotBeInFutureException("Assignment date cannot be in the future");
+        }
+
+        Set<Integer> patientIds = new HashSet<Integer>();
+        for (Patient patient : patients) {
+            if (patient == null) {
+                throw new APIException("Patient cannot be null");
+            }
+            if (!patient.isVoided()) {
+                patientIds.add(patient.getPatientId());
+            }
+        }
+
+        // fetch the existing relationships for all the patients at once (as getActiveProviderRelationshipsForPatient would)
+        Set<Integer> alreadyAssigned = new HashSet<Integer>();
+        for (Relationship relationship : dao.getActiveRelationships(provider, patientIds, relationshipType, date)) {
+            alreadyAssigned.add(relationship.getPersonB().getId());
+        }
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date startDate = ProviderManagementUtils.clearTimeComponent(date);
+        User user = Context.getAuthenticatedUser();
+        Date now = new Date();
+
+        Map<Patient, AssignmentOutcome> outcomes = new LinkedHashMap<Patient, AssignmentOutcome>();
+        List<Relationship> relationships = new ArrayList<Relationship>();
+
+        for (Patient patient : patients) {
+            if (outcomes.containsKey(patient)) {
+                // the same patient was passed in more than once
+                continue;
+            }
+
+            if (patient.isVoided()) {
+                outcomes.put(patient, AssignmentOutcome.VOIDED);
+            }
+            else if (!alreadyAssigned.add(patient.getPatientId())) {
+                outcomes.put(patient, AssignmentOutcome.ALREADY_ASSIGNED);
+            }
+            else {
+                Relationship relationship = new Relationship();
+                relationship.setPersonA(provider);
+                relationship.setPersonB(patient);
+                relationship.setRelationshipType(relationshipType);
+                relationship.setStartDate(startDate);
+                relationship.setCreator(user);
+                relationship.setDateCreated(now);
+                relationships.add(relationship);
+                outcomes.put(patient, AssignmentOutcome.ASSIGNED);
+            }
+        }
+
+        validateAndSaveRelationships(relationships);
+
+        return outcomes;
+    }
+
 
     @Override
     @Transactional
@@ -644,7 +872,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
 
         // we don't need to assure that the person supports the relationship type, but we need to make sure this a provider/patient relationship type
-        if (!getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (!isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
         }
 
@@ -690,6 +918,11 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     @Transactional
     public void unassignAllPatientsFromProvider(Person provider, RelationshipType relationshipType)
             throws PersonIsNotProviderException, InvalidRelationshipTypeException {
+        unassignAllPatientsFromProvider(provider, relationshipType, false);
+    }
+
+    private void unassignAllPatientsFromProvider(Person provider, RelationshipType relationshipType, boolean clearSession)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException {
 
         if (provider == null) {
             throw new APIException("Provider cannot be null");
@@ -704,25 +937,26 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
 
         // we don't need to assure that the person supports the relationship type, but we need to make sure this a provider/patient relationship type
-        if (!getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (!isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
         }
 
         // go ahead and end each relationship on the current date
-        List<Relationship> relationships =
-                Context.getPersonService().getRelationships(provider, null, relationshipType, ProviderManagementUtils.clearTimeComponent(new Date()));
-        if (relationships != null || relationships.size() > 0) {
-            for (Relationship relationship : relationships) {
-                relationship.setEndDate(ProviderManagementUtils.clearTimeComponent(new Date()));
-                Context.getPersonService().saveRelationship(relationship);
-            }
-        }
+        Date today = ProviderManagementUtils.clearTimeComponent(new Date());
+        endRelationships(dao.getRelationshipIds(provider, null, relationshipType, today), today, Context.getAuthenticatedUser(), clearSession);
     }
 
     @Override
     @Transactional
     public void unassignAllPatientsFromProvider(Person provider)
             throws PersonIsNotProviderException {
+        unassignAllPatientsFromProvider(provider, false);
+    }
+
+    @Override
+    @Transactional
+    public void unassignAllPatientsFromProvider(Person provider, boolean clearSession)
+            throws PersonIsNotProviderException {
         
         if (provider == null) {
             throw new APIException("Provider cannot be null");
@@ -730,7 +964,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
 
         for (RelationshipType relationshipType : getAllProviderRoleRelationshipTypes(false)) {
             try {
-                unassignAllPatientsFromProvider(provider, relationshipType);
+                unassignAllPatientsFromProvider(provider, relationshipType, clearSession);
             }
             catch (InvalidRelationshipTypeException e) {
                 // we should never get this exception, since getAlProviderRoleRelationshipTypes
@@ -754,7 +988,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
         }
 
-        if (relationshipType != null && !getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (relationshipType != null && !isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
         }
 
@@ -802,6 +1036,68 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public List<PatientOfProvider> getPatientsOfProvider(Person provider, RelationshipType relationshipType, Date date, int start, int length, String sortField)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException {
+
+        // this returns patient names and identifiers, so make sure the user has the same access as for getPatientsOfProvider
+        Context.requirePrivilege(PrivilegeConstants.VIEW_PATIENTS);
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (!isProvider(provider)) {
+            throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
+        }
+
+        if (relationshipType != null && !isProviderRoleRelationshipType(relationshipType)) {
+            throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
+        }
+
+        if (start < 0 || length < 0) {
+            throw new APIException("Start and length cannot be negative");
+        }
+
+        // if a relationship type was not specified, include all provider relationship types
+        List<RelationshipType> relationshipTypes = relationshipType != null ? Collections.singletonList(relationshipType)
+                : getAllProviderRoleRelationshipTypes(true);
+
+        return dao.getPatientsOfProvider(provider, relationshipTypes, date, start, length, sortField);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProviderPersonRelationship> getPatientRelationshipsOfProvider(Person provider, Collection<RelationshipType> relationshipTypes, Date date)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException {
+
+        // this returns patients, so make sure the user has the same access as for getPatientsOfProvider
+        Context.requirePrivilege(PrivilegeConstants.VIEW_PATIENTS);
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (!isProvider(provider)) {
+            throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
+        }
+
+        if (relationshipTypes == null) {
+            relationshipTypes = getAllProviderRoleRelationshipTypes(true);
+        }
+        else {
+            for (RelationshipType relationshipType : relationshipTypes) {
+                if (!isProviderRoleRelationshipType(relationshipType)) {
+                    throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
+                }
+            }
+        }
+
+        return dao.getPatientRelationshipsOfProvider(provider, relationshipTypes, date);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public int getPatientsOfProviderCount(Person provider, RelationshipType relationshipType, Date date)
         throws PersonIsNotProviderException, InvalidRelationshipTypeException {
 
@@ -815,21 +1111,97 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
         }
 
-        if (relationshipType != null && !getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (relationshipType != null && !isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
         }
 
-        // get the specified relationships for the provider
-        List<Relationship> relationships =
-                Context.getPersonService().getRelationships(provider, null, relationshipType, date);
+        // if a relationship type was not specified, count across all provider relationship types
+        List<RelationshipType> relationshipTypes = relationshipType != null ? Collections.singletonList(relationshipType)
+                : getAllProviderRoleRelationshipTypes(true);
 
-        // if a relationship type was not specified, we need to filter this list to only contain provider relationships
-        if (relationshipType == null) {
-            ProviderManagementUtils.filterNonProviderRelationships(relationships);
+        // the count is done in the database, and excludes voided patients
+        return dao.getPatientsOfProviderCount(provider, relationshipTypes, date);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Integer, Patient> getPatients(Collection<Integer> patientIds) {
+
+        // make sure the user has the same access as for PatientService.getPatient
+        Context.requirePrivilege(PrivilegeConstants.VIEW_PATIENTS);
+
+        Map<Integer, Patient> patients = new HashMap<Integer, Patient>();
+        for (Patient patient : dao.getPatients(patientIds)) {
+            patients.put(patient.getPatientId(), patient);
+        }
+        return patients;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Integer, List<PatientProgram>> getPatientPrograms(Collection<Integer> patientIds, boolean includeCompleted) {
+
+        // make sure the user has the same access as for ProgramWorkflowService.getPatientPrograms
+        Context.requirePrivilege(PrivilegeConstants.VIEW_PATIENT_PROGRAMS);
+
+        Map<Integer, List<PatientProgram>> patientPrograms = new HashMap<Integer, List<PatientProgram>>();
+
+        if (patientIds == null) {
+            return patientPrograms;
+        }
+
+        for (Integer patientId : patientIds) {
+            patientPrograms.put(patientId, new ArrayList<PatientProgram>());
+        }
+
+        for (PatientProgram patientProgram : dao.getPatientPrograms(patientIds, includeCompleted)) {
+            patientPrograms.get(patientProgram.getPatient().getPatientId()).add(patientProgram);
+        }
+
+        return patientPrograms;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Person, Map<RelationshipType, Integer>> getPatientsOfProvidersCount(Collection<Person> providers, Collection<RelationshipType> relationshipTypes, Date date)
+            throws PersonIsNotProviderException, InvalidRelationshipTypeException {
+
+        // as with getPatientsOfProviderCount, this method should be callable by users that don't have the right to view patients
+        if (providers == null) {
+            throw new APIException("Providers cannot be null");
+        }
+
+        if (relationshipTypes == null) {
+            relationshipTypes = getAllProviderRoleRelationshipTypes(true);
+        }
+
+        for (RelationshipType relationshipType : relationshipTypes) {
+            if (!isProviderRoleRelationshipType(relationshipType)) {
+                throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
+            }
+        }
+
+        Set<Integer> providerPersonIds = getProviderPersonIds(providers);
+        for (Person provider : providers) {
+            if (!providerPersonIds.contains(provider.getId())) {
+                throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
+            }
+        }
+
+        Map<Integer, Map<Integer, Integer>> countsByProviderId = dao.getPatientsOfProvidersCount(providerPersonIds, relationshipTypes, date);
+
+        Map<Person, Map<RelationshipType, Integer>> counts = new LinkedHashMap<Person, Map<RelationshipType, Integer>>();
+        for (Person provider : providers) {
+            Map<Integer, Integer> countsByRelationshipTypeId = countsByProviderId.get(provider.getId());
+            Map<RelationshipType, Integer> providerCounts = new LinkedHashMap<RelationshipType, Integer>();
+            for (RelationshipType relationshipType : relationshipTypes) {
+                Integer count = countsByRelationshipTypeId != null ? countsByRelationshipTypeId.get(relationshipType.getId()) : null;
+                providerCounts.put(relationshipType, count != null ? count : 0);
+            }
+            counts.put(provider, providerCounts);
         }
 
-        // TODO: the one flaw here is that this counts relationships with voided patients (but hopefully any relationships for voided patients will also be voided)
-        return relationships != null ? relationships.size() : 0;
+        return counts;
     }
 
     @Override
@@ -852,7 +1224,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
         }
         
-        if (relationshipType != null && !getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (relationshipType != null && !isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException(relationshipType + " is not a patient/provider relationship");
         }
 
@@ -881,7 +1253,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
         }
 
-        if (relationshipType != null && !getAllProviderRoleRelationshipTypes(false).contains(relationshipType)) {
+        if (relationshipType != null && !isProviderRoleRelationshipType(relationshipType)) {
             throw new InvalidRelationshipTypeException(relationshipType + " is not a patient/provider relationship");
         }
 
@@ -956,41 +1328,26 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             PersonIsNotProviderException, InvalidRelationshipTypeException, PatientNotAssignedToProviderException,
             DateCannotBeInFutureException {
 
-        if (sourceProvider == null) {
-            throw new APIException("Source provider cannot be null");
-        }
+        validateTransfer(sourceProvider, destinationProvider, relationshipType);
 
-        if (destinationProvider == null) {
-            throw new APIException("Destination provider cannot be null");
+        if (patients == null) {
+            throw new APIException("Patients cannot be null");
         }
 
-        if (!isProvider(sourceProvider)) {
-            throw new PersonIsNotProviderException(sourceProvider.getPersonName() + " is not a provider");
-        }
-
-        if (!isProvider(destinationProvider)) {
-            throw new PersonIsNotProviderException(destinationProvider.getPersonName() + " is not a provider");
-        }
-
-        if (sourceProvider.equals(destinationProvider)) {
-            throw new SourceProviderSameAsDestinationProviderException("Provider " + sourceProvider.getPersonName() + " is the same as provider " + destinationProvider.getPersonName());
-        }
-
-        if (relationshipType == null) {
-            throw new APIException("Relationship type cannot be null");
-        }
-
-        // assign these patients to the new provider, unassign them from the old provider
+        Set<Integer> patientIds = new LinkedHashSet<Integer>();
         for (Patient patient : patients) {
-            try {
-                assignPatientToProvider(patient, destinationProvider, relationshipType, date);
+            if (patient == null) {
+                throw new APIException("Patient cannot be null");
             }
-            catch (PatientAlreadyAssignedToProviderException e) {
-                // we can ignore this exception; no need to assign patient if already assigned
+
+            if (patient.isVoided()) {
+                throw new APIException("Patient cannot be voided");
             }
 
-            unassignPatientFromProvider(patient, sourceProvider, relationshipType, date);
+            patientIds.add(patient.getId());
         }
+
+        transferPatientRelationships(patientIds, sourceProvider, destinationProvider, relationshipType, date, Context.getAuthenticatedUser());
     }
 
     @Override
@@ -1008,8 +1365,20 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
             throws ProviderDoesNotSupportRelationshipTypeException, SourceProviderSameAsDestinationProviderException,
             PersonIsNotProviderException, InvalidRelationshipTypeException, DateCannotBeInFutureException {
 
+        validateTransfer(sourceProvider, destinationProvider, relationshipType);
+
+        if (!isProviderRoleRelationshipType(relationshipType)) {
+            throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
+        }
+
+        // use current date if no date specified
+        if (date == null) {
+            date = new Date();
+        }
+
         try {
-            transferPatients(getPatientsOfProvider(sourceProvider, relationshipType, date), sourceProvider, destinationProvider, relationshipType, date);
+            transferPatientRelationships(dao.getPatientIdsOfProvider(sourceProvider, Collections.singletonList(relationshipType), date),
+                    sourceProvider, destinationProvider, relationshipType, date, Context.getAuthenticatedUser());
         }
         catch (PatientNotAssignedToProviderException e) {
             // we should fail hard here, because getPatientsOfProvider should only return patients of the provider,
@@ -1054,6 +1423,120 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         transferAllPatients(sourceProvider, destinationProvider, new Date());
     }
 
+    private void validateTransfer(Person sourceProvider, Person destinationProvider, RelationshipType relationshipType)
+            throws PersonIsNotProviderException, SourceProviderSameAsDestinationProviderException {
+
+        if (sourceProvider == null) {
+            throw new APIException("Source provider cannot be null");
+        }
+
+        if (destinationProvider == null) {
+            throw new APIException("Destination provider cannot be null");
+        }
+
+        if (!isProvider(sourceProvider)) {
+            throw new PersonIsNotProviderException(sourceProvider.getPersonName() + " is not a provider");
+        }
+
+        if (!isProvider(destinationProvider)) {
+            throw new PersonIsNotProviderException(destinationProvider.getPersonName() + " is not a provider");
+        }
+
+        if (sourceProvider.equals(destinationProvider)) {
+            throw new SourceProviderSameAsDestinationProviderException("Provider " + sourceProvider.getPersonName() + " is the same as provider " + destinationProvider.getPersonName());
+        }
+
+        if (relationshipType == null) {
+            throw new APIException("Relationship type cannot be null");
+        }
+    }
+
+    /**
+     * Assigns the patients to the destination provider and unassigns them from the source provider, as
+     * assignPatientToProvider and unassignPatientFromProvider would for each patient in turn, but validating
+     * the providers once and fetching all the relationships involved with a couple of queries; nothing is
+     * changed unless all the patients can be transferred; the changes are recorded as made by the specified user
+     */
+    private void transferPatientRelationships(Collection<Integer> patientIds, Person sourceProvider, Person destinationProvider,
+                                              RelationshipType relationshipType, Date date, User user)
+            throws ProviderDoesNotSupportRelationshipTypeException, InvalidRelationshipTypeException,
+            PatientNotAssignedToProviderException, DateCannotBeInFutureException {
+
+        if (patientIds.isEmpty()) {
+            return;
+        }
+
+        if (destinationProvider.isVoided()) {
+            throw new APIException("Provider cannot be voided");
+        }
+
+        if (!supportsRelationshipType(destinationProvider, relationshipType)) {
+            throw new ProviderDoesNotSupportRelationshipTypeException(destinationProvider.getPersonName() + " cannot support " + relationshipType);
+        }
+
+        if (!isProviderRoleRelationshipType(relationshipType)) {
+            throw new InvalidRelationshipTypeException("Invalid relationship type: " + relationshipType + " is not a provider/patient relationship type");
+        }
+
+        // use current date if no date specified
+        if (date == null) {
+            date = new Date();
+        }
+
+        if (date.after(new Date())) {
+            throw new DateCannotBeInFutureException("Assignment date cannot be in the future");
+        }
+
+        // each patient must have exactly one active relationship with the source provider
+        Map<Integer, Relationship> sourceRelationships = new HashMap<Integer, Relationship>();
+        for (Relationship relationship : dao.getActiveRelationships(sourceProvider, patientIds, relationshipType, date)) {
+            Person patient = relationship.getPersonB();
+            if (sourceRelationships.put(patient.getId(), relationship) != null) {
+                throw new APIException("Duplicate " + relationshipType + " between " + sourceProvider.getPersonName() + " and " + patient.getPersonName());
+            }
+        }
+
+        for (Integer patientId : patientIds) {
+            if (!sourceRelationships.containsKey(patientId)) {
+                throw new PatientNotAssignedToProviderException(Context.getPatientService().getPatient(patientId).getPersonName() + " is not assigned to "
+                        + sourceProvider.getPersonName() + " with a " + relationshipType + " relationship on " + Context.getDateFormat().format(date));
+            }
+        }
+
+        // no need to assign patients already assigned to the destination provider
+        Set<Integer> alreadyAssigned = new HashSet<Integer>();
+        for (Relationship relationship : dao.getActiveRelationships(destinationProvider, patientIds, relationshipType, date)) {
+            alreadyAssigned.add(relationship.getPersonB().getId());
+        }
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date transferDate = ProviderManagementUtils.clearTimeComponent(date);
+        Date now = new Date();
+
+        List<Relationship> relationships = new ArrayList<Relationship>();
+        for (Integer patientId : patientIds) {
+            Relationship sourceRelationship = sourceRelationships.get(patientId);
+
+            if (!alreadyAssigned.contains(patientId)) {
+                Relationship relationship = new Relationship();
+                relationship.setPersonA(destinationProvider);
+                relationship.setPersonB(sourceRelationship.getPersonB());
+                relationship.setRelationshipType(relationshipType);
+                relationship.setStartDate(transferDate);
+                relationship.setCreator(user);
+                relationship.setDateCreated(now);
+                relationships.add(relationship);
+            }
+
+            sourceRelationship.setEndDate(transferDate);
+            sourceRelationship.setChangedBy(user);
+            sourceRelationship.setDateChanged(now);
+            relationships.add(sourceRelationship);
+        }
+
+        validateAndSaveRelationships(relationships);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public RelationshipType getSupervisorRelationshipType() {
@@ -1122,6 +1605,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         relationship.setRelationshipType(getSupervisorRelationshipType());
         relationship.setStartDate(ProviderManagementUtils.clearTimeComponent(date));
         Context.getPersonService().saveRelationship(relationship);
+        supervisionGraphCache.invalidate();
     }
 
     @Override
@@ -1139,6 +1623,124 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
     }
 
+    @Override
+    @Transactional
+    public Map<Person, AssignmentOutcome> assignProvidersToSupervisor(Collection<Person> providers, Person supervisor, Date date)
+            throws PersonIsNotProviderException, DateCannotBeInFutureException {
+        return assignProvidersToSupervisor(providers, supervisor, date, Context.getAuthenticatedUser());
+    }
+
+    /**
+     * As assignProvidersToSupervisor, but recording the new relationships as created by the specified user
+     */
+    private Map<Person, AssignmentOutcome> assignProvidersToSupervisor(Collection<Person> providers, Person supervisor, Date date, User user)
+            throws PersonIsNotProviderException, DateCannotBeInFutureException {
+
+        if (providers == null) {
+            throw new APIException("Providers cannot be null");
+        }
+
+        if (supervisor == null) {
+            throw new APIException("Supervisor cannot be null");
+        }
+
+        if (!isProvider(supervisor)) {
+            throw new PersonIsNotProviderException(supervisor.getPersonName() + " is not a provider");
+        }
+
+        // if no date specified, use today's date
+        if (date == null) {
+            date = new Date();
+        }
+
+        if (date.after(new Date())) {
+            throw new DateCannotBeInFutureException("Assignment date cannot be in the future");
+        }
+
+        for (Person provider : providers) {
+            if (provider == null) {
+                throw new APIException("Provider cannot be null");
+            }
+        }
+
+        // work out what the supervisor can supervise once, rather than once per provider as canSupervise would
+        Set<Integer> rolesThatSupervisorCanSupervise = getProviderRoleIdsThatProviderCanSupervise(supervisor);
+
+        // fetch the providers associated with all the persons at once (retired providers count towards isProvider, but not towards roles)
+        Map<Person, List<Provider>> providersByPerson = getProvidersByPersons(providers, true);
+
+        Set<Integer> superviseeIds = new HashSet<Integer>();
+        Map<Person, AssignmentOutcome> outcomes = new LinkedHashMap<Person, AssignmentOutcome>();
+
+        for (Map.Entry<Person, List<Provider>> entry : providersByPerson.entrySet()) {
+            Person provider = entry.getKey();
+
+            if (entry.getValue().isEmpty()) {
+                outcomes.put(provider, AssignmentOutcome.NOT_A_PROVIDER);
+                continue;
+            }
+
+            boolean canSupervise = false;
+            // a person can't supervise themselves
+            if (!supervisor.equals(provider)) {
+                for (Provider p : entry.getValue()) {
+                    if (!p.isRetired() && p.getProviderRole() != null && rolesThatSupervisorCanSupervise.contains(p.getProviderRole().getId())) {
+                        canSupervise = true;
+                        break;
+                    }
+                }
+            }
+
+            if (canSupervise) {
+                superviseeIds.add(provider.getId());
+            }
+            else {
+                outcomes.put(provider, AssignmentOutcome.INVALID_SUPERVISOR);
+            }
+        }
+
+        // fetch the existing relationships with all the providers at once (as with assignProviderToSupervisor, only
+        // relationships that have started and have no end date count)
+        RelationshipType supervisorRelationshipType = getSupervisorRelationshipType();
+        Set<Integer> alreadyAssigned = new HashSet<Integer>();
+        for (Relationship relationship : dao.getActiveRelationships(supervisor, superviseeIds, supervisorRelationshipType, date)) {
+            alreadyAssigned.add(relationship.getPersonB().getId());
+        }
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date startDate = ProviderManagementUtils.clearTimeComponent(date);
+        Date now = new Date();
+
+        List<Relationship> relationships = new ArrayList<Relationship>();
+        for (Person provider : providersByPerson.keySet()) {
+            if (outcomes.containsKey(provider)) {
+                continue;
+            }
+
+            if (!alreadyAssigned.add(provider.getId())) {
+                outcomes.put(provider, AssignmentOutcome.ALREADY_ASSIGNED);
+            }
+            else {
+                Relationship relationship = new Relationship();
+                relationship.setPersonA(supervisor);
+                relationship.setPersonB(provider);
+                relationship.setRelationshipType(supervisorRelationshipType);
+                relationship.setStartDate(startDate);
+                relationship.setCreator(user);
+                relationship.setDateCreated(now);
+                relationships.add(relationship);
+                outcomes.put(provider, AssignmentOutcome.ASSIGNED);
+            }
+        }
+
+        if (!relationships.isEmpty()) {
+            validateAndSaveRelationships(relationships);
+            supervisionGraphCache.invalidate();
+        }
+
+        return outcomes;
+    }
+
     @Override
     @Transactional
     public void unassignProviderFromSupervisor(Person provider, Person supervisor, Date date)
@@ -1183,6 +1785,7 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         Relationship relationship = relationships.get(0);
         relationship.setEndDate(ProviderManagementUtils.clearTimeComponent(date));
         Context.getPersonService().saveRelationship(relationship);
+        supervisionGraphCache.invalidate();
     }
 
     @Override
@@ -1203,6 +1806,13 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     @Transactional
     public void unassignAllSupervisorsFromProvider(Person provider) 
             throws PersonIsNotProviderException {
+        unassignAllSupervisorsFromProvider(provider, false);
+    }
+
+    @Override
+    @Transactional
+    public void unassignAllSupervisorsFromProvider(Person provider, boolean clearSession)
+            throws PersonIsNotProviderException {
          if (provider == null) {
             throw new APIException("Provider cannot be null");
         }
@@ -1212,20 +1822,21 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
 
         // go ahead and end each relationship on the current date
-        List<Relationship> relationships =
-                Context.getPersonService().getRelationships(null, provider, getSupervisorRelationshipType(), ProviderManagementUtils.clearTimeComponent(new Date()));
-        if (relationships != null || relationships.size() > 0) {
-            for (Relationship relationship : relationships) {
-                relationship.setEndDate(ProviderManagementUtils.clearTimeComponent(new Date()));
-                Context.getPersonService().saveRelationship(relationship);
-            }
-        }
+        Date today = ProviderManagementUtils.clearTimeComponent(new Date());
+        endRelationships(dao.getRelationshipIds(null, provider, getSupervisorRelationshipType(), today), today, Context.getAuthenticatedUser(), clearSession);
     }
 
     @Override
     @Transactional
     public void unassignAllProvidersFromSupervisor(Person supervisor)
             throws PersonIsNotProviderException {
+        unassignAllProvidersFromSupervisor(supervisor, false);
+    }
+
+    @Override
+    @Transactional
+    public void unassignAllProvidersFromSupervisor(Person supervisor, boolean clearSession)
+            throws PersonIsNotProviderException {
         if (supervisor == null) {
             throw new APIException("Provider cannot be null");
         }
@@ -1235,14 +1846,8 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         }
 
         // go ahead and end each relationship on the current date
-        List<Relationship> relationships =
-                Context.getPersonService().getRelationships(supervisor, null, getSupervisorRelationshipType(), ProviderManagementUtils.clearTimeComponent(new Date()));
-        if (relationships != null || relationships.size() > 0) {
-            for (Relationship relationship : relationships) {
-                relationship.setEndDate(ProviderManagementUtils.clearTimeComponent(new Date()));
-                Context.getPersonService().saveRelationship(relationship);
-            }
-        }
+        Date today = ProviderManagementUtils.clearTimeComponent(new Date());
+        endRelationships(dao.getRelationshipIds(supervisor, null, getSupervisorRelationshipType(), today), today, Context.getAuthenticatedUser(), clearSession);
     }
 
     @Override
@@ -1349,6 +1954,63 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
         return getSuperviseesForSupervisor(supervisor, null);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getAllSuperviseesForSupervisor(Person supervisor, Date date, Integer maxDepth)
+            throws PersonIsNotProviderException {
+
+        if (supervisor == null) {
+            throw new APIException("Supervisor cannot be null");
+        }
+
+        if (!isProvider(supervisor)) {
+            throw new PersonIsNotProviderException(supervisor.getPersonName() + " is not a provider");
+        }
+
+        if (maxDepth != null && maxDepth < 1) {
+            throw new APIException("Maximum depth must be at least 1");
+        }
+
+        Map<Integer, Integer> superviseeIds = getSupervisionGraph(date).getSubordinateIds(supervisor.getId(), maxDepth);
+        return dao.getPersons(new ArrayList<Integer>(superviseeIds.keySet()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Person> getAllSupervisorsForProvider(Person provider, Date date, Integer maxDepth)
+            throws PersonIsNotProviderException {
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (!isProvider(provider)) {
+            throw new PersonIsNotProviderException(provider.getPersonName() + " is not a provider");
+        }
+
+        if (maxDepth != null && maxDepth < 1) {
+            throw new APIException("Maximum depth must be at least 1");
+        }
+
+        Map<Integer, Integer> supervisorIds = getSupervisionGraph(date).getSuperiorIds(provider.getId(), maxDepth);
+        return dao.getPersons(new ArrayList<Integer>(supervisorIds.keySet()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean wouldCreateSupervisionCycle(Person provider, Person supervisor) {
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (supervisor == null) {
+            throw new APIException("Supervisor cannot be null");
+        }
+
+        return getSupervisionGraph(null).wouldCreateCycle(provider.getId(), supervisor.getId());
+    }
+
     @Override
     @Transactional
     public void transferSupervisees(List<Person> supervisees, Person sourceSupervisor, Person destinationSupervisor, Date date)
@@ -1427,50 +2089,727 @@ public class ProviderManagementServiceImpl extends BaseOpenmrsService implements
     @Override
     @Transactional(readOnly = true)
     public List<Provider> getProvidersByPerson(Person person, boolean includeRetired) {
-        return dao.getProvidersByPerson(person, includeRetired);
+
+        // an unsaved person can't have any providers, so there is no point remembering the (empty) answer
+        if (person == null || person.getId() == null) {
+            return dao.getProvidersByPerson(person, includeRetired);
+        }
+
+        // nested calls (canSupervise, getProviderRoles, isProvider...) tend to ask about the same persons repeatedly
+        List<Provider> providers = ProviderLookupMemo.get(person.getId(), includeRetired);
+        if (providers != null) {
+            return providers;
+        }
+
+        // remember all the providers, so that the answer can be reused whether or not retired providers are wanted
+        List<Provider> allProviders = dao.getProvidersByPerson(person, true);
+        ProviderLookupMemo.put(person.getId(), allProviders);
+
+        providers = new ArrayList<Provider>();
+        for (Provider provider : allProviders) {
+            if (includeRetired || !provider.isRetired()) {
+                providers.add(provider);
+            }
+        }
+        return providers;
     }
 
-    /**
-     * Utility methods
-     */
-    private List<Person> providersToPersons(List<Provider> providers) {
-        
-        if (providers == null) {
-            return null;
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Person, List<Provider>> getProvidersByPersons(Collection<Person> persons, boolean includeRetired) {
+
+        Map<Person, List<Provider>> providersByPerson = new LinkedHashMap<Person, List<Provider>>();
+
+        if (persons == null || persons.isEmpty()) {
+            return providersByPerson;
         }
-        
-        Set<Person> persons = new HashSet<Person>();
 
-        // note that simply ignores providers that are not person, as the module cannot handle them (and I believe that it has been determined that OpemMRS won't support them)
-        for (Provider provider : providers) {
-            if (provider.getPerson() != null) {
-                persons.add(provider.getPerson());
+        // key the map by the passed person objects (rather than those hanging off the providers)
+        Map<Integer, List<Provider>> providersByPersonId = new HashMap<Integer, List<Provider>>();
+        List<Person> savedPersons = new ArrayList<Person>();
+        for (Person person : persons) {
+            if (person != null) {
+                List<Provider> providers = new ArrayList<Provider>();
+                providersByPerson.put(person, providers);
+                // an unsaved person can't have any providers
+                if (person.getId() != null) {
+                    providersByPersonId.put(person.getId(), providers);
+                    savedPersons.add(person);
+                }
             }
-            else {
-                log.warn("Ignoring provider " + provider.getId() + " because they are not a person");
+        }
+
+        // the dao returns the providers ordered by id, so each list is ordered the same as getProvidersByPerson
+        for (Provider provider : dao.getProvidersByPersons(savedPersons, includeRetired)) {
+            List<Provider> providers = providersByPersonId.get(provider.getPerson().getId());
+            if (providers != null) {
+                providers.add(provider);
             }
         }
 
-        return new ArrayList<Person>(persons);
+        return providersByPerson;
     }
 
-    private boolean supportsRelationshipType(Provider provider, RelationshipType relationshipType) {
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Integer, List<Provider>> getProvidersByPersonIds(Collection<Integer> personIds, boolean includeRetired) {
 
-        if (provider == null) {
-            throw new APIException("Provider should not be null");
+        Map<Integer, List<Provider>> providersByPersonId = new LinkedHashMap<Integer, List<Provider>>();
+
+        if (personIds == null || personIds.isEmpty()) {
+            return providersByPersonId;
         }
 
-        if (relationshipType == null) {
-            throw new APIException("Relationship type should not be null");
+        for (Integer personId : personIds) {
+            if (personId != null) {
+                providersByPersonId.put(personId, new ArrayList<Provider>());
+            }
         }
 
-        // if this provider has no role, return false
+        // getting the id of the person of a provider doesn't load the person
+        for (Provider provider : dao.getProvidersByPersonIds(providersByPersonId.keySet(), includeRetired)) {
+            List<Provider> providers = providersByPersonId.get(provider.getPerson().getPersonId());
+            if (providers != null) {
+                providers.add(provider);
+            }
+        }
+
+        return providersByPersonId;
+    }
+
+    /**
+     * Methods for transferring, unassigning and retiring in bulk
+     */
+
+    @Override
+    @Transactional(readOnly = true)
+    public BulkJob getBulkJob(Integer id) {
+        return dao.getBulkJob(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public BulkJob getBulkJobByUuid(String uuid) {
+        return dao.getBulkJobByUuid(uuid);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BulkJob> getUnfinishedBulkJobs() {
+        return dao.getBulkJobsByStatus(Arrays.asList(BulkJobStatus.PENDING, BulkJobStatus.RUNNING));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BulkJob> getUnfinishedBulkJobs(Person provider) {
+
+        if (provider == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        return dao.getBulkJobsByProviderAndStatus(provider, Arrays.asList(BulkJobStatus.PENDING, BulkJobStatus.RUNNING));
+    }
+
+    @Override
+    @Transactional
+    public BulkJob saveBulkJob(BulkJob job) {
+
+        if (job.getCreator() == null) {
+            job.setCreator(Context.getAuthenticatedUser());
+        }
+
+        if (job.getDateCreated() == null) {
+            job.setDateCreated(new Date());
+        }
+        else {
+            job.setDateChanged(new Date());
+        }
+
+        return dao.saveBulkJob(job);
+    }
+
+    @Override
+    @Transactional
+    public BulkJob submitBulkJob(BulkJob job)
+            throws PersonIsNotProviderException, DateCannotBeInFutureException {
+
+        if (job == null) {
+            throw new APIException("Job cannot be null");
+        }
+
+        if (job.getJobType() == null) {
+            throw new APIException("Job type cannot be null");
+        }
+
+        if (job.getProvider() == null) {
+            throw new APIException("Provider cannot be null");
+        }
+
+        if (!isProvider(job.getProvider())) {
+            throw new PersonIsNotProviderException(job.getProvider().getPersonName() + " is not a provider");
+        }
+
+        // use current date if no date specified
+        if (job.getDate() == null) {
+            job.setDate(new Date());
+        }
+
+        if (job.getDate().after(new Date())) {
+            throw new DateCannotBeInFutureException("Date cannot be in the future");
+        }
+
+        if (job.getJobType() == BulkJobType.RETIRE_PROVIDER) {
+            job.setItemIdList(getRelationshipIdsToEndOnRetirement(job.getProvider(), job.getDate()));
+        }
+
+        job.setStatus(BulkJobStatus.PENDING);
+        saveBulkJob(job);
+
+        if (job.getTotalItems() <= ProviderManagementGlobalProperties.GLOBAL_PROPERTY_BULK_JOB_CHUNK_SIZE()) {
+            processBulkJobChunk(job);
+        }
+        // the job can only be picked up by another thread once it has been committed
+        else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            final Integer jobId = job.getId();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    BulkJobRunner.run(jobId);
+                }
+            });
+        }
+        else {
+            BulkJobRunner.run(job.getId());
+        }
+
+        return job;
+    }
+
+    @Override
+    @Transactional
+    public boolean processBulkJobChunk(BulkJob job) {
+
+        if (job == null) {
+            throw new APIException("Job cannot be null");
+        }
+
+        if (job.isFinished()) {
+            return false;
+        }
+
+        // the providers may have changed since the job was submitted (or the last chunk was processed)
+        try {
+            validateBulkJob(job);
+        }
+        catch (Exception e) {
+            job.addFailureMessage(e.getMessage());
+            job.setStatus(BulkJobStatus.FAILED);
+            saveBulkJob(job);
+            return false;
+        }
+
+        job.setStatus(BulkJobStatus.RUNNING);
+
+        List<Integer> itemIds = job.getItemIdList();
+        int start = Math.min(job.getProcessedItems(), itemIds.size());
+        int end = Math.min(start + ProviderManagementGlobalProperties.GLOBAL_PROPERTY_BULK_JOB_CHUNK_SIZE(), itemIds.size());
+        List<Integer> chunk = itemIds.subList(start, end);
+
+        switch (job.getJobType()) {
+            case TRANSFER_PATIENTS:
+                transferPatientsChunk(job, chunk);
+                break;
+            case REMOVE_PATIENTS:
+                removePatientsChunk(job, chunk);
+                break;
+            case TRANSFER_SUPERVISEES:
+                transferSuperviseesChunk(job, chunk);
+                break;
+            case RETIRE_PROVIDER:
+                endRelationshipsChunk(job, chunk);
+                break;
+        }
+
+        job.setProcessedItems(end);
+
+        if (end >= itemIds.size()) {
+            if (job.getJobType() == BulkJobType.RETIRE_PROVIDER) {
+                String reason = StringUtils.isNotBlank(job.getReason()) ? job.getReason() : "retired via Provider Management UI";
+                for (Provider provider : dao.getProvidersByPerson(job.getProvider(), false)) {
+                    // the retire handler only sets retiredBy if it isn't already set
+                    provider.setRetiredBy(getBulkJobUser(job));
+                    Context.getProviderService().retireProvider(provider, reason);
+                    ProviderLookupMemo.invalidate();
+                }
+            }
+            job.setStatus(BulkJobStatus.COMPLETED);
+        }
+
+        saveBulkJob(job);
+        return !job.isFinished();
+    }
+
+    @Override
+    @Transactional
+    public void updateProviderNameTokens(Person person) {
+
+        // most persons saved aren't providers, so don't touch the index for them
+        if (person == null || person.getPersonId() == null || !isProvider(person)) {
+            return;
+        }
+
+        dao.deleteProviderNameTokens(person.getPersonId());
+        dao.saveProviderNameTokens(person.getPersonId(), ProviderNameToken.getTokens(person.getNames()));
+    }
+
+    @Override
+    @Transactional
+    public int rebuildProviderNameTokens(boolean onlyIfNotBuilt) {
+
+        if (onlyIfNotBuilt && dao.isProviderNameTokenIndexBuilt()) {
+            return 0;
+        }
+
+        // name searches match the person names directly until the rebuilt index is committed
+        dao.setProviderNameTokenIndexBuilt(false);
+        dao.deleteAllProviderNameTokens();
+
+        int indexed = 0;
+        List<Integer> personIds = dao.getAllProviderPersonIds();
+
+        // only the name columns are fetched, and the saved tokens are evicted chunk by chunk, so that indexing
+        // thousands of providers doesn't fill up the session
+        for (int start = 0; start < personIds.size(); start += RELATIONSHIP_CHUNK_SIZE) {
+            Map<Integer, Set<String>> tokens = dao.getPersonNameTokens(personIds.subList(start, Math.min(start + RELATIONSHIP_CHUNK_SIZE, personIds.size())));
+
+            List<ProviderNameToken> saved = new ArrayList<ProviderNameToken>();
+            for (Map.Entry<Integer, Set<String>> entry : tokens.entrySet()) {
+                saved.addAll(dao.saveProviderNameTokens(entry.getKey(), entry.getValue()));
+                indexed++;
+            }
+
+            dao.flushAndEvict(saved);
+        }
+
+        dao.setProviderNameTokenIndexBuilt(true);
+
+        return indexed;
+    }
+
+    /**
+     * Checks the parts of the job that apply to all its items; items are checked as they are processed
+     */
+    private void validateBulkJob(BulkJob job)
+            throws PersonIsNotProviderException, SourceProviderSameAsDestinationProviderException,
+            ProviderDoesNotSupportRelationshipTypeException, InvalidRelationshipTypeException {
+
+        if (job.getJobType() == BulkJobType.RETIRE_PROVIDER) {
+            return;
+        }
+
+        if (job.getJobType() == BulkJobType.TRANSFER_PATIENTS) {
+            validateTransfer(job.getProvider(), job.getDestinationProvider(), job.getRelationshipType());
+
+            if (job.getDestinationProvider().isVoided()) {
+                throw new APIException("Provider cannot be voided");
+            }
+
+            if (!supportsRelationshipType(job.getDestinationProvider(), job.getRelationshipType())) {
+                throw new ProviderDoesNotSupportRelationshipTypeException(job.getDestinationProvider().getPersonName() + " cannot support " + job.getRelationshipType());
+            }
+        }
+        else if (job.getJobType() == BulkJobType.TRANSFER_SUPERVISEES) {
+            // the relationship type isn't used, so just pass the supervisor relationship type
+            validateTransfer(job.getProvider(), job.getDestinationProvider(), getSupervisorRelationshipType());
+            return;
+        }
+        else {
+            if (!isProvider(job.getProvider())) {
+                throw new PersonIsNotProviderException(job.getProvider().getPersonName() + " is not a provider");
+            }
+
+            if (job.getRelationshipType() == null) {
+                throw new APIException("Relationship type cannot be null");
+            }
+        }
+
+        if (!isProviderRoleRelationshipType(job.getRelationshipType())) {
+            throw new InvalidRelationshipTypeException("Invalid relationship type: " + job.getRelationshipType() + " is not a provider/patient relationship type");
+        }
+    }
+
+    /**
+     * Returns the user that submitted the job, so that changes made while processing the job in the background (as
+     * the daemon user) are still recorded as made by that user
+     */
+    private User getBulkJobUser(BulkJob job) {
+        return job.getCreator() != null ? job.getCreator() : Context.getAuthenticatedUser();
+    }
+
+    /**
+     * Groups the relationships by the id of their person B
+     */
+    private Map<Integer, List<Relationship>> groupByPersonB(List<Relationship> relationships) {
+
+        Map<Integer, List<Relationship>> relationshipsByPerson = new HashMap<Integer, List<Relationship>>();
+        for (Relationship relationship : relationships) {
+            List<Relationship> group = relationshipsByPerson.get(relationship.getPersonB().getId());
+            if (group == null) {
+                group = new ArrayList<Relationship>();
+                relationshipsByPerson.put(relationship.getPersonB().getId(), group);
+            }
+            group.add(relationship);
+        }
+        return relationshipsByPerson;
+    }
+
+    private void transferPatientsChunk(BulkJob job, List<Integer> patientIds) {
+
+        if (tryTransferPatients(job, patientIds) != null) {
+            // nothing is transferred if any patient can't be; so transfer them one at a time to find out which
+            for (Integer patientId : patientIds) {
+                Exception rejection = tryTransferPatients(job, Collections.singletonList(patientId));
+                if (rejection != null) {
+                    job.addFailure(patientId, rejection.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Transfers the patients of a bulk job, returning the reason they can't be transferred if that is found out before
+     * anything is written; any other failure (i.e. of the database, after which the session can't be used any further)
+     * is thrown, failing the job
+     */
+    private Exception tryTransferPatients(BulkJob job, List<Integer> patientIds) {
+        try {
+            transferPatientRelationships(patientIds, job.getProvider(), job.getDestinationProvider(), job.getRelationshipType(),
+                    job.getDate(), getBulkJobUser(job));
+            return null;
+        }
+        catch (DAOException e) {
+            throw e;
+        }
+        catch (APIException e) {
+            // i.e. a validation failure
+            return e;
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            // one of our own (checked) exceptions, all of which are thrown before anything is written
+            return e;
+        }
+    }
+
+    private void removePatientsChunk(BulkJob job, List<Integer> patientIds) {
+
+        Map<Integer, List<Relationship>> relationshipsByPatient =
+                groupByPersonB(dao.getActiveRelationships(job.getProvider(), patientIds, job.getRelationshipType(), job.getDate()));
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date endDate = ProviderManagementUtils.clearTimeComponent(job.getDate());
+        User user = getBulkJobUser(job);
+        Date now = new Date();
+
+        List<Relationship> toSave = new ArrayList<Relationship>();
+        for (Integer patientId : patientIds) {
+            List<Relationship> relationships = relationshipsByPatient.get(patientId);
+            if (relationships == null) {
+                job.addFailure(patientId, "Patient is not assigned to " + job.getProvider().getPersonName() + " with a "
+                        + job.getRelationshipType() + " relationship on " + Context.getDateFormat().format(job.getDate()));
+            }
+            else if (relationships.size() > 1) {
+                job.addFailure(patientId, "Duplicate " + job.getRelationshipType() + " between " + job.getProvider().getPersonName()
+                        + " and " + relationships.get(0).getPersonB().getPersonName());
+            }
+            else {
+                Relationship relationship = relationships.get(0);
+                relationship.setEndDate(endDate);
+                relationship.setChangedBy(user);
+                relationship.setDateChanged(now);
+                if (validateBulkJobRelationship(job, patientId, relationship)) {
+                    toSave.add(relationship);
+                }
+            }
+        }
+
+        dao.saveRelationships(toSave);
+    }
+
+    private void transferSuperviseesChunk(BulkJob job, List<Integer> superviseeIds) {
+
+        // each supervisee must have exactly one active relationship with the source supervisor, which must be valid once
+        // ended; this is checked before anything is assigned, so that a supervisee that can't be unassigned isn't left
+        // assigned to both supervisors
+        RelationshipType supervisorRelationshipType = getSupervisorRelationshipType();
+        Map<Integer, List<Relationship>> relationshipsBySupervisee =
+                groupByPersonB(dao.getActiveRelationships(job.getProvider(), superviseeIds, supervisorRelationshipType, job.getDate()));
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date endDate = ProviderManagementUtils.clearTimeComponent(job.getDate());
+        User user = getBulkJobUser(job);
+        Date now = new Date();
+
+        Map<Person, Relationship> sourceRelationships = new LinkedHashMap<Person, Relationship>();
+        for (Integer superviseeId : superviseeIds) {
+            List<Relationship> relationships = relationshipsBySupervisee.get(superviseeId);
+            if (relationships == null) {
+                job.addFailure(superviseeId, "Provider is not assigned to supervisor " + job.getProvider().getPersonName()
+                        + " on " + Context.getDateFormat().format(job.getDate()));
+            }
+            else if (relationships.size() > 1) {
+                job.addFailure(superviseeId, "Duplicate supervisor relationship between " + relationships.get(0).getPersonB().getPersonName()
+                        + " and " + job.getProvider().getPersonName());
+            }
+            else {
+                // the relationship isn't actually ended until the supervisee has been assigned to the destination,
+                // as assigning them runs queries that would flush the change
+                Relationship relationship = relationships.get(0);
+                relationship.setEndDate(endDate);
+                boolean valid = validateBulkJobRelationship(job, superviseeId, relationship);
+                relationship.setEndDate(null);
+                if (valid) {
+                    sourceRelationships.put(relationship.getPersonB(), relationship);
+                }
+            }
+        }
+
+        if (sourceRelationships.isEmpty()) {
+            return;
+        }
+
+        Map<Person, AssignmentOutcome> outcomes;
+        try {
+            outcomes = assignProvidersToSupervisor(sourceRelationships.keySet(), job.getDestinationProvider(), job.getDate(), user);
+        }
+        catch (Exception e) {
+            for (Person supervisee : sourceRelationships.keySet()) {
+                job.addFailure(supervisee.getId(), e.getMessage());
+            }
+            return;
+        }
+
+        // only unassign the supervisees that are now assigned to the destination supervisor
+        List<Relationship> toSave = new ArrayList<Relationship>();
+        for (Map.Entry<Person, Relationship> entry : sourceRelationships.entrySet()) {
+            Person supervisee = entry.getKey();
+            AssignmentOutcome outcome = outcomes.get(supervisee);
+
+            if (outcome == AssignmentOutcome.ASSIGNED || outcome == AssignmentOutcome.ALREADY_ASSIGNED) {
+                Relationship relationship = entry.getValue();
+                relationship.setEndDate(endDate);
+                relationship.setChangedBy(user);
+                relationship.setDateChanged(now);
+                toSave.add(relationship);
+            }
+            else if (outcome == AssignmentOutcome.NOT_A_PROVIDER) {
+                job.addFailure(supervisee.getId(), supervisee.getPersonName() + " is not a provider");
+            }
+            else {
+                job.addFailure(supervisee.getId(), job.getDestinationProvider().getPersonName() + " is not a valid supervisor for " + supervisee.getPersonName());
+            }
+        }
+
+        dao.saveRelationships(toSave);
+        supervisionGraphCache.invalidate();
+    }
+
+    /**
+     * Validates a relationship created or changed by a bulk job, as PersonService.saveRelationship would; if it is
+     * invalid, the failure is recorded against the item and any changes to the relationship are discarded
+     */
+    private boolean validateBulkJobRelationship(BulkJob job, Integer itemId, Relationship relationship) {
+        try {
+            ValidateUtil.validate(relationship);
+            return true;
+        }
+        catch (APIException e) {
+            if (relationship.getRelationshipId() != null) {
+                Context.evictFromSession(relationship);
+            }
+            job.addFailure(itemId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void endRelationshipsChunk(BulkJob job, List<Integer> relationshipIds) {
+        // relationships that have been voided or ended since the job was submitted are simply skipped
+        endRelationships(relationshipIds, job.getDate(), getBulkJobUser(job), false);
+    }
+
+    /**
+     * Sets the end date of the specified (non-voided) relationships that have not already ended by that date, recording
+     * the changes as made by the specified user; the relationships are loaded and saved a chunk at a time, and if
+     * clearSession is true the session is flushed and cleared after each chunk, so that ending thousands of
+     * relationships doesn't fill up the session
+     */
+    private void endRelationships(List<Integer> relationshipIds, Date date, User user, boolean clearSession) {
+
+        // we are bypassing the person service, so need to set the audit fields ourselves
+        Date endDate = ProviderManagementUtils.clearTimeComponent(date);
+        Date now = new Date();
+
+        for (int start = 0; start < relationshipIds.size(); start += RELATIONSHIP_CHUNK_SIZE) {
+            List<Relationship> relationships = dao.getRelationships(relationshipIds.subList(start, Math.min(start + RELATIONSHIP_CHUNK_SIZE, relationshipIds.size())));
+
+            List<Relationship> toSave = new ArrayList<Relationship>();
+            for (Relationship relationship : relationships) {
+                if (relationship.getEndDate() == null || relationship.getEndDate().after(endDate)) {
+                    relationship.setEndDate(endDate);
+                    relationship.setChangedBy(user);
+                    relationship.setDateChanged(now);
+                    toSave.add(relationship);
+                }
+            }
+
+            validateAndSaveRelationships(toSave);
+
+            if (clearSession) {
+                dao.flushAndClearSession();
+                // the providers memoized for this transaction are detached along with everything else
+                ProviderLookupMemo.invalidate();
+            }
+        }
+
+        // some of the relationships may be supervision relationships
+        supervisionGraphCache.invalidate();
+    }
+
+    /**
+     * Validates the relationships, as PersonService.saveRelationship would, and then saves them through the dao; used
+     * where relationships are saved in bulk rather than one at a time through the person service
+     *
+     * Nothing is saved if any relationship is invalid, and the changes to any existing relationships are discarded, so
+     * that they aren't flushed along with whatever the caller goes on to save
+     */
+    private void validateAndSaveRelationships(List<Relationship> relationships) {
+
+        try {
+            for (Relationship relationship : relationships) {
+                ValidateUtil.validate(relationship);
+            }
+        }
+        catch (APIException e) {
+            for (Relationship relationship : relationships) {
+                if (relationship.getRelationshipId() != null) {
+                    Context.evictFromSession(relationship);
+                }
+            }
+            throw e;
+        }
+
+        dao.saveRelationships(relationships);
+    }
+
+    /**
+     * Returns the graph of the supervision relationships active on the specified date; the graph for the current
+     * date is cached
+     */
+    private SupervisionGraph getSupervisionGraph(Date date) {
+
+        Date effectiveDate = ProviderManagementUtils.clearTimeComponent(date != null ? date : new Date());
+
+        if (effectiveDate.equals(ProviderManagementUtils.clearTimeComponent(new Date()))) {
+            return supervisionGraphCache.getGraph(dao, getSupervisorRelationshipType());
+        }
+        else {
+            return SupervisionGraph.build(effectiveDate, dao.getRelationshipPersonIds(getSupervisorRelationshipType(), effectiveDate));
+        }
+    }
+
+    /**
+     * Returns the ids of the relationships that unassignAllPatientsFromProvider, unassignAllProvidersFromSupervisor and
+     * unassignAllSupervisorsFromProvider would end
+     */
+    private List<Integer> getRelationshipIdsToEndOnRetirement(Person provider, Date date) {
+
+        Date effectiveDate = ProviderManagementUtils.clearTimeComponent(date);
+        RelationshipType supervisorRelationshipType = getSupervisorRelationshipType();
+
+        List<Integer> relationshipIds = new ArrayList<Integer>();
+
+        // patients
+        for (RelationshipType relationshipType : getAllProviderRoleRelationshipTypes(false)) {
+            relationshipIds.addAll(dao.getRelationshipIds(provider, null, relationshipType, effectiveDate));
+        }
+
+        // supervisees and supervisors
+        relationshipIds.addAll(dao.getRelationshipIds(provider, null, supervisorRelationshipType, effectiveDate));
+        relationshipIds.addAll(dao.getRelationshipIds(null, provider, supervisorRelationshipType, effectiveDate));
+
+        return relationshipIds;
+    }
+
+    /**
+     * Utility methods
+     */
+    private List<Person> providersToPersons(List<Provider> providers) {
+        
+        if (providers == null) {
+            return null;
+        }
+        
+        Set<Person> persons = new HashSet<Person>();
+
+        // note that simply ignores providers that are not person, as the module cannot handle them (and I believe that it has been determined that OpemMRS won't support them)
+        for (Provider provider : providers) {
+            if (provider.getPerson() != null) {
+                persons.add(provider.getPerson());
+            }
+            else {
+                log.warn("Ignoring provider " + provider.getId() + " because they are not a person");
+            }
+        }
+
+        return new ArrayList<Person>(persons);
+    }
+
+    /**
+     * Returns true if the relationship type is a non-retired relationship type of a non-retired provider role
+     * (equivalent to getAllProviderRoleRelationshipTypes(false).contains(relationshipType), without copying the list)
+     */
+    private boolean isProviderRoleRelationshipType(RelationshipType relationshipType) {
+        return providerRoleMetadataCache.getSnapshot(dao).isProviderRoleRelationshipType(relationshipType, false);
+    }
+
+    private boolean supportsRelationshipType(Provider provider, RelationshipType relationshipType) {
+
+        if (provider == null) {
+            throw new APIException("Provider should not be null");
+        }
+
+        if (relationshipType == null) {
+            throw new APIException("Relationship type should not be null");
+        }
+
+        // if this provider has no role, return false
         if (provider.getProviderRole() == null) {
             return false;
         }
+        // a role that hasn't been saved yet isn't in the role metadata snapshot
+        else if (provider.getProviderRole().getId() == null) {
+            return provider.getProviderRole().supportsRelationshipType(relationshipType);
+        }
         // otherwise, test if the provider's role supports the specified relationship type
         else {
-            return provider.getProviderRole().supportsRelationshipType(relationshipType);
+            return relationshipType.getId() != null && providerRoleMetadataCache.getSnapshot(dao)
+                    .getRelationshipTypeIds(provider.getProviderRole().getId()).contains(relationshipType.getId());
+        }
+    }
+
+    /**
+     * Returns the ids of all the roles that the roles of the provider can supervise, from the role metadata snapshot
+     */
+    private Set<Integer> getProviderRoleIdsThatProviderCanSupervise(Person provider) {
+
+        ProviderRoleMetadataSnapshot snapshot = providerRoleMetadataCache.getSnapshot(dao);
+
+        Set<Integer> roleIds = new LinkedHashSet<Integer>();
+        for (ProviderRole role : getProviderRoles(provider)) {
+            roleIds.addAll(snapshot.getSuperviseeProviderRoleIds(role.getId()));
         }
+        return roleIds;
     }
 }
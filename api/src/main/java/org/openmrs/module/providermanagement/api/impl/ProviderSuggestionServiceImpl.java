@@ -21,18 +21,24 @@ import org.openmrs.Person;
 import org.openmrs.RelationshipType;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.api.ProviderSuggestionService;
 import org.openmrs.module.providermanagement.api.db.ProviderManagementDAO;
+import org.openmrs.module.providermanagement.cache.ProviderSuggestionResultCache;
 import org.openmrs.module.providermanagement.exception.InvalidRelationshipTypeException;
 import org.openmrs.module.providermanagement.exception.PersonIsNotProviderException;
 import org.openmrs.module.providermanagement.exception.SuggestionEvaluationException;
+import org.openmrs.module.providermanagement.suggestion.GroovySuggestionEvaluator;
 import org.openmrs.module.providermanagement.suggestion.ProviderSuggestion;
+import org.openmrs.module.providermanagement.suggestion.Suggestion;
+import org.openmrs.module.providermanagement.suggestion.SuggestionEvaluationExecutor;
 import org.openmrs.module.providermanagement.suggestion.SuggestionEvaluator;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestionType;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -47,6 +53,8 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
 
     private ProviderManagementDAO dao;
 
+    private final ProviderSuggestionResultCache providerSuggestionResultCache = new ProviderSuggestionResultCache();
+
     public ProviderManagementDAO getDao() {
         return dao;
     }
@@ -88,6 +96,8 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
     @Override
     @Transactional
     public ProviderSuggestion saveProviderSuggestion(ProviderSuggestion suggestion) {
+        // the criteria may have changed, so drop any compiled version of the rule
+        GroovySuggestionEvaluator.invalidate(suggestion);
         return dao.saveProviderSuggestion(suggestion);
     }
 
@@ -108,6 +118,7 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
     @Override
     @Transactional
     public void purgeProviderSuggestion(ProviderSuggestion suggestion) {
+        GroovySuggestionEvaluator.invalidate(suggestion);
         dao.deleteProviderSuggestion(suggestion);
     }
 
@@ -134,25 +145,12 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
             return null;
         }
 
-        // otherwise, get all the providers that match the suggestion rules
-        Collection<Person> suggestedProviders = new HashSet<Person>();
-        for (ProviderSuggestion suggestion : suggestions) {
-            try {
-                SuggestionEvaluator evaluator = suggestion.instantiateEvaluator();
-                Set<Person> p = evaluator.evaluate(suggestion, patient, relationshipType);
-                 if (p != null) {
-                    // note that we are doing union, not intersection, here if there are multiple rules
-                    suggestedProviders.addAll(p);
-                }
-            }
-            catch (Exception e) {
-                throw new SuggestionEvaluationException("Unable to evaluate suggestion " + suggestion, e);
-            }
-        }
+        // otherwise, get all the providers that match the suggestion rules (using the stored results if available)
+        Set<Integer> suggestedPersonIds = getSuggestedPersonIds(patient, relationshipType, suggestions);
 
-        // only keep those providers that are valid (ie, support the specified relationship type
-        // TODO: might want to test the performance of this
-        suggestedProviders.retainAll(Context.getService(ProviderManagementService.class).getProvidersAsPersonsByRelationshipType(relationshipType));
+        // only keep those providers that are valid (ie, support the specified relationship type)
+        Collection<Person> suggestedProviders = new HashSet<Person>(
+                Context.getService(ProviderManagementService.class).getProvidersAsPersonsByRelationshipType(relationshipType, suggestedPersonIds));
 
         // finally, remove any providers that are already assigned to this patient
         suggestedProviders.removeAll(Context.getService(ProviderManagementService.class).getProvidersAsPersonsForPatient(patient, relationshipType, new Date()));
@@ -160,6 +158,48 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
         return new ArrayList<Person>(suggestedProviders);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public int refreshStoredProviderSuggestions(int maxEntries) {
+
+        if (ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_CACHE_SIZE() == 0) {
+            providerSuggestionResultCache.invalidate();
+            return 0;
+        }
+
+        int refreshed = 0;
+        long maxAge = ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_CACHE_MAX_AGE();
+
+        for (Integer[] entry : providerSuggestionResultCache.getEntriesToRefresh(maxAge / 2, maxEntries)) {
+
+            Patient patient = Context.getPatientService().getPatient(entry[0]);
+            RelationshipType relationshipType = Context.getPersonService().getRelationshipType(entry[1]);
+
+            if (patient == null || patient.isVoided() || relationshipType == null) {
+                providerSuggestionResultCache.remove(entry[0], entry[1]);
+                continue;
+            }
+
+            List<ProviderSuggestion> suggestions = getProviderSuggestionsByRelationshipType(relationshipType);
+            if (suggestions == null || suggestions.size() == 0) {
+                providerSuggestionResultCache.remove(entry[0], entry[1]);
+                continue;
+            }
+
+            try {
+                storeSuggestedPersonIds(patient, relationshipType, suggestions);
+                refreshed++;
+            }
+            catch (SuggestionEvaluationException e) {
+                // leave it to the next page view to report the error
+                log.warn("Unable to refresh provider suggestions for patient " + entry[0] + " and relationship type " + entry[1], e);
+                providerSuggestionResultCache.remove(entry[0], entry[1]);
+            }
+        }
+
+        return refreshed;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public SupervisionSuggestion getSupervisionSuggestion(Integer id) {
@@ -198,6 +238,8 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
     @Override
     @Transactional
     public SupervisionSuggestion saveSupervisionSuggestion(SupervisionSuggestion suggestion) {
+        // the criteria may have changed, so drop any compiled version of the rule
+        GroovySuggestionEvaluator.invalidate(suggestion);
         return dao.saveSupervisionSuggestion(suggestion);
     }
 
@@ -218,6 +260,7 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
     @Override
     @Transactional
     public void purgeSupervisionSuggestion(SupervisionSuggestion suggestion) {
+        GroovySuggestionEvaluator.invalidate(suggestion);
         dao.deleteSupervisionSuggestion(suggestion);
     }
 
@@ -279,23 +322,19 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
         }
 
         // otherwise, get all the providers that match the suggestion rules
-        Collection<Person> suggestedProviders = new HashSet<Person>();
-        for (SupervisionSuggestion suggestion : suggestions) {
-            try {
+        final Integer providerId = provider.getId();
+        Set<Integer> suggestedPersonIds = evaluateSuggestions(suggestions, providerId != null, new SuggestionEvaluationExecutor.Evaluation<SupervisionSuggestion>() {
+            @Override
+            public Set<Person> evaluate(SupervisionSuggestion suggestion) throws Exception {
+                // reload by id, as this may be evaluated in a different session
                 SuggestionEvaluator evaluator = suggestion.instantiateEvaluator();
-                Set<Person> p = evaluator.evaluate(suggestion, provider);
-                if (p != null) {
-                    // note that we are doing union, not intersection, here if there are multiple rules
-                    suggestedProviders.addAll(p);
-                }
-            }
-            catch (Exception e) {
-                throw new SuggestionEvaluationException("Unable to evaluate suggestion " + suggestion, e);
+                return evaluator.evaluate(suggestion, Context.getPersonService().getPerson(providerId));
             }
-        }
+        });
 
         // only keep providers that are valid for this provider to supervise or be supervised by
-        suggestedProviders.retainAll(Context.getService(ProviderManagementService.class).getProvidersAsPersonsByRoles(validRoles));
+        Collection<Person> suggestedProviders = filterByPersonIds(
+                Context.getService(ProviderManagementService.class).getProvidersAsPersonsByRoles(validRoles), suggestedPersonIds);
 
         // finally, remove any providers that this provider is already supervising or being supervised by
         if (type.equals(SupervisionSuggestionType.SUPERVISEE_SUGGESTION)) {
@@ -308,4 +347,89 @@ public class ProviderSuggestionServiceImpl implements ProviderSuggestionService
         // return the result set
         return new ArrayList<Person>(suggestedProviders);
     }
+
+    /**
+     * Returns the ids of the persons suggested by the rules for the patient and relationship type; uses the stored
+     * results if storing results is enabled and they are current, otherwise evaluates (and stores) them
+     */
+    private Set<Integer> getSuggestedPersonIds(Patient patient, RelationshipType relationshipType, List<ProviderSuggestion> suggestions)
+            throws SuggestionEvaluationException {
+
+        if (ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_CACHE_SIZE() == 0 || patient.getId() == null) {
+            if (providerSuggestionResultCache.size() > 0) {
+                // storing results has been disabled
+                providerSuggestionResultCache.invalidate();
+            }
+            return evaluateProviderSuggestions(patient, relationshipType, suggestions);
+        }
+
+        Set<Integer> personIds = providerSuggestionResultCache.get(patient.getId(), relationshipType.getId(),
+                ProviderSuggestionResultCache.getRuleVersion(suggestions),
+                ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_CACHE_MAX_AGE());
+
+        return personIds != null ? personIds : storeSuggestedPersonIds(patient, relationshipType, suggestions);
+    }
+
+    private Set<Integer> storeSuggestedPersonIds(Patient patient, RelationshipType relationshipType, List<ProviderSuggestion> suggestions)
+            throws SuggestionEvaluationException {
+
+        Set<Integer> personIds = evaluateProviderSuggestions(patient, relationshipType, suggestions);
+        providerSuggestionResultCache.put(patient.getId(), relationshipType.getId(), ProviderSuggestionResultCache.getRuleVersion(suggestions),
+                personIds, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_CACHE_SIZE());
+        return personIds;
+    }
+
+    private Set<Integer> evaluateProviderSuggestions(Patient patient, RelationshipType relationshipType, List<ProviderSuggestion> suggestions)
+            throws SuggestionEvaluationException {
+
+        final Integer patientId = patient.getId();
+        final Integer relationshipTypeId = relationshipType.getId();
+
+        // a patient that hasn't been saved yet can't be reloaded by id in another session
+        return evaluateSuggestions(suggestions, patientId != null, new SuggestionEvaluationExecutor.Evaluation<ProviderSuggestion>() {
+            @Override
+            public Set<Person> evaluate(ProviderSuggestion suggestion) throws Exception {
+                // reload by id, as this may be evaluated in a different session
+                SuggestionEvaluator evaluator = suggestion.instantiateEvaluator();
+                return evaluator.evaluate(suggestion, Context.getPatientService().getPatient(patientId),
+                        Context.getPersonService().getRelationshipType(relationshipTypeId));
+            }
+        });
+    }
+
+    /**
+     * Evaluates the suggestions, concurrently and with a time limit per suggestion if so configured,
+     * and returns the union of the ids of the persons they suggest
+     *
+     * Rules evaluated concurrently are each evaluated in a session of their own, which can't see anything that hasn't
+     * been committed; so they are only evaluated concurrently if the objects they are evaluated against are saved,
+     * and nothing has been (or is about to be) written in the current transaction
+     */
+    private <T extends Suggestion> Set<Integer> evaluateSuggestions(Collection<T> suggestions, boolean saved,
+                                                                    SuggestionEvaluationExecutor.Evaluation<T> evaluation)
+            throws SuggestionEvaluationException {
+
+        int threads = ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_EVALUATION_THREADS();
+        if (threads > 1 && (!saved || !TransactionSynchronizationManager.isCurrentTransactionReadOnly() || dao.isSessionDirty())) {
+            threads = 1;
+        }
+
+        return SuggestionEvaluationExecutor.evaluate(suggestions, evaluation, threads,
+                ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SUGGESTION_EVALUATION_TIMEOUT());
+    }
+
+    /**
+     * @return the persons in the passed collection whose ids are in the passed set
+     */
+    private Collection<Person> filterByPersonIds(Collection<Person> persons, Set<Integer> personIds) {
+        Collection<Person> filtered = new HashSet<Person>();
+        if (persons != null) {
+            for (Person person : persons) {
+                if (personIds.contains(person.getId())) {
+                    filtered.add(person);
+                }
+            }
+        }
+        return filtered;
+    }
 }
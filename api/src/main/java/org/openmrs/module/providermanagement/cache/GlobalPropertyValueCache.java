@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.api.context.Context;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the parsed values of global properties, so that they are only read and parsed again after they change
+ *
+ * Changes to a global property must call {@link #invalidate(String)} (see ProviderManagementGlobalPropertyListener);
+ * the value is then dropped immediately, and again when the changing transaction completes, so that the next read
+ * re-reads the committed (or rolled back) value. Only the changed property is dropped.
+ */
+public class GlobalPropertyValueCache {
+
+    /**
+     * A global property, and how to parse its value
+     */
+    public static abstract class Property<T> {
+
+        private final String name;
+
+        public Property(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param propertyValue the value of the global property (may be null)
+         * @return the parsed value; should not be modified once returned, as it is shared between threads
+         */
+        public abstract T parse(String propertyValue);
+
+    }
+
+    // stored in place of a parsed value of null
+    private static final Object NULL = new Object();
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    private long generation = 0;
+
+    /**
+     * Returns the parsed value of the specified global property, reading and parsing it if necessary
+     *
+     * @param property
+     * @return the parsed value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Property<T> property) {
+
+        Object value;
+        long readGeneration;
+
+        synchronized (this) {
+            value = values.get(property.getName());
+            readGeneration = generation;
+        }
+
+        if (value != null) {
+            return value == NULL ? null : (T) value;
+        }
+
+        T parsed = property.parse(Context.getAdministrationService().getGlobalProperty(property.getName()));
+
+        synchronized (this) {
+            // don't store a value read before a global property changed; it may be out-of-date
+            if (generation == readGeneration) {
+                values.put(property.getName(), parsed != null ? parsed : NULL);
+            }
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Drops the parsed value of the specified global property; should be called whenever it is saved or purged
+     *
+     * @param propertyName
+     */
+    public void invalidate(final String propertyName) {
+
+        remove(propertyName);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // any value read before this transaction completes may be one that is never committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(propertyName);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops all parsed values
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        values.clear();
+    }
+
+    private synchronized void remove(String propertyName) {
+        generation++;
+        values.remove(propertyName);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.module.providermanagement.Provider;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the providers (including retired ones) associated with each person for the duration of the current
+ * transaction, so that nested service calls (i.e. canSupervise, which calls getProviderRoles, which calls
+ * isProvider) don't look up the same persons over and over again
+ *
+ * Nothing is remembered outside of a transaction. Any change to a provider must call {@link #invalidate()}; this
+ * is done by the service for the changes it makes itself, and by {@link ProviderLookupMemoAdvice} for changes
+ * made via the ProviderService.
+ */
+public class ProviderLookupMemo {
+
+    // key used to bind the memo to the current transaction
+    private static final Object TRANSACTION_RESOURCE_KEY = new Object();
+
+    /**
+     * @param personId
+     * @param includeRetired
+     * @return the providers associated with the person, ordered by id, or null if they have not been looked up in
+     *         this transaction
+     */
+    public static List<Provider> get(Integer personId, boolean includeRetired) {
+
+        Map<Integer, List<Provider>> memo = getMemo(false);
+        List<Provider> providers = memo != null ? memo.get(personId) : null;
+
+        if (providers == null) {
+            return null;
+        }
+
+        List<Provider> result = new ArrayList<Provider>();
+        for (Provider provider : providers) {
+            if (includeRetired || !provider.isRetired()) {
+                result.add(provider);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remembers the providers associated with the person until the end of the current transaction (does nothing if
+     * there is no current transaction)
+     *
+     * @param personId
+     * @param providers all the providers associated with the person, including retired ones
+     */
+    public static void put(Integer personId, List<Provider> providers) {
+
+        Map<Integer, List<Provider>> memo = getMemo(true);
+        if (memo != null) {
+            memo.put(personId, new ArrayList<Provider>(providers));
+        }
+    }
+
+    /**
+     * Forgets everything remembered in the current transaction; should be called whenever a provider is saved,
+     * retired, unretired or purged
+     */
+    public static void invalidate() {
+        Map<Integer, List<Provider>> memo = getMemo(false);
+        if (memo != null) {
+            memo.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Integer, List<Provider>> getMemo(boolean create) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        Map<Integer, List<Provider>> memo = (Map<Integer, List<Provider>>) TransactionSynchronizationManager.getResource(TRANSACTION_RESOURCE_KEY);
+
+        if (memo == null && create) {
+            memo = new HashMap<Integer, List<Provider>>();
+            TransactionSynchronizationManager.bindResource(TRANSACTION_RESOURCE_KEY, memo);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_RESOURCE_KEY);
+                }
+            });
+        }
+
+        return memo;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Drops the {@link ProviderRoleMetadataCache} snapshot whenever a relationship type is saved, retired, unretired or
+ * purged via the PersonService (renaming or retiring a relationship type changes which types are provider role types)
+ */
+public class ProviderRoleMetadataAdvice implements AfterReturningAdvice {
+
+    private static final Set<String> METHODS = new HashSet<String>(Arrays.asList("saveRelationshipType",
+            "retireRelationshipType", "unretireRelationshipType", "purgeRelationshipType"));
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+        if (METHODS.contains(method.getName())) {
+            ProviderRoleMetadataCache.getInstance().invalidate();
+        }
+    }
+}
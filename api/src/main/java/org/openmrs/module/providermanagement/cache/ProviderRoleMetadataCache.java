@@ -0,0 +1,134 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.module.providermanagement.api.db.ProviderManagementDAO;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the process-wide {@link ProviderRoleMetadataSnapshot}
+ *
+ * A snapshot built within a transaction is only used by that transaction until it commits; it is only published
+ * to other threads once the transaction commits, and only if no provider role has been changed in the meantime.
+ * Changes to provider roles must call {@link #invalidate()}; the snapshot is then dropped immediately, and again
+ * when the changing transaction completes, so the next read rebuilds it from committed data. This is done by the
+ * service for the changes it makes itself, and by {@link ProviderRoleMetadataAdvice} for changes made to relationship
+ * types via the PersonService.
+ */
+public class ProviderRoleMetadataCache {
+
+    private static final ProviderRoleMetadataCache instance = new ProviderRoleMetadataCache();
+
+    // key used to bind a snapshot to the current transaction until it is published
+    private final Object transactionResourceKey = new Object();
+
+    private volatile ProviderRoleMetadataSnapshot snapshot = null;
+
+    private long generation = 0;
+
+    private ProviderRoleMetadataCache() {
+    }
+
+    /**
+     * @return the cache shared by the service and {@link ProviderRoleMetadataAdvice}
+     */
+    public static ProviderRoleMetadataCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the current snapshot, building it from the dao if necessary
+     *
+     * @param dao the dao to load the provider roles from
+     * @return the snapshot
+     */
+    public ProviderRoleMetadataSnapshot getSnapshot(ProviderManagementDAO dao) {
+
+        ProviderRoleMetadataSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (inTransaction) {
+            current = (ProviderRoleMetadataSnapshot) TransactionSynchronizationManager.getResource(transactionResourceKey);
+            if (current != null) {
+                return current;
+            }
+        }
+
+        final long buildGeneration = getGeneration();
+        final ProviderRoleMetadataSnapshot built = ProviderRoleMetadataSnapshot.build(dao.getAllProviderRoles(true));
+
+        if (inTransaction) {
+            TransactionSynchronizationManager.bindResource(transactionResourceKey, built);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publish(built, buildGeneration);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(transactionResourceKey);
+                }
+            });
+        }
+        else {
+            publish(built, buildGeneration);
+        }
+
+        return built;
+    }
+
+    /**
+     * Drops the current snapshot; should be called whenever a provider role or relationship type is saved, retired,
+     * unretired or purged
+     */
+    public void invalidate() {
+
+        clear();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the snapshot bound to this transaction is now out-of-date as well
+            TransactionSynchronizationManager.unbindResourceIfPossible(transactionResourceKey);
+
+            // any snapshot built by another thread before this transaction completes was built from stale data
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized void clear() {
+        generation++;
+        snapshot = null;
+    }
+
+    private synchronized void publish(ProviderRoleMetadataSnapshot built, long buildGeneration) {
+        if (generation == buildGeneration) {
+            snapshot = built;
+        }
+    }
+}
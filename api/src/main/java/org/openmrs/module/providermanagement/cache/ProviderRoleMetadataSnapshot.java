@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.RelationshipType;
+import org.openmrs.module.providermanagement.ProviderRole;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, point-in-time copy of the provider role metadata: the relationship types and supervisee roles
+ * associated with each role
+ *
+ * Only ids are kept, so a snapshot can be safely shared between threads and read outside of the Hibernate session it
+ * was built in; it is up to the caller to load any entities it needs in its own session
+ */
+public class ProviderRoleMetadataSnapshot {
+
+    private final Set<Integer> relationshipTypeIds;
+
+    private final Set<Integer> activeRelationshipTypeIds;
+
+    private final Map<Integer, Set<Integer>> relationshipTypeIdsByRoleId;
+
+    private final Map<Integer, Set<Integer>> superviseeRoleIdsByRoleId;
+
+    private ProviderRoleMetadataSnapshot(Set<Integer> relationshipTypeIds, Set<Integer> activeRelationshipTypeIds,
+                                         Map<Integer, Set<Integer>> relationshipTypeIdsByRoleId,
+                                         Map<Integer, Set<Integer>> superviseeRoleIdsByRoleId) {
+        this.relationshipTypeIds = Collections.unmodifiableSet(relationshipTypeIds);
+        this.activeRelationshipTypeIds = Collections.unmodifiableSet(activeRelationshipTypeIds);
+        this.relationshipTypeIdsByRoleId = Collections.unmodifiableMap(relationshipTypeIdsByRoleId);
+        this.superviseeRoleIdsByRoleId = Collections.unmodifiableMap(superviseeRoleIdsByRoleId);
+    }
+
+    /**
+     * Builds a snapshot from the passed provider roles; must be called within an open session
+     * so that the lazy collections of each role can be initialized
+     *
+     * @param providerRoles all provider roles in the system, including retired ones
+     * @return the snapshot
+     */
+    public static ProviderRoleMetadataSnapshot build(Collection<ProviderRole> providerRoles) {
+
+        Set<Integer> relationshipTypeIds = new LinkedHashSet<Integer>();
+        Set<Integer> activeRelationshipTypeIds = new LinkedHashSet<Integer>();
+        Map<Integer, Set<Integer>> relationshipTypeIdsByRoleId = new HashMap<Integer, Set<Integer>>();
+        Map<Integer, Set<Integer>> superviseeRoleIdsByRoleId = new HashMap<Integer, Set<Integer>>();
+
+        if (providerRoles != null) {
+            for (ProviderRole providerRole : providerRoles) {
+
+                Integer roleId = providerRole.getId();
+
+                Set<Integer> roleRelationshipTypeIds = new LinkedHashSet<Integer>();
+                if (providerRole.getRelationshipTypes() != null) {
+                    for (RelationshipType relationshipType : providerRole.getRelationshipTypes()) {
+                        roleRelationshipTypeIds.add(relationshipType.getId());
+                        relationshipTypeIds.add(relationshipType.getId());
+
+                        // mirror getAllProviderRoleRelationshipTypes(false): non-retired types of non-retired roles
+                        if (!providerRole.isRetired() && !relationshipType.isRetired()) {
+                            activeRelationshipTypeIds.add(relationshipType.getId());
+                        }
+                    }
+                }
+                relationshipTypeIdsByRoleId.put(roleId, Collections.unmodifiableSet(roleRelationshipTypeIds));
+
+                Set<Integer> superviseeRoleIds = new LinkedHashSet<Integer>();
+                if (providerRole.getSuperviseeProviderRoles() != null) {
+                    for (ProviderRole superviseeRole : providerRole.getSuperviseeProviderRoles()) {
+                        superviseeRoleIds.add(superviseeRole.getId());
+                    }
+                }
+                superviseeRoleIdsByRoleId.put(roleId, Collections.unmodifiableSet(superviseeRoleIds));
+            }
+        }
+
+        return new ProviderRoleMetadataSnapshot(relationshipTypeIds, activeRelationshipTypeIds,
+                relationshipTypeIdsByRoleId, superviseeRoleIdsByRoleId);
+    }
+
+    /**
+     * Returns the ids of the relationship types associated with provider roles; if includeRetired is false, only
+     * non-retired relationship types of non-retired roles are returned
+     *
+     * @param includeRetired whether or not to include retired roles and relationship types
+     * @return a new, modifiable list of the relationship type ids
+     */
+    public List<Integer> getRelationshipTypeIds(boolean includeRetired) {
+        return new ArrayList<Integer>(includeRetired ? relationshipTypeIds : activeRelationshipTypeIds);
+    }
+
+    /**
+     * @param relationshipType
+     * @param includeRetired whether or not to consider retired roles and relationship types
+     * @return true if the relationship type is associated with at least one provider role
+     */
+    public boolean isProviderRoleRelationshipType(RelationshipType relationshipType, boolean includeRetired) {
+        if (relationshipType == null || relationshipType.getId() == null) {
+            return false;
+        }
+        return includeRetired ? relationshipTypeIds.contains(relationshipType.getId())
+                : activeRelationshipTypeIds.contains(relationshipType.getId());
+    }
+
+    /**
+     * @param providerRoleId
+     * @return the ids of the relationship types supported by the role, or an empty set if the role is unknown
+     */
+    public Set<Integer> getRelationshipTypeIds(Integer providerRoleId) {
+        return nullToEmpty(relationshipTypeIdsByRoleId.get(providerRoleId));
+    }
+
+    /**
+     * @param providerRoleId
+     * @return the ids of the roles that the role can supervise, or an empty set if the role is unknown
+     */
+    public Set<Integer> getSuperviseeProviderRoleIds(Integer providerRoleId) {
+        return nullToEmpty(superviseeRoleIdsByRoleId.get(providerRoleId));
+    }
+
+    private Set<Integer> nullToEmpty(Set<Integer> ids) {
+        return ids != null ? ids : Collections.<Integer>emptySet();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.module.providermanagement.suggestion.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded, least-recently-used store of the results of evaluating the provider suggestion rules for a patient
+ * and relationship type
+ *
+ * Only the raw output of the rules (the ids of the suggested persons) is stored; filtering out invalid and
+ * already-assigned providers is cheap, and is left to the caller. Each entry records the version of the rules
+ * it was evaluated with (see {@link #getRuleVersion(Collection)}), and is ignored if the rules have changed
+ * since, or if it is older than the maximum age passed in by the caller.
+ */
+public class ProviderSuggestionResultCache {
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Returns a string that changes whenever any of the passed rules are added, removed or changed
+     *
+     * @param suggestions the (non-retired) suggestions for a relationship type
+     * @return the version of the rules
+     */
+    public static String getRuleVersion(Collection<? extends Suggestion> suggestions) {
+
+        List<String> versions = new ArrayList<String>();
+        if (suggestions != null) {
+            for (Suggestion suggestion : suggestions) {
+                versions.add(suggestion.getUuid() + ":" + suggestion.getEvaluator() + ":"
+                        + (suggestion.getCriteria() != null ? suggestion.getCriteria().hashCode() : 0));
+            }
+        }
+
+        // the rules aren't returned in any particular order
+        Collections.sort(versions);
+        return versions.toString();
+    }
+
+    /**
+     * @param patientId
+     * @param relationshipTypeId
+     * @param ruleVersion the current version of the rules for the relationship type
+     * @param maxAge the maximum age of the entry, in milliseconds
+     * @return the ids of the suggested persons, or null if there is no current entry
+     */
+    public synchronized Set<Integer> get(Integer patientId, Integer relationshipTypeId, String ruleVersion, long maxAge) {
+
+        Entry entry = entries.get(new Key(patientId, relationshipTypeId));
+
+        if (entry == null || !entry.ruleVersion.equals(ruleVersion)
+                || System.currentTimeMillis() - entry.evaluatedAt > maxAge) {
+            return null;
+        }
+
+        return new HashSet<Integer>(entry.personIds);
+    }
+
+    /**
+     * Stores the result of evaluating the rules, evicting the least-recently-used entries if the cache is full
+     *
+     * @param patientId
+     * @param relationshipTypeId
+     * @param ruleVersion the version of the rules the result was evaluated with
+     * @param personIds the ids of the suggested persons
+     * @param maxSize the maximum number of entries to keep
+     */
+    public synchronized void put(Integer patientId, Integer relationshipTypeId, String ruleVersion, Set<Integer> personIds, int maxSize) {
+
+        entries.put(new Key(patientId, relationshipTypeId), new Entry(ruleVersion, new HashSet<Integer>(personIds)));
+
+        Iterator<Key> i = entries.keySet().iterator();
+        while (entries.size() > maxSize && i.hasNext()) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    /**
+     * Removes the entry for the specified patient and relationship type
+     *
+     * @param patientId
+     * @param relationshipTypeId
+     */
+    public synchronized void remove(Integer patientId, Integer relationshipTypeId) {
+        entries.remove(new Key(patientId, relationshipTypeId));
+    }
+
+    /**
+     * Returns the least-recently-used entries that were evaluated more than the specified time ago, so they can be
+     * refreshed; note that this does not count as using them
+     *
+     * @param olderThan the age, in milliseconds
+     * @param max the maximum number of entries to return
+     * @return a list of patient id, relationship type id pairs
+     */
+    public synchronized List<Integer[]> getEntriesToRefresh(long olderThan, int max) {
+
+        List<Integer[]> toRefresh = new ArrayList<Integer[]>();
+        long now = System.currentTimeMillis();
+
+        // iterating over the entry set of an access-ordered map doesn't affect the access order
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (toRefresh.size() >= max) {
+                break;
+            }
+            if (now - entry.getValue().evaluatedAt > olderThan) {
+                toRefresh.add(new Integer[] { entry.getKey().patientId, entry.getKey().relationshipTypeId });
+            }
+        }
+
+        return toRefresh;
+    }
+
+    /**
+     * Drops all entries
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently stored
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Key {
+
+        private final Integer patientId;
+
+        private final Integer relationshipTypeId;
+
+        private Key(Integer patientId, Integer relationshipTypeId) {
+            this.patientId = patientId;
+            this.relationshipTypeId = relationshipTypeId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return patientId.equals(key.patientId) && relationshipTypeId.equals(key.relationshipTypeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * patientId.hashCode() + relationshipTypeId.hashCode();
+        }
+    }
+
+    private static class Entry {
+
+        private final String ruleVersion;
+
+        private final Set<Integer> personIds;
+
+        private final long evaluatedAt = System.currentTimeMillis();
+
+        private Entry(String ruleVersion, Set<Integer> personIds) {
+            this.ruleVersion = ruleVersion;
+            this.personIds = personIds;
+        }
+    }
+}
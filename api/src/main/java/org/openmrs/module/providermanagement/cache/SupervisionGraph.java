@@ -0,0 +1,147 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, in-memory index of the supervision relationships active on a given date, so that the whole hierarchy
+ * above or below a provider can be walked without going back to the database for each level
+ *
+ * Persons are referenced by id. Walks are breadth-first, and each person is visited at most once, so that the
+ * walks terminate even if the relationships contain a cycle
+ */
+public class SupervisionGraph {
+
+    private final Date date;
+
+    private final Map<Integer, Set<Integer>> superviseeIdsBySupervisorId;
+
+    private final Map<Integer, Set<Integer>> supervisorIdsBySuperviseeId;
+
+    private SupervisionGraph(Date date, Map<Integer, Set<Integer>> superviseeIdsBySupervisorId,
+                             Map<Integer, Set<Integer>> supervisorIdsBySuperviseeId) {
+        this.date = date;
+        this.superviseeIdsBySupervisorId = superviseeIdsBySupervisorId;
+        this.supervisorIdsBySuperviseeId = supervisorIdsBySuperviseeId;
+    }
+
+    /**
+     * Builds the index from the passed relationships
+     *
+     * @param date the date the relationships are active on
+     * @param superviseeIdsBySupervisorId the ids of the supervisees of each supervisor
+     * @return the index
+     */
+    public static SupervisionGraph build(Date date, Map<Integer, Set<Integer>> superviseeIdsBySupervisorId) {
+
+        Map<Integer, Set<Integer>> supervisees = new HashMap<Integer, Set<Integer>>();
+        Map<Integer, Set<Integer>> supervisors = new HashMap<Integer, Set<Integer>>();
+
+        for (Map.Entry<Integer, Set<Integer>> entry : superviseeIdsBySupervisorId.entrySet()) {
+            supervisees.put(entry.getKey(), new HashSet<Integer>(entry.getValue()));
+            for (Integer superviseeId : entry.getValue()) {
+                Set<Integer> ids = supervisors.get(superviseeId);
+                if (ids == null) {
+                    ids = new HashSet<Integer>();
+                    supervisors.put(superviseeId, ids);
+                }
+                ids.add(entry.getKey());
+            }
+        }
+
+        return new SupervisionGraph(date, supervisees, supervisors);
+    }
+
+    /**
+     * @return the date the relationships in the index are active on
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Gets the providers supervised by the specified provider, either directly or via one or more intermediate
+     * supervisors
+     *
+     * @param supervisorId
+     * @param maxDepth the number of levels to descend (1 for direct supervisees only); if null, all levels
+     * @return the ids of the supervisees, mapped to the level at which each was first found, in breadth-first order
+     */
+    public Map<Integer, Integer> getSubordinateIds(Integer supervisorId, Integer maxDepth) {
+        return walk(supervisorId, maxDepth, superviseeIdsBySupervisorId);
+    }
+
+    /**
+     * Gets the providers that supervise the specified provider, either directly or via one or more intermediate
+     * supervisors
+     *
+     * @param superviseeId
+     * @param maxDepth the number of levels to ascend (1 for direct supervisors only); if null, all levels
+     * @return the ids of the supervisors, mapped to the level at which each was first found, in breadth-first order
+     */
+    public Map<Integer, Integer> getSuperiorIds(Integer superviseeId, Integer maxDepth) {
+        return walk(superviseeId, maxDepth, supervisorIdsBySuperviseeId);
+    }
+
+    /**
+     * @param superviseeId
+     * @param supervisorId
+     * @return true if assigning the specified supervisee to the specified supervisor would make a provider
+     * (indirectly) their own supervisor
+     */
+    public boolean wouldCreateCycle(Integer superviseeId, Integer supervisorId) {
+        return superviseeId.equals(supervisorId) || getSubordinateIds(superviseeId, null).containsKey(supervisorId);
+    }
+
+    private Map<Integer, Integer> walk(Integer startId, Integer maxDepth, Map<Integer, Set<Integer>> edges) {
+
+        Map<Integer, Integer> found = new LinkedHashMap<Integer, Integer>();
+
+        Set<Integer> visited = new HashSet<Integer>();
+        visited.add(startId);
+
+        List<Integer> level = Collections.singletonList(startId);
+        int depth = 0;
+
+        while (!level.isEmpty() && (maxDepth == null || depth < maxDepth)) {
+            depth++;
+            List<Integer> next = new ArrayList<Integer>();
+            for (Integer id : level) {
+                Set<Integer> related = edges.get(id);
+                if (related != null) {
+                    for (Integer relatedId : related) {
+                        if (visited.add(relatedId)) {
+                            found.put(relatedId, depth);
+                            next.add(relatedId);
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.cache;
+
+import org.openmrs.RelationshipType;
+import org.openmrs.module.providermanagement.ProviderManagementUtils;
+import org.openmrs.module.providermanagement.api.db.ProviderManagementDAO;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+
+/**
+ * Holds the process-wide {@link SupervisionGraph} of the supervision relationships active today
+ *
+ * Follows the same rules as {@link ProviderRoleMetadataCache}: a graph built within a transaction is only published
+ * to other threads once the transaction commits, and only if the supervision relationships haven't been changed in
+ * the meantime. Changes to supervision relationships must call {@link #invalidate()}. The graph is also rebuilt
+ * once the day it was built for has passed.
+ *
+ * Note that supervision relationships changed outside of this module (i.e. via the person service) are not
+ * detected; call {@link #invalidate()} if this matters
+ */
+public class SupervisionGraphCache {
+
+    // key used to bind a graph to the current transaction until it is published
+    private final Object transactionResourceKey = new Object();
+
+    private volatile SupervisionGraph graph = null;
+
+    private long generation = 0;
+
+    /**
+     * Returns the graph of the supervision relationships active today, building it from the dao if necessary
+     *
+     * @param dao the dao to load the relationships from
+     * @param supervisorRelationshipType
+     * @return the graph
+     */
+    public SupervisionGraph getGraph(ProviderManagementDAO dao, RelationshipType supervisorRelationshipType) {
+
+        Date today = ProviderManagementUtils.clearTimeComponent(new Date());
+
+        SupervisionGraph current = graph;
+        if (current != null && current.getDate().equals(today)) {
+            return current;
+        }
+
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+
+        if (inTransaction) {
+            current = (SupervisionGraph) TransactionSynchronizationManager.getResource(transactionResourceKey);
+            if (current != null && current.getDate().equals(today)) {
+                return current;
+            }
+            TransactionSynchronizationManager.unbindResourceIfPossible(transactionResourceKey);
+        }
+
+        final long buildGeneration = getGeneration();
+        final SupervisionGraph built = SupervisionGraph.build(today, dao.getRelationshipPersonIds(supervisorRelationshipType, today));
+
+        if (inTransaction) {
+            TransactionSynchronizationManager.bindResource(transactionResourceKey, built);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publish(built, buildGeneration);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(transactionResourceKey);
+                }
+            });
+        }
+        else {
+            publish(built, buildGeneration);
+        }
+
+        return built;
+    }
+
+    /**
+     * Drops the current graph; should be called whenever a supervision relationship is created or ended
+     */
+    public void invalidate() {
+
+        clear();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the graph bound to this transaction is now out-of-date as well
+            TransactionSynchronizationManager.unbindResourceIfPossible(transactionResourceKey);
+
+            // any graph built by another thread before this transaction completes was built from stale data
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    clear();
+                }
+            });
+        }
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized void clear() {
+        generation++;
+        graph = null;
+    }
+
+    private synchronized void publish(SupervisionGraph built, long buildGeneration) {
+        if (generation == buildGeneration) {
+            graph = built;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.job;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.Person;
+import org.openmrs.RelationshipType;
+import org.openmrs.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A transfer, unassignment or retirement that is applied to its items (patient, supervisee or relationship ids,
+ * depending on the job type) a chunk at a time, committing after each chunk; progress is persisted so that an
+ * interrupted job can be resumed where it left off
+ */
+public class BulkJob extends BaseOpenmrsObject {
+
+    // the maximum number of failure messages to keep (all failures are counted)
+    public static final int MAX_FAILURE_MESSAGES = 100;
+
+    private Integer bulkJobId;
+
+    private BulkJobType jobType;
+
+    private BulkJobStatus status = BulkJobStatus.PENDING;
+
+    // the source provider (or supervisor), or the provider to retire
+    private Person provider;
+
+    // the destination provider (or supervisor) of a transfer
+    private Person destinationProvider;
+
+    private RelationshipType relationshipType;
+
+    // the date the transfer or unassignment takes effect
+    private Date date;
+
+    // the reason to retire the provider with
+    private String reason;
+
+    // comma-separated
+    private String itemIds;
+
+    private Integer totalItems = 0;
+
+    private Integer processedItems = 0;
+
+    private Integer failedItems = 0;
+
+    // one message per line
+    private String failures;
+
+    // the user that submitted the job; changes made by the job are recorded as made by this user, even when the job
+    // is processed in the background as the daemon user
+    private User creator;
+
+    private Date dateCreated;
+
+    private Date dateChanged;
+
+    public BulkJob() {
+    }
+
+    public BulkJob(BulkJobType jobType) {
+        this.jobType = jobType;
+    }
+
+    @Override
+    public Integer getId() {
+        return bulkJobId;
+    }
+
+    @Override
+    public void setId(Integer id) {
+        this.bulkJobId = id;
+    }
+
+    /**
+     * @return the ids of the items to process, in the order they are processed
+     */
+    public List<Integer> getItemIdList() {
+        List<Integer> ids = new ArrayList<Integer>();
+        if (StringUtils.isNotBlank(itemIds)) {
+            for (String id : itemIds.split(",")) {
+                ids.add(Integer.valueOf(id.trim()));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Sets the items to process, and resets the progress of the job
+     *
+     * @param ids
+     */
+    public void setItemIdList(Collection<Integer> ids) {
+        this.itemIds = StringUtils.join(ids, ",");
+        this.totalItems = ids.size();
+        this.processedItems = 0;
+        this.failedItems = 0;
+        this.failures = null;
+    }
+
+    /**
+     * Records that the specified item could not be processed
+     *
+     * @param itemId
+     * @param message
+     */
+    public void addFailure(Integer itemId, String message) {
+        failedItems++;
+        addFailureMessage((itemId != null ? itemId + ": " : "") + message);
+    }
+
+    /**
+     * Records a failure of the job as a whole
+     *
+     * @param message
+     */
+    public void addFailureMessage(String message) {
+        String[] existing = StringUtils.isNotBlank(failures) ? failures.split("\n") : new String[0];
+        if (existing.length < MAX_FAILURE_MESSAGES) {
+            failures = (existing.length > 0 ? failures + "\n" : "") + StringUtils.replaceChars(message, '\n', ' ');
+        }
+    }
+
+    /**
+     * @return the failure messages, in the order they occurred
+     */
+    public List<String> getFailureList() {
+        List<String> list = new ArrayList<String>();
+        if (StringUtils.isNotBlank(failures)) {
+            for (String failure : failures.split("\n")) {
+                list.add(failure);
+            }
+        }
+        return list;
+    }
+
+    public int getPercentComplete() {
+        if (totalItems == null || totalItems == 0) {
+            return isFinished() ? 100 : 0;
+        }
+        return (int) (100L * processedItems / totalItems);
+    }
+
+    public boolean isFinished() {
+        return status == BulkJobStatus.COMPLETED || status == BulkJobStatus.FAILED;
+    }
+
+    public Integer getBulkJobId() {
+        return bulkJobId;
+    }
+
+    public void setBulkJobId(Integer bulkJobId) {
+        this.bulkJobId = bulkJobId;
+    }
+
+    public BulkJobType getJobType() {
+        return jobType;
+    }
+
+    public void setJobType(BulkJobType jobType) {
+        this.jobType = jobType;
+    }
+
+    public BulkJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(BulkJobStatus status) {
+        this.status = status;
+    }
+
+    public Person getProvider() {
+        return provider;
+    }
+
+    public void setProvider(Person provider) {
+        this.provider = provider;
+    }
+
+    public Person getDestinationProvider() {
+        return destinationProvider;
+    }
+
+    public void setDestinationProvider(Person destinationProvider) {
+        this.destinationProvider = destinationProvider;
+    }
+
+    public RelationshipType getRelationshipType() {
+        return relationshipType;
+    }
+
+    public void setRelationshipType(RelationshipType relationshipType) {
+        this.relationshipType = relationshipType;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public String getItemIds() {
+        return itemIds;
+    }
+
+    public void setItemIds(String itemIds) {
+        this.itemIds = itemIds;
+    }
+
+    public Integer getTotalItems() {
+        return totalItems;
+    }
+
+    public void setTotalItems(Integer totalItems) {
+        this.totalItems = totalItems;
+    }
+
+    public Integer getProcessedItems() {
+        return processedItems;
+    }
+
+    public void setProcessedItems(Integer processedItems) {
+        this.processedItems = processedItems;
+    }
+
+    public Integer getFailedItems() {
+        return failedItems;
+    }
+
+    public void setFailedItems(Integer failedItems) {
+        this.failedItems = failedItems;
+    }
+
+    public String getFailures() {
+        return failures;
+    }
+
+    public void setFailures(String failures) {
+        this.failures = failures;
+    }
+
+    public User getCreator() {
+        return creator;
+    }
+
+    public void setCreator(User creator) {
+        this.creator = creator;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDateChanged() {
+        return dateChanged;
+    }
+
+    public void setDateChanged(Date dateChanged) {
+        this.dateChanged = dateChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkJob[" + bulkJobId + ", " + jobType + ", " + status + "]";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.job;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs bulk jobs in the background, a chunk (and a transaction) at a time, as the daemon user
+ *
+ * Since the progress of a job is saved with each chunk, a job interrupted by a restart is simply picked up again
+ * where it left off when the module is started (see {@link #resumeUnfinishedJobs()})
+ */
+public class BulkJobRunner {
+
+    protected static final Log log = LogFactory.getLog(BulkJobRunner.class);
+
+    private static DaemonToken daemonToken;
+
+    // the jobs currently being run, so that a job is never run by two threads at once
+    private static final Set<Integer> runningJobIds = Collections.synchronizedSet(new HashSet<Integer>());
+
+    /**
+     * Set by the module activator
+     *
+     * @param token
+     */
+    public static void setDaemonToken(DaemonToken token) {
+        daemonToken = token;
+    }
+
+    /**
+     * Runs the specified job to completion in a new thread (unless it is already being run)
+     *
+     * @param jobId
+     */
+    public static void run(final Integer jobId) {
+
+        if (daemonToken == null) {
+            log.warn("Unable to run bulk job " + jobId + " until the module has been started; it will be resumed then");
+            return;
+        }
+
+        if (!runningJobIds.add(jobId)) {
+            return;
+        }
+
+        try {
+            Daemon.runInDaemonThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runJob(jobId);
+                    }
+                    finally {
+                        runningJobIds.remove(jobId);
+                    }
+                }
+            }, daemonToken);
+        }
+        catch (RuntimeException e) {
+            runningJobIds.remove(jobId);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs all the unfinished jobs, one after another, in a new thread; called when the module is started
+     */
+    public static void resumeUnfinishedJobs() {
+
+        if (daemonToken == null) {
+            log.warn("Unable to resume unfinished bulk jobs, as no daemon token has been set");
+            return;
+        }
+
+        Daemon.runInDaemonThread(new Runnable() {
+            @Override
+            public void run() {
+                List<Integer> jobIds = new ArrayList<Integer>();
+                for (BulkJob job : Context.getService(ProviderManagementService.class).getUnfinishedBulkJobs()) {
+                    jobIds.add(job.getId());
+                }
+
+                for (Integer jobId : jobIds) {
+                    if (runningJobIds.add(jobId)) {
+                        try {
+                            log.info("Resuming bulk job " + jobId);
+                            runJob(jobId);
+                        }
+                        finally {
+                            runningJobIds.remove(jobId);
+                        }
+                    }
+                }
+            }
+        }, daemonToken);
+    }
+
+    private static void runJob(Integer jobId) {
+
+        ProviderManagementService service = Context.getService(ProviderManagementService.class);
+
+        try {
+            BulkJob job = service.getBulkJob(jobId);
+            while (job != null && service.processBulkJobChunk(job)) {
+                // each chunk is committed on its own; don't let the session grow with the size of the job
+                Context.clearSession();
+                job = service.getBulkJob(jobId);
+            }
+        }
+        catch (Exception e) {
+            log.error("Bulk job " + jobId + " failed", e);
+
+            // the chunk that failed has been rolled back, so record the failure against the last saved state of the job
+            Context.clearSession();
+            BulkJob job = service.getBulkJob(jobId);
+            if (job != null) {
+                job.addFailureMessage(e.getMessage() != null ? e.getMessage() : e.toString());
+                job.setStatus(BulkJobStatus.FAILED);
+                service.saveBulkJob(job);
+            }
+        }
+    }
+}
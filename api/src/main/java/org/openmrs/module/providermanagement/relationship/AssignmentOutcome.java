@@ -0,0 +1,27 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.relationship;
+
+/**
+ * The outcome of assigning a single person as part of a bulk assignment
+ */
+public enum AssignmentOutcome {
+    ASSIGNED,
+    ALREADY_ASSIGNED,
+    VOIDED,
+    NOT_A_PROVIDER,
+    INVALID_SUPERVISOR
+}
@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.relationship;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Lightweight projection of a patient of a provider: just the patient id, preferred name and preferred identifier,
+ * so that large caseloads can be listed without loading full Patient objects into the session
+ */
+public class PatientOfProvider {
+
+    private Integer patientId;
+
+    private String givenName;
+
+    private String middleName;
+
+    private String familyName;
+
+    private String identifier;
+
+    public PatientOfProvider() {}
+
+    public PatientOfProvider(Integer patientId, String givenName, String middleName, String familyName, String identifier) {
+        this.patientId = patientId;
+        this.givenName = givenName;
+        this.middleName = middleName;
+        this.familyName = familyName;
+        this.identifier = identifier;
+    }
+
+    /**
+     * @return the given, middle and family names separated by spaces (skipping any that are blank)
+     */
+    public String getFullName() {
+        StringBuilder builder = new StringBuilder();
+        for (String name : new String[] { givenName, middleName, familyName }) {
+            if (StringUtils.isNotBlank(name)) {
+                if (builder.length() > 0) {
+                    builder.append(" ");
+                }
+                builder.append(name);
+            }
+        }
+        return builder.toString();
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public void setGivenName(String givenName) {
+        this.givenName = givenName;
+    }
+
+    public String getMiddleName() {
+        return middleName;
+    }
+
+    public void setMiddleName(String middleName) {
+        this.middleName = middleName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public void setFamilyName(String familyName) {
+        this.familyName = familyName;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+}
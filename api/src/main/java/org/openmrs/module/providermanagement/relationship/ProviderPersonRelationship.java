@@ -30,4 +30,23 @@ public class ProviderPersonRelationship {
         this.relationshipType = relationshipType;
     }
 
+    public Person getPerson() {
+        return person;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public Integer getObjectId() {
+        return objectId;
+    }
+
+    public Relationship getRelationship() {
+        return relationship;
+    }
+
+    public RelationshipType getRelationshipType() {
+        return relationshipType;
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.search;
+
+import org.openmrs.PersonName;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A single normalised word of one of the (non-voided) names of a provider; provider name searches look up the
+ * persons with a token that starts with each of the words searched for, which (unlike matching against the name
+ * columns with ilike) can be done with an index
+ */
+public class ProviderNameToken {
+
+    // the length of the token column; longer words are truncated, which doesn't affect prefix matching
+    public static final int MAX_TOKEN_LENGTH = 50;
+
+    private Integer providerNameTokenId;
+
+    private Integer personId;
+
+    private String token;
+
+    public ProviderNameToken() {
+    }
+
+    public ProviderNameToken(Integer personId, String token) {
+        this.personId = personId;
+        this.token = token;
+    }
+
+    /**
+     * @param names
+     * @return the distinct tokens of the given, middle and family names of the non-voided names
+     */
+    public static Set<String> getTokens(Collection<PersonName> names) {
+        Set<String> tokens = new LinkedHashSet<String>();
+        if (names != null) {
+            for (PersonName name : names) {
+                if (!name.isVoided()) {
+                    tokens.addAll(getTokens(name.getGivenName(), name.getMiddleName(), name.getFamilyName(), name.getFamilyName2()));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param values name values (may be null)
+     * @return the distinct tokens of the values
+     */
+    public static Set<String> getTokens(String... values) {
+        Set<String> tokens = new LinkedHashSet<String>();
+        for (String value : values) {
+            tokens.addAll(getSearchTokens(value));
+        }
+        return tokens;
+    }
+
+    /**
+     * Splits a search string (or a name) into tokens the same way names are split when they are indexed
+     *
+     * @param value
+     * @return the tokens, in the order they appear
+     */
+    public static List<String> getSearchTokens(String value) {
+        List<String> tokens = new ArrayList<String>();
+        if (value != null) {
+            for (String word : value.replace(", ", " ").split("\\s+")) {
+                if (word.length() > 0) {
+                    // not the default locale, which could lower-case the same name differently when indexing and searching
+                    word = word.toLowerCase(Locale.ENGLISH);
+                    tokens.add(word.length() > MAX_TOKEN_LENGTH ? word.substring(0, MAX_TOKEN_LENGTH) : word);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    public Integer getProviderNameTokenId() {
+        return providerNameTokenId;
+    }
+
+    public void setProviderNameTokenId(Integer providerNameTokenId) {
+        this.providerNameTokenId = providerNameTokenId;
+    }
+
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(Integer personId) {
+        this.personId = personId;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.search;
+
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.Provider;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Updates the provider name search index (see {@link ProviderNameToken}) whenever a person, patient, person name or
+ * provider is saved, voided or unvoided via the PersonService, PatientService or ProviderService (a provider may also
+ * be a patient, and have their names edited as one)
+ */
+public class ProviderNameTokenAdvice implements AfterReturningAdvice {
+
+    private static final Set<String> METHODS = new HashSet<String>(Arrays.asList("savePerson", "voidPerson", "unvoidPerson",
+            "savePersonName", "voidPersonName", "unvoidPersonName", "savePatient", "voidPatient", "unvoidPatient",
+            "saveProvider", "purgeProvider"));
+
+    @Override
+    public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+
+        if (!METHODS.contains(method.getName())) {
+            return;
+        }
+
+        Person person = getPerson(returnValue);
+        if (person == null && args != null && args.length > 0) {
+            person = getPerson(args[0]);
+        }
+
+        if (person != null && person.getId() != null) {
+            Context.getService(ProviderManagementService.class).updateProviderNameTokens(person);
+        }
+    }
+
+    private Person getPerson(Object object) {
+        if (object instanceof Person) {
+            return (Person) object;
+        }
+        else if (object instanceof PersonName) {
+            return ((PersonName) object).getPerson();
+        }
+        else if (object instanceof Provider) {
+            return ((Provider) object).getPerson();
+        }
+        else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.search;
+
+import org.openmrs.Person;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the results of a streamed provider search, a batch at a time and in order; the persons in a batch are
+ * evicted from the session once the handler returns, so should not be held on to
+ */
+public interface ProviderSearchResultHandler {
+
+    /**
+     * @param persons the next batch of results
+     * @throws IOException
+     */
+    void handle(List<Person> persons) throws IOException;
+
+}
@@ -15,17 +15,58 @@
 package org.openmrs.module.providermanagement.suggestion;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.RelationshipType;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 public class GroovySuggestionEvaluator implements SuggestionEvaluator {
 
+    // maximum number of compiled suggestion scripts to keep around
+    private static final int MAX_CACHED_SCRIPTS = 100;
+
+    // compiled script classes, keyed on suggestion uuid and criteria, evicting the least recently used;
+    // evaluators are instantiated per suggestion evaluation, so this needs to be static
+    private static final Map<String, Class<? extends Script>> scriptClassCache = new LinkedHashMap<String, Class<? extends Script>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<? extends Script>> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+
+    /**
+     * Removes any compiled scripts for the specified suggestion from the cache; should be called whenever
+     * a suggestion is saved or purged
+     *
+     * (Entries are also keyed on the criteria, so a changed rule would never be evaluated using a stale script
+     * even without this, but this avoids the old script hanging around until evicted)
+     *
+     * @param suggestion
+     */
+    public static void invalidate(Suggestion suggestion) {
+        if (suggestion == null || suggestion.getUuid() == null) {
+            return;
+        }
+
+        synchronized (scriptClassCache) {
+            Iterator<String> i = scriptClassCache.keySet().iterator();
+            while (i.hasNext()) {
+                if (i.next().startsWith(suggestion.getUuid() + ":")) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
 
     @Override
     public Set<Person> evaluate(Suggestion suggestion, Person provider) {
@@ -46,12 +87,42 @@ public class GroovySuggestionEvaluator implements SuggestionEvaluator {
     }
 
     private Set<Person> evaluate(Suggestion suggestion, Binding bindings) {
-        GroovyShell shell = new GroovyShell(bindings);
-        Set<Person> persons = (Set<Person>) shell.evaluate(suggestion.getCriteria());
+        // the compiled class is shared, but each evaluation gets its own script instance (and binding), so this is thread-safe
+        Script script = InvokerHelper.createScript(getScriptClass(suggestion), bindings);
+        Set<Person> persons = (Set<Person>) script.run();
 
         return persons;
     }
 
+    private static Class<? extends Script> getScriptClass(Suggestion suggestion) {
+
+        String criteria = suggestion.getCriteria();
+        // key on the full criteria (not just its hash), so that an edited rule can never pick up a stale script
+        String key = suggestion.getUuid() + ":" + criteria;
+
+        synchronized (scriptClassCache) {
+            Class<? extends Script> scriptClass = scriptClassCache.get(key);
+            if (scriptClass != null) {
+                return scriptClass;
+            }
+        }
+
+        // compile outside of the lock, so that rules being evaluated concurrently don't wait on each other's compilation;
+        // use a new class loader per script, so that the class can be garbage collected once it is evicted
+        GroovyClassLoader classLoader = new GroovyClassLoader(Thread.currentThread().getContextClassLoader());
+        Class<? extends Script> compiled = classLoader.parseClass(criteria).asSubclass(Script.class);
+
+        synchronized (scriptClassCache) {
+            // another thread may have compiled the same script in the meantime; if so, use theirs
+            Class<? extends Script> scriptClass = scriptClassCache.get(key);
+            if (scriptClass == null) {
+                scriptClassCache.put(key, compiled);
+                scriptClass = compiled;
+            }
+            return scriptClass;
+        }
+    }
+
     // TODO: add a better version of this which is driven by a config file?
     private static Binding getBindings() {
         final Binding binding = new Binding();
@@ -0,0 +1,370 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.suggestion;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Person;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.providermanagement.exception.SuggestionEvaluationException;
+import org.openmrs.util.PrivilegeConstants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates a set of suggestion rules and returns the union of the ids of the persons they suggest
+ *
+ * If more than one thread is requested, the rules are evaluated concurrently on a shared pool, each within its own
+ * OpenMRS session and its own user context (authenticated as the calling user), and each rule is allowed to run for
+ * at most the specified time budget, measured from when it starts running (not from when it is queued); a rule that
+ * fails to complete in time is skipped (and a warning logged), so that the caller gets the (partial) union of the
+ * rules that did complete. Otherwise the rules are evaluated one after another in the calling thread, without any
+ * time limit.
+ *
+ * Note that skipping a rule only interrupts the thread evaluating it: a Groovy script that never blocks on anything
+ * interruptible (i.e. a tight loop) keeps running, and keeps its pool thread busy, until it finishes. So that such
+ * scripts can't starve everyone else of the pool, a rule that is still queued once every rule that was ahead of it
+ * in the pool (including those of other callers) could have used up its whole budget is skipped as well, and once
+ * the (bounded) queue is full, any further rules are evaluated in the calling thread instead.
+ *
+ * Since rules may be evaluated in another session, which can't see anything the caller hasn't committed, it is up
+ * to the caller to only ask for more than one thread if there is nothing uncommitted that the rules need to see.
+ * The workers are never handed the caller's (session-bound) suggestions, but detached copies of them, and an
+ * {@link Evaluation} should reload any persistent objects it needs by id; only person ids are returned.
+ */
+public class SuggestionEvaluationExecutor {
+
+    protected static final Log log = LogFactory.getLog(SuggestionEvaluationExecutor.class);
+
+    // the number of rules that may be queued per thread before further rules are evaluated by the caller
+    private static final int QUEUED_RULES_PER_THREAD = 4;
+
+    private static ThreadPoolExecutor pool = null;
+
+    /**
+     * Evaluates a single suggestion rule
+     */
+    public interface Evaluation<T extends Suggestion> {
+
+        /**
+         * @param suggestion the suggestion to evaluate
+         * @return the persons suggested by the rule (may be null)
+         * @throws Exception
+         */
+        Set<Person> evaluate(T suggestion) throws Exception;
+
+    }
+
+    /**
+     * Evaluates the specified suggestions
+     *
+     * @param suggestions the suggestions to evaluate
+     * @param evaluation performs the evaluation of a single suggestion
+     * @param threads the maximum number of suggestions to evaluate concurrently; 1 to evaluate in the calling thread
+     * @param timeout the time, in milliseconds, each suggestion may be evaluated for; 0 for no limit
+     * @return the ids of all the persons suggested by the suggestions that completed
+     * @throws SuggestionEvaluationException if evaluating any suggestion fails
+     */
+    public static <T extends Suggestion> Set<Integer> evaluate(Collection<T> suggestions, final Evaluation<T> evaluation,
+                                                               int threads, long timeout) throws SuggestionEvaluationException {
+
+        Set<Integer> personIds = new HashSet<Integer>();
+
+        if (suggestions == null || suggestions.size() == 0) {
+            return personIds;
+        }
+
+        if (threads <= 1) {
+            for (T suggestion : suggestions) {
+                try {
+                    // note that we are doing union, not intersection, here if there are multiple rules
+                    addPersonIds(personIds, evaluation.evaluate(suggestion));
+                }
+                catch (Exception e) {
+                    throw new SuggestionEvaluationException("Unable to evaluate suggestion " + suggestion, e);
+                }
+            }
+            return personIds;
+        }
+
+        ThreadPoolExecutor executor = getPool(threads);
+
+        // the workers get their own user context, so only hand them the plain values needed to authenticate it
+        final Thread caller = Thread.currentThread();
+        User user = Context.getAuthenticatedUser();
+        final Integer userId = user != null ? user.getUserId() : null;
+        final Locale locale = Context.getLocale();
+
+        List<PendingEvaluation> pending = new ArrayList<PendingEvaluation>();
+        try {
+            for (T suggestion : suggestions) {
+                final T copy = copyOf(suggestion);
+                final AtomicLong startTime = new AtomicLong(0);
+
+                // if every rule ahead of this one in the pool uses up its whole budget, this one starts after this long
+                int ahead = executor.getActiveCount() + executor.getQueue().size();
+                long queueDeadline = System.currentTimeMillis() + (ahead / threads + 1) * timeout;
+
+                Future<Set<Integer>> future = executor.submit(new Callable<Set<Integer>>() {
+                    @Override
+                    public Set<Integer> call() throws Exception {
+                        // the time budget of each rule runs from here
+                        startTime.set(System.currentTimeMillis());
+                        if (Thread.currentThread() == caller) {
+                            // the queue was full, so this is being evaluated in the caller's own session
+                            return evaluateOne(evaluation, copy);
+                        }
+
+                        Context.openSession();
+                        try {
+                            Context.setUserContext(new WorkerUserContext(userId, locale));
+                            return evaluateOne(evaluation, copy);
+                        }
+                        finally {
+                            Context.closeSession();
+                        }
+                    }
+                });
+                pending.add(new PendingEvaluation(copy, future, startTime, queueDeadline));
+            }
+
+            for (PendingEvaluation entry : pending) {
+                try {
+                    if (timeout > 0) {
+                        addIds(personIds, getWithinBudget(entry, timeout));
+                    }
+                    else {
+                        addIds(personIds, entry.future.get());
+                    }
+                }
+                catch (ExecutionException e) {
+                    throw new SuggestionEvaluationException("Unable to evaluate suggestion " + entry.suggestion,
+                            e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SuggestionEvaluationException("Interrupted while evaluating suggestion " + entry.suggestion, e);
+                }
+            }
+        }
+        finally {
+            // make sure nothing keeps running if we are bailing out, and that nothing cancelled holds on to a place in the queue
+            for (PendingEvaluation entry : pending) {
+                entry.future.cancel(true);
+            }
+            executor.purge();
+        }
+
+        return personIds;
+    }
+
+    /**
+     * Waits for the result of a single rule, for at most the time budget from when the rule started running (or, if it
+     * hasn't started yet, until its queue deadline); returns null, and cancels the rule, if it doesn't complete in time
+     */
+    private static Set<Integer> getWithinBudget(PendingEvaluation entry, long timeout)
+            throws ExecutionException, InterruptedException {
+
+        while (true) {
+            long startedAt = entry.startTime.get();
+            long deadline = startedAt > 0 ? startedAt + timeout : entry.queueDeadline;
+
+            try {
+                return entry.future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                if (startedAt == 0 && entry.startTime.get() > 0) {
+                    // the rule started while we were waiting for it to do so; now give it its own budget
+                    continue;
+                }
+
+                entry.future.cancel(true);
+                if (startedAt > 0) {
+                    log.warn("Evaluation of suggestion " + entry.suggestion + " exceeded the time limit of " + timeout
+                            + " ms and was skipped; suggestions may be incomplete");
+                }
+                else {
+                    log.warn("Evaluation of suggestion " + entry.suggestion + " could not be started in time (all evaluation threads "
+                            + "are busy with rules that have exceeded their time limit) and was skipped; suggestions may be incomplete");
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stops the evaluation threads; called when the module is stopped
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    private static <T extends Suggestion> Set<Integer> evaluateOne(Evaluation<T> evaluation, T suggestion) throws Exception {
+        Set<Integer> personIds = new HashSet<Integer>();
+        addPersonIds(personIds, evaluation.evaluate(suggestion));
+        return personIds;
+    }
+
+    /**
+     * @return a detached copy of the suggestion, holding just what is needed to evaluate it
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Suggestion> T copyOf(T suggestion) throws SuggestionEvaluationException {
+        try {
+            T copy = (T) suggestion.getClass().newInstance();
+            copy.setId(suggestion.getId());
+            copy.setUuid(suggestion.getUuid());
+            copy.setName(suggestion.getName());
+            copy.setCriteria(suggestion.getCriteria());
+            copy.setEvaluator(suggestion.getEvaluator());
+            return copy;
+        }
+        catch (Exception e) {
+            throw new SuggestionEvaluationException("Unable to evaluate suggestion " + suggestion, e);
+        }
+    }
+
+    private static void addPersonIds(Set<Integer> personIds, Set<Person> persons) {
+        if (persons != null) {
+            for (Person person : persons) {
+                if (person != null && person.getId() != null) {
+                    personIds.add(person.getId());
+                }
+            }
+        }
+    }
+
+    private static void addIds(Set<Integer> personIds, Set<Integer> ids) {
+        if (ids != null) {
+            personIds.addAll(ids);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getPool(int threads) {
+
+        if (pool == null || pool.getMaximumPoolSize() != threads) {
+            // the number of threads is configurable at runtime, and the queue is sized on it; so replace the pool (letting
+            // the old one finish whatever it has been given) rather than resizing it
+            if (pool != null) {
+                pool.shutdown();
+            }
+
+            pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * QUEUED_RULES_PER_THREAD),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "providermanagement-suggestion-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                            // the queue is full (or the pool is being replaced), so evaluate the rule in the caller's thread
+                            runnable.run();
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+
+        return pool;
+    }
+
+    /**
+     * A rule that has been handed to the pool
+     */
+    private static class PendingEvaluation {
+
+        private final Suggestion suggestion;
+
+        private final Future<Set<Integer>> future;
+
+        private final AtomicLong startTime;
+
+        private final long queueDeadline;
+
+        private PendingEvaluation(Suggestion suggestion, Future<Set<Integer>> future, AtomicLong startTime, long queueDeadline) {
+            this.suggestion = suggestion;
+            this.future = future;
+            this.startTime = startTime;
+            this.queueDeadline = queueDeadline;
+        }
+    }
+
+    /**
+     * The user context of a worker thread, authenticated as the calling user (a user context isn't thread-safe, so
+     * the caller's own can't be shared); the user is loaded in the worker's own session, the first time it is needed
+     */
+    private static class WorkerUserContext extends UserContext {
+
+        private final Integer userId;
+
+        private User user;
+
+        private boolean loading = false;
+
+        private WorkerUserContext(Integer userId, Locale locale) {
+            this.userId = userId;
+            setLocale(locale);
+        }
+
+        @Override
+        public User getAuthenticatedUser() {
+            // while the user is being loaded, the privilege check on loading it must not try to load it again
+            if (user == null && userId != null && !loading) {
+                loading = true;
+                addProxyPrivilege(PrivilegeConstants.VIEW_USERS);
+                try {
+                    user = Context.getUserService().getUser(userId);
+                }
+                finally {
+                    removeProxyPrivilege(PrivilegeConstants.VIEW_USERS);
+                    loading = false;
+                }
+            }
+            return user;
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return getAuthenticatedUser() != null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.providermanagement.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.api.ProviderSuggestionService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Scheduled task that refreshes the stored provider suggestion results before they expire, so that the
+ * patient provider dashboard rarely has to evaluate the suggestion rules itself
+ *
+ * The maximum number of results to refresh per run can be set via the "batchSize" task property
+ * (defaults to 500); should be scheduled to run several times within providermanagement.suggestionCacheMaxAge
+ */
+public class RefreshProviderSuggestionsTask extends AbstractTask {
+
+    protected final Log log = LogFactory.getLog(this.getClass());
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    @Override
+    public void execute() {
+
+        if (isExecuting()) {
+            return;
+        }
+
+        startExecuting();
+        try {
+            int batchSize = NumberUtils.toInt(getTaskDefinition().getProperty("batchSize"), DEFAULT_BATCH_SIZE);
+            int refreshed = Context.getService(ProviderSuggestionService.class).refreshStoredProviderSuggestions(batchSize);
+            log.debug("Refreshed " + refreshed + " stored provider suggestion results");
+        }
+        catch (Exception e) {
+            log.error("Unable to refresh stored provider suggestion results", e);
+        }
+        finally {
+            stopExecuting();
+        }
+    }
+}
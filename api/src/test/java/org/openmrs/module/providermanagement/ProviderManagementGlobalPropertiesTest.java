@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.util.List;
+import java.util.Map;
+
+public class ProviderManagementGlobalPropertiesTest extends BaseModuleContextSensitiveTest {
+
+    @Test
+    public void GLOBAL_PROPERTY_SEARCH_PAGE_SIZE_shouldReturnNewValueWhenGlobalPropertyIsChanged() {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.searchPageSize", "10"));
+        Assert.assertEquals(new Integer(10), ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SEARCH_PAGE_SIZE());
+
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.searchPageSize", "5"));
+        Assert.assertEquals(new Integer(5), ProviderManagementGlobalProperties.GLOBAL_PROPERTY_SEARCH_PAGE_SIZE());
+        Assert.assertEquals(new Integer(5), ProviderManagementGlobalProperties.getSnapshot().getSearchPageSize());
+    }
+
+    @Test
+    public void getSnapshot_shouldStripLeadingPersonReferencesFromProviderSearchDisplayFields() {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.providerSearchDisplayFields",
+                "Name:person.personName|Identifier:provider.identifier"));
+
+        Map<String,String> displayFields = ProviderManagementGlobalProperties.getSnapshot().getProviderSearchDisplayFields();
+        Assert.assertEquals(2, displayFields.size());
+        Assert.assertEquals("personName", displayFields.get("Name"));
+        Assert.assertEquals("provider.identifier", displayFields.get("Identifier"));
+    }
+
+    @Test
+    public void GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS_shouldReturnACopyOfTheCachedValue() {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.providerListDisplayFields",
+                "Name:provider.personName"));
+
+        ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS().put("Gender", "provider.gender");
+
+        Map<String,String> displayFields = ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS();
+        Assert.assertEquals(1, displayFields.size());
+        Assert.assertEquals("provider.personName", displayFields.get("Name"));
+    }
+
+    @Test
+    public void GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES_shouldReturnTypesFromTheCurrentSession() throws Exception {
+        executeDataSet("org/openmrs/module/providermanagement/include/providerManagement-dataset.xml");
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.personAttributeTypes",
+                "b3b7d540-a32e-44c7-91b3-292d97667518|not-a-uuid"));
+
+        Assert.assertEquals(1, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES().size());
+
+        // the cached value must not hold on to the types loaded by the previous session
+        Context.flushSession();
+        Context.clearSession();
+
+        List<PersonAttributeType> types = ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES();
+        Assert.assertEquals(1, types.size());
+        Assert.assertSame(Context.getPersonService().getPersonAttributeTypeByUuid("b3b7d540-a32e-44c7-91b3-292d97667518"), types.get(0));
+        Assert.assertSame(types.get(0), ProviderManagementGlobalProperties.getSnapshot().getPersonAttributeTypes().get(0));
+    }
+
+    @Test
+    public void GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE_shouldReturnTypeFromTheCurrentSession() throws Exception {
+        executeDataSet("org/openmrs/module/providermanagement/include/providerManagement-dataset.xml");
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.advancedSearchPersonAttributeType",
+                "b3b7d540-a32e-44c7-91b3-292d97667518"));
+
+        Assert.assertNotNull(ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE());
+
+        Context.flushSession();
+        Context.clearSession();
+
+        Assert.assertSame(Context.getPersonService().getPersonAttributeTypeByUuid("b3b7d540-a32e-44c7-91b3-292d97667518"),
+                ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE());
+    }
+}
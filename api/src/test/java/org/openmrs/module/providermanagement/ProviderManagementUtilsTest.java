@@ -26,11 +26,13 @@ import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.exception.InvalidSupervisorException;
 import org.openmrs.module.providermanagement.exception.PersonIsNotProviderException;
 import org.openmrs.module.providermanagement.exception.ProviderAlreadyAssignedToSupervisorException;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
 import static org.junit.Assert.assertNotNull;
 
 import java.util.Date;
+import java.util.List;
 
 public class ProviderManagementUtilsTest extends BaseModuleContextSensitiveTest{
 	protected static final String XML_DATASET_PATH = "org/openmrs/module/providermanagement/include/";
@@ -127,6 +129,26 @@ public class ProviderManagementUtilsTest extends BaseModuleContextSensitiveTest{
     	provider.setPerson(person);
     	Assert.assertTrue(ProviderManagementUtils.getSupervisees(provider).isEmpty());
     }
+
+    @Test
+    public void superviseeListShouldContainMostRecentActiveRelationshipWithEachSupervisee() throws Exception {
+        Provider supervisorProvider = new Provider();
+        Person supervisee = Context.getPersonService().getPerson(6);
+        Person supervisor = Context.getPersonService().getPerson(8);
+        supervisorProvider.setPerson(supervisor);
+
+        // assign, unassign and then reassign the supervisee
+        providerManagementService.assignProviderToSupervisor(supervisee, supervisor, FURTHER_PAST_DATE);
+        providerManagementService.unassignProviderFromSupervisor(supervisee, supervisor, PAST_DATE);
+        providerManagementService.assignProviderToSupervisor(supervisee, supervisor, DATE);
+
+        List<ProviderPersonRelationship> supervisees = ProviderManagementUtils.getSupervisees(supervisorProvider);
+        Assert.assertEquals(1, supervisees.size());
+        Assert.assertEquals(new Integer(6), supervisees.get(0).getObjectId());
+        Assert.assertEquals("2a6", supervisees.get(0).getIdentifier());
+        Assert.assertEquals(DATE, supervisees.get(0).getRelationship().getStartDate());
+        Assert.assertNull(supervisees.get(0).getRelationship().getEndDate());
+    }
     
     @Test
     public void shouldReturnTrueForRelationshipWithStartDateInPastAndNoEndDate() {
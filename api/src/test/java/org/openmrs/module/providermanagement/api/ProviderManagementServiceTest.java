@@ -17,19 +17,26 @@ import org.hibernate.ObjectNotFoundException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientProgram;
 import org.openmrs.Person;
 import org.openmrs.PersonAddress;
 import org.openmrs.PersonAttribute;
 import org.openmrs.PersonAttributeType;
+import org.openmrs.PersonName;
 import org.openmrs.Provider;
 import org.openmrs.ProviderAttributeType;
 import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
+import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.ProviderManagementUtils;
 import org.openmrs.module.providermanagement.ProviderRole;
+import org.openmrs.module.providermanagement.cache.ProviderRoleMetadataAdvice;
 import org.openmrs.module.providermanagement.exception.DateCannotBeInFutureException;
 import org.openmrs.module.providermanagement.exception.InvalidRelationshipTypeException;
 import org.openmrs.module.providermanagement.exception.InvalidSupervisorException;
@@ -41,13 +48,24 @@ import org.openmrs.module.providermanagement.exception.ProviderDoesNotSupportRel
 import org.openmrs.module.providermanagement.exception.ProviderNotAssignedToSupervisorException;
 import org.openmrs.module.providermanagement.exception.ProviderRoleInUseException;
 import org.openmrs.module.providermanagement.exception.SourceProviderSameAsDestinationProviderException;
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.job.BulkJobStatus;
+import org.openmrs.module.providermanagement.job.BulkJobType;
+import org.openmrs.module.providermanagement.relationship.AssignmentOutcome;
+import org.openmrs.module.providermanagement.relationship.PatientOfProvider;
+import org.openmrs.module.providermanagement.relationship.ProviderPersonRelationship;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertNotNull;
@@ -322,6 +340,59 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(0, relationshipTypes.size());
     }
 
+    @Test
+    public void getAllProviderRoleRelationshipTypes_shouldReflectRetiredProviderRole() {
+        // load the role metadata before making any changes
+        Assert.assertEquals(3, providerManagementService.getAllProviderRoleRelationshipTypes(false).size());
+
+        // relationship type 1003 is only supported by provider role 1012
+        providerManagementService.retireProviderRole(providerManagementService.getProviderRole(1012), "test");
+
+        List<RelationshipType> relationshipTypes = providerManagementService.getAllProviderRoleRelationshipTypes(false);
+        Assert.assertEquals(2, relationshipTypes.size());
+        Assert.assertFalse(relationshipTypes.contains(Context.getPersonService().getRelationshipType(1003)));
+
+        // retired roles should still be included when requested
+        Assert.assertEquals(3, providerManagementService.getAllProviderRoleRelationshipTypes(true).size());
+    }
+
+    @Test
+    public void getAllProviderRoleRelationshipTypes_shouldReflectSavedProviderRole() {
+        // load the role metadata before making any changes
+        Assert.assertEquals(3, providerManagementService.getAllProviderRoleRelationshipTypes(false).size());
+
+        // add a relationship type that is not currently associated with any role
+        ProviderRole role = providerManagementService.getProviderRole(1003);
+        role.getRelationshipTypes().add(Context.getPersonService().getRelationshipType(1005));
+        providerManagementService.saveProviderRole(role);
+
+        List<RelationshipType> relationshipTypes = providerManagementService.getAllProviderRoleRelationshipTypes(false);
+        Assert.assertEquals(4, relationshipTypes.size());
+        Assert.assertTrue(relationshipTypes.contains(Context.getPersonService().getRelationshipType(1005)));
+    }
+
+    @Test
+    public void getAllProviderRoleRelationshipTypes_shouldReflectRelationshipTypeRetiredViaPersonService() throws Exception {
+        // load the role metadata before making any changes
+        List<RelationshipType> relationshipTypes = providerManagementService.getAllProviderRoleRelationshipTypes(false);
+        Assert.assertEquals(3, relationshipTypes.size());
+
+        RelationshipType relationshipType = relationshipTypes.get(0);
+        relationshipType.setRetired(true);
+        relationshipType.setRetireReason("test");
+        Context.getPersonService().saveRelationshipType(relationshipType);
+
+        // as the module's advice on the person service would
+        new ProviderRoleMetadataAdvice().afterReturning(relationshipType,
+                PersonService.class.getMethod("saveRelationshipType", RelationshipType.class), new Object[] { relationshipType },
+                Context.getPersonService());
+
+        relationshipTypes = providerManagementService.getAllProviderRoleRelationshipTypes(false);
+        Assert.assertEquals(2, relationshipTypes.size());
+        Assert.assertFalse(relationshipTypes.contains(relationshipType));
+        Assert.assertTrue(providerManagementService.getAllProviderRoleRelationshipTypes(true).contains(relationshipType));
+    }
+
     @Test
     public void getProviderRoles_shouldGetProviderRoles() {
         Person provider = Context.getPersonService().getPerson(2);
@@ -708,6 +779,35 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         List<Person> providers = providerManagementService.getProvidersAsPersonsByRelationshipType(null);
     }
 
+    @Test
+    public void getProvidersAsPersonsByRelationshipTypeAndPersonIds_shouldReturnOnlyPersonsThatAreProvidersThatSupportRelationshipType() {
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1002);
+
+        // person 1 is a provider without a role, person 501 has a role that doesn't support the relationship type and person 502 is not a provider
+        List<Person> providers = providerManagementService.getProvidersAsPersonsByRelationshipType(relationshipType, Arrays.asList(1, 2, 9, 501, 502));
+
+        Assert.assertEquals(2, providers.size());
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Person provider : providers) {
+            ids.add(provider.getId());
+        }
+        Assert.assertTrue(ids.contains(2));
+        Assert.assertTrue(ids.contains(9));
+    }
+
+    @Test
+    public void getProvidersAsPersonsByRelationshipTypeAndPersonIds_shouldReturnEmptyListIfNoPersonIdsPassed() {
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1002);
+        Assert.assertEquals(0, providerManagementService.getProvidersAsPersonsByRelationshipType(relationshipType, new ArrayList<Integer>()).size());
+        Assert.assertEquals(0, providerManagementService.getProvidersAsPersonsByRelationshipType(relationshipType, null).size());
+    }
+
+    @Test(expected = APIException.class)
+    public void getProvidersAsPersonsByRelationshipTypeAndPersonIds_shouldFailIfCalledWithNullRelationshipType() {
+        providerManagementService.getProvidersAsPersonsByRelationshipType(null, Arrays.asList(2));
+    }
+
     @Test
     public void getProviderRolesThatCanSuperviseThisProvider_shouldReturnProviderRolesThatCanSuperviseProvider() {
         Person provider = Context.getPersonService().getPerson(2);
@@ -762,11 +862,117 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertTrue(providerManagementService.isProvider(Context.getPersonService().getPerson(2)));
     }
 
+    @Test
+    public void isProvider_shouldReflectProviderRolesAssignedEarlierInTheSameTransaction() {
+        Person person = Context.getPersonService().getPerson(502);
+        Assert.assertFalse(providerManagementService.isProvider(person));
+        Assert.assertEquals(0, providerManagementService.getProviderRoles(person).size());
+
+        providerManagementService.assignProviderRoleToPerson(person, providerManagementService.getProviderRole(1001), "123");
+
+        Assert.assertTrue(providerManagementService.isProvider(person));
+        Assert.assertEquals(1, providerManagementService.getProviderRoles(person).size());
+
+        providerManagementService.unassignProviderRoleFromPerson(person, providerManagementService.getProviderRole(1001));
+
+        Assert.assertTrue(providerManagementService.isProvider(person));
+        Assert.assertEquals(0, providerManagementService.getProviderRoles(person).size());
+    }
+
     @Test(expected = APIException.class)
     public void isProvider_shouldFailIfPersonNull() {
         providerManagementService.isProvider(null);
     }
 
+    @Test
+    public void getProviderPersonIds_shouldReturnIdsOfPersonsThatAreProviders() {
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(Context.getPersonService().getPerson(2));
+        persons.add(Context.getPersonService().getPerson(9));
+        persons.add(Context.getPersonService().getPerson(502));
+
+        Set<Integer> providerPersonIds = providerManagementService.getProviderPersonIds(persons);
+        Assert.assertEquals(2, providerPersonIds.size());
+        Assert.assertTrue(providerPersonIds.contains(2));
+        Assert.assertTrue(providerPersonIds.contains(9));
+    }
+
+    @Test
+    public void getProviderPersonIds_shouldIncludePersonsOnlyAssociatedWithRetiredProviders() {
+        Context.getProviderService().retireProvider(Context.getProviderService().getProvider(1003), "test");
+        Context.getProviderService().retireProvider(Context.getProviderService().getProvider(1009), "test");
+
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(Context.getPersonService().getPerson(2));
+
+        Assert.assertTrue(providerManagementService.getProviderPersonIds(persons).contains(2));
+    }
+
+    @Test
+    public void getProviderPersonIds_shouldReturnEmptySetIfNoPersonsPassed() {
+        Assert.assertEquals(0, providerManagementService.getProviderPersonIds(new ArrayList<Person>()).size());
+        Assert.assertEquals(0, providerManagementService.getProviderPersonIds(null).size());
+    }
+
+    @Test
+    public void getProvidersByPersons_shouldReturnProvidersForEachPerson() {
+        Person personWithTwoProviders = Context.getPersonService().getPerson(2);
+        Person personWithOneProvider = Context.getPersonService().getPerson(9);
+
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(personWithTwoProviders);
+        persons.add(personWithOneProvider);
+
+        Map<Person, List<org.openmrs.module.providermanagement.Provider>> providersByPerson = providerManagementService.getProvidersByPersons(persons, true);
+        Assert.assertEquals(2, providersByPerson.size());
+
+        List<org.openmrs.module.providermanagement.Provider> providers = providersByPerson.get(personWithTwoProviders);
+        Assert.assertEquals(2, providers.size());
+        Assert.assertEquals(new Integer(1003), providers.get(0).getId());
+        Assert.assertEquals(new Integer(1009), providers.get(1).getId());
+
+        providers = providersByPerson.get(personWithOneProvider);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(1007), providers.get(0).getId());
+    }
+
+    @Test
+    public void getProvidersByPersons_shouldMapPersonsThatAreNotProvidersToAnEmptyList() {
+        Person person = Context.getPersonService().getPerson(502);
+
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(person);
+
+        Map<Person, List<org.openmrs.module.providermanagement.Provider>> providersByPerson = providerManagementService.getProvidersByPersons(persons, true);
+        Assert.assertEquals(0, providersByPerson.get(person).size());
+    }
+
+    @Test
+    public void getProvidersByPersonIds_shouldReturnProvidersForEachPersonId() {
+        Map<Integer, List<org.openmrs.module.providermanagement.Provider>> providersByPersonId = providerManagementService.getProvidersByPersonIds(Arrays.asList(2, 9, 502), true);
+        Assert.assertEquals(3, providersByPersonId.size());
+
+        List<org.openmrs.module.providermanagement.Provider> providers = providersByPersonId.get(2);
+        Assert.assertEquals(2, providers.size());
+        Assert.assertEquals(new Integer(1003), providers.get(0).getId());
+        Assert.assertEquals(new Integer(1009), providers.get(1).getId());
+
+        Assert.assertEquals(1, providersByPersonId.get(9).size());
+        Assert.assertEquals(0, providersByPersonId.get(502).size());
+    }
+
+    @Test
+    public void getProvidersByPersons_shouldNotIncludeRetiredProvidersUnlessRequested() {
+        Context.getProviderService().retireProvider(Context.getProviderService().getProvider(1003), "test");
+        Person person = Context.getPersonService().getPerson(2);
+
+        List<Person> persons = new ArrayList<Person>();
+        persons.add(person);
+
+        Assert.assertEquals(1, providerManagementService.getProvidersByPersons(persons, false).get(person).size());
+        Assert.assertEquals(2, providerManagementService.getProvidersByPersons(persons, true).get(person).size());
+    }
+
     @Test
     public void hasRole_shouldReturnTrue() {
         ProviderRole role1 = Context.getService(ProviderManagementService.class).getProviderRole(1001);
@@ -1003,6 +1209,69 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         providerManagementService.assignPatientToProvider(patient, provider, relationshipType);
     }
     
+    @Test
+    public void assignPatientsToProvider_shouldAssignPatientsToProvider() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        List<Patient> patients = Arrays.asList(Context.getPatientService().getPatient(2), Context.getPatientService().getPatient(8));
+
+        Map<Patient, AssignmentOutcome> outcomes = providerManagementService.assignPatientsToProvider(patients, provider, relationshipType, null);
+        Assert.assertEquals(2, outcomes.size());
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(patients.get(0)));
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(patients.get(1)));
+
+        Context.flushSession();
+
+        Assert.assertEquals(2, providerManagementService.getPatientsOfProvider(provider, relationshipType, DATE).size());
+        for (Patient patient : patients) {
+            List<Relationship> relationships = providerManagementService.getActiveProviderRelationshipsForPatient(patient, provider, relationshipType, DATE);
+            Assert.assertEquals(1, relationships.size());
+            Assert.assertEquals(DATE, relationships.get(0).getStartDate());
+        }
+    }
+
+    @Test
+    public void assignPatientsToProvider_shouldSkipPatientsAlreadyAssignedToProvider() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        Patient assignedPatient = Context.getPatientService().getPatient(8);
+        Patient newPatient = Context.getPatientService().getPatient(2);
+        providerManagementService.assignPatientToProvider(assignedPatient, provider, relationshipType, PAST_DATE);
+
+        Map<Patient, AssignmentOutcome> outcomes = providerManagementService.assignPatientsToProvider(Arrays.asList(assignedPatient, newPatient),
+                provider, relationshipType, null);
+        Assert.assertEquals(AssignmentOutcome.ALREADY_ASSIGNED, outcomes.get(assignedPatient));
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(newPatient));
+
+        Context.flushSession();
+
+        Assert.assertEquals(1, providerManagementService.getActiveProviderRelationshipsForPatient(assignedPatient, provider, relationshipType, DATE).size());
+    }
+
+    @Test
+    public void assignPatientsToProvider_shouldSkipVoidedPatients() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1003).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        Patient voidedPatient = Context.getPatientService().getPatient(999);  // voided patient from the standard test dataset
+
+        Map<Patient, AssignmentOutcome> outcomes = providerManagementService.assignPatientsToProvider(Collections.singletonList(voidedPatient),
+                provider, relationshipType, null);
+        Assert.assertEquals(AssignmentOutcome.VOIDED, outcomes.get(voidedPatient));
+    }
+
+    @Test(expected = ProviderDoesNotSupportRelationshipTypeException.class)
+    public void assignPatientsToProvider_shouldFailIfProviderDoesNotSupportRelationshipType() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1007).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        providerManagementService.assignPatientsToProvider(Collections.singletonList(Context.getPatientService().getPatient(2)), provider, relationshipType, null);
+    }
+
+    @Test(expected = APIException.class)
+    public void assignPatientsToProvider_shouldFailIfProviderNull() throws Exception {
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        providerManagementService.assignPatientsToProvider(Collections.singletonList(Context.getPatientService().getPatient(2)), null, relationshipType, null);
+    }
+
     @Test(expected = PatientNotAssignedToProviderException.class)
     public void unassignPatientFromProvider_shouldFailIfRelationshipDoesNotExist() throws Exception {
         Patient patient = Context.getPatientService().getPatient(8);
@@ -1092,6 +1361,28 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(ProviderManagementUtils.clearTimeComponent(DATE), relationships.get(0).getEndDate());
     }
 
+    @Test
+    public void unassignAllPatientsFromProvider_shouldEndAllActiveProviderRoleRelationshipsAndClearSessionIfClearSessionIsTrue() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+
+        RelationshipType binome = Context.getPersonService().getRelationshipType(1001);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(2), provider, binome, PAST_DATE);
+
+        RelationshipType accompagneteur = Context.getPersonService().getRelationshipType(1002);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(8), provider, accompagneteur, PAST_DATE);
+
+        providerManagementService.unassignAllPatientsFromProvider(provider, true);
+
+        // the relationships are reloaded, since the session has been cleared
+        List<Relationship> relationships = Context.getPersonService().getRelationships(provider, null, binome);
+        Assert.assertEquals(1, relationships.size());
+        Assert.assertEquals(ProviderManagementUtils.clearTimeComponent(DATE), relationships.get(0).getEndDate());
+
+        relationships = Context.getPersonService().getRelationships(provider, null, accompagneteur);
+        Assert.assertEquals(1, relationships.size());
+        Assert.assertEquals(ProviderManagementUtils.clearTimeComponent(DATE), relationships.get(0).getEndDate());
+    }
+
     @Test
     public void unassignAllPatientsFromProvider_shouldNotFailIfProviderHasNoPatients() throws Exception {
         Person provider = Context.getProviderService().getProvider(1004).getPerson();
@@ -1421,6 +1712,255 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(1, providerManagementService.getPatientsOfProviderCount(provider, relationshipType, DATE));
     }
 
+    @Test
+    public void getPatientsOfProvider_shouldGetPageOfPatientsOfProviderSortedByTheSpecifiedField() throws Exception {
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(8), provider, relationshipType, DATE);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(2), provider, relationshipType, DATE);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(7), provider, relationshipType, DATE);
+
+        List<PatientOfProvider> patients = providerManagementService.getPatientsOfProvider(provider, relationshipType, new Date(), 0, 10, "patientId");
+        Assert.assertEquals(3, patients.size());
+        Assert.assertEquals(new Integer(2), patients.get(0).getPatientId());
+        Assert.assertEquals(new Integer(7), patients.get(1).getPatientId());
+        Assert.assertEquals(new Integer(8), patients.get(2).getPatientId());
+
+        // now just fetch the second page, with a page size of one
+        patients = providerManagementService.getPatientsOfProvider(provider, relationshipType, new Date(), 1, 1, "patientId");
+        Assert.assertEquals(1, patients.size());
+        Assert.assertEquals(new Integer(7), patients.get(0).getPatientId());
+    }
+
+    @Test
+    public void getPatientsOfProvider_shouldUseFirstIdentifierOfPatientsWithoutAPreferredIdentifier() throws Exception {
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(7), provider, relationshipType, DATE);
+        Context.flushSession();
+        Context.getAdministrationService().executeSQL("update patient_identifier set preferred = 0 where patient_id = 7", false);
+        Context.clearSession();
+
+        PatientIdentifier first = null;
+        for (PatientIdentifier identifier : Context.getPatientService().getPatient(7).getIdentifiers()) {
+            if (!identifier.isVoided() && (first == null || identifier.getPatientIdentifierId() < first.getPatientIdentifierId())) {
+                first = identifier;
+            }
+        }
+        Assert.assertNotNull(first);
+
+        List<PatientOfProvider> patients = providerManagementService.getPatientsOfProvider(provider, relationshipType, new Date(), 0, 10, "identifier");
+        Assert.assertEquals(1, patients.size());
+        Assert.assertEquals(first.getIdentifier(), patients.get(0).getIdentifier());
+    }
+
+    @Test(expected = APIException.class)
+    public void getPatientsOfProvider_shouldFailIfProviderIsNull() throws Exception {
+        providerManagementService.getPatientsOfProvider(null, null, new Date(), 0, 10, null);
+    }
+
+    @Test(expected = InvalidRelationshipTypeException.class)
+    public void getPatientsOfProvider_shouldFailIfRelationshipTypeIsNotAProviderRelationshipType() throws Exception {
+        Person provider = Context.getPersonService().getPerson(9);
+        providerManagementService.getPatientsOfProvider(provider, Context.getPersonService().getRelationshipType(1005), new Date(), 0, 10, null);
+    }
+
+    @Test
+    public void getPatientRelationshipsOfProvider_shouldGetPatientRelationshipsOfProviderWithPreferredIdentifiers() throws Exception {
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        RelationshipType otherRelationshipType = Context.getPersonService().getRelationshipType(1002);
+
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(8), provider, otherRelationshipType, DATE);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(2), provider, relationshipType, DATE);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(7), provider, relationshipType, DATE);
+
+        List<ProviderPersonRelationship> relationships = providerManagementService.getPatientRelationshipsOfProvider(provider,
+                Arrays.asList(relationshipType, otherRelationshipType), null);
+        Assert.assertEquals(3, relationships.size());
+
+        // ordered by relationship type, then by relationship id
+        Assert.assertEquals(new Integer(2), relationships.get(0).getObjectId());
+        Assert.assertEquals(new Integer(7), relationships.get(1).getObjectId());
+        Assert.assertEquals(new Integer(8), relationships.get(2).getObjectId());
+        Assert.assertEquals(otherRelationshipType, relationships.get(2).getRelationshipType());
+
+        for (ProviderPersonRelationship relationship : relationships) {
+            Patient patient = Context.getPatientService().getPatient(relationship.getObjectId());
+            Assert.assertEquals(patient.getPatientIdentifier() != null ? patient.getPatientIdentifier().getIdentifier() : null,
+                    relationship.getIdentifier());
+            Assert.assertEquals(relationship.getObjectId(), relationship.getRelationship().getPersonB().getId());
+        }
+
+        // only the requested relationship types should be included
+        relationships = providerManagementService.getPatientRelationshipsOfProvider(provider, Collections.singletonList(otherRelationshipType), null);
+        Assert.assertEquals(1, relationships.size());
+        Assert.assertEquals(new Integer(8), relationships.get(0).getObjectId());
+    }
+
+    @Test
+    public void getPatientRelationshipsOfProvider_shouldUseFirstIdentifierOfPatientsWithoutAPreferredIdentifier() throws Exception {
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(7), provider, relationshipType, DATE);
+        Context.flushSession();
+        Context.getAdministrationService().executeSQL("update patient_identifier set preferred = 0 where patient_id = 7", false);
+        Context.clearSession();
+
+        PatientIdentifier first = null;
+        for (PatientIdentifier identifier : Context.getPatientService().getPatient(7).getIdentifiers()) {
+            if (!identifier.isVoided() && (first == null || identifier.getPatientIdentifierId() < first.getPatientIdentifierId())) {
+                first = identifier;
+            }
+        }
+        Assert.assertNotNull(first);
+
+        List<ProviderPersonRelationship> relationships = providerManagementService.getPatientRelationshipsOfProvider(provider,
+                Collections.singletonList(relationshipType), null);
+        Assert.assertEquals(1, relationships.size());
+        Assert.assertEquals(first.getIdentifier(), relationships.get(0).getIdentifier());
+    }
+
+    @Test(expected = APIException.class)
+    public void getPatientRelationshipsOfProvider_shouldFailIfProviderIsNull() throws Exception {
+        providerManagementService.getPatientRelationshipsOfProvider(null, null, null);
+    }
+
+    @Test(expected = InvalidRelationshipTypeException.class)
+    public void getPatientRelationshipsOfProvider_shouldFailIfRelationshipTypeIsNotAProviderRelationshipType() throws Exception {
+        Person provider = Context.getPersonService().getPerson(9);
+        providerManagementService.getPatientRelationshipsOfProvider(provider, Collections.singletonList(Context.getPersonService().getRelationshipType(1005)), null);
+    }
+
+    @Test(expected = APIException.class)
+    public void getPatientsOfProvider_shouldFailIfSortFieldIsInvalid() throws Exception {
+        Person provider = Context.getPersonService().getPerson(9);
+        providerManagementService.getPatientsOfProvider(provider, null, new Date(), 0, 10, "birthdate");
+    }
+
+    @Test
+    public void getPatients_shouldGetPatientsById() throws Exception {
+        List<Integer> patientIds = new ArrayList<Integer>();
+        patientIds.add(2);
+        patientIds.add(202);
+        patientIds.add(502);  // not a patient
+
+        Map<Integer, Patient> patients = providerManagementService.getPatients(patientIds);
+        Assert.assertEquals(2, patients.size());
+        Assert.assertEquals(new Integer(2), patients.get(2).getId());
+        Assert.assertEquals(new Integer(202), patients.get(202).getId());
+    }
+
+    @Test
+    public void getPatients_shouldReturnEmptyMapIfNoIdsPassed() throws Exception {
+        Assert.assertEquals(0, providerManagementService.getPatients(new ArrayList<Integer>()).size());
+    }
+
+    @Test
+    public void getPatientPrograms_shouldGetPatientProgramsGroupedByPatient() throws Exception {
+        List<Integer> patientIds = new ArrayList<Integer>();
+        patientIds.add(2);
+        patientIds.add(202);
+
+        Map<Integer, List<PatientProgram>> patientPrograms = providerManagementService.getPatientPrograms(patientIds, true);
+
+        // should match what the program workflow service returns for the patient
+        List<PatientProgram> expected = Context.getProgramWorkflowService().getPatientPrograms(Context.getPatientService().getPatient(2), null, null, null, null, null, false);
+        Assert.assertEquals(expected.size(), patientPrograms.get(2).size());
+        Assert.assertTrue(patientPrograms.get(2).containsAll(expected));
+
+        // patient without programs should map to an empty list
+        Assert.assertEquals(0, patientPrograms.get(202).size());
+    }
+
+    @Test
+    public void getPatientPrograms_shouldExcludeCompletedProgramsIfIncludeCompletedIsFalse() throws Exception {
+        List<Integer> patientIds = new ArrayList<Integer>();
+        patientIds.add(2);
+
+        int expected = 0;
+        for (PatientProgram patientProgram : Context.getProgramWorkflowService().getPatientPrograms(Context.getPatientService().getPatient(2), null, null, null, null, null, false)) {
+            if (patientProgram.getDateCompleted() == null) {
+                expected++;
+            }
+        }
+
+        Assert.assertEquals(expected, providerManagementService.getPatientPrograms(patientIds, false).get(2).size());
+    }
+
+    @Test
+    public void getPatientsOfProviderCount_shouldNotCountVoidedPatients() throws Exception {
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        Patient patient = Context.getPatientService().getPatient(2);
+        providerManagementService.assignPatientToProvider(patient, provider, relationshipType, DATE);
+
+        patient = Context.getPatientService().getPatient(8);
+        providerManagementService.assignPatientToProvider(patient, provider, relationshipType, DATE);
+
+        // now void one of the patients (but not the relationship)
+        patient.setVoided(true);
+        Context.flushSession();
+
+        Assert.assertEquals(1, providerManagementService.getPatientsOfProviderCount(provider, relationshipType, new Date()));
+    }
+
+    @Test
+    public void getPatientsOfProvidersCount_shouldGetCountsOfPatientsForEachProviderGroupedByRelationshipType() throws Exception {
+
+        RelationshipType binome = Context.getPersonService().getRelationshipType(1001);
+        RelationshipType accompagnateur = Context.getPersonService().getRelationshipType(1002);
+
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(2), provider, binome, DATE);
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(8), provider, accompagnateur, DATE);
+
+        // this provider has existing relationships in the test dataset
+        Person otherProvider = Context.getPersonService().getPerson(9);
+
+        List<Person> providers = new ArrayList<Person>();
+        providers.add(provider);
+        providers.add(otherProvider);
+
+        List<RelationshipType> relationshipTypes = new ArrayList<RelationshipType>();
+        relationshipTypes.add(binome);
+        relationshipTypes.add(accompagnateur);
+
+        Map<Person, Map<RelationshipType, Integer>> counts = providerManagementService.getPatientsOfProvidersCount(providers, relationshipTypes, null);
+
+        Assert.assertEquals(new Integer(1), counts.get(provider).get(binome));
+        Assert.assertEquals(new Integer(1), counts.get(provider).get(accompagnateur));
+        Assert.assertEquals(new Integer(2), counts.get(otherProvider).get(binome));
+        Assert.assertEquals(new Integer(1), counts.get(otherProvider).get(accompagnateur));
+    }
+
+    @Test(expected = PersonIsNotProviderException.class)
+    public void getPatientsOfProvidersCount_shouldFailIfPersonIsNotAProvider() throws Exception {
+        List<Person> providers = new ArrayList<Person>();
+        providers.add(Context.getPersonService().getPerson(502));
+        providerManagementService.getPatientsOfProvidersCount(providers, null, new Date());
+    }
+
+    @Test(expected = InvalidRelationshipTypeException.class)
+    public void getPatientsOfProvidersCount_shouldFailIfRelationshipTypeIsNotAProviderRelationshipType() throws Exception {
+        List<Person> providers = new ArrayList<Person>();
+        providers.add(Context.getPersonService().getPerson(9));
+
+        List<RelationshipType> relationshipTypes = new ArrayList<RelationshipType>();
+        relationshipTypes.add(Context.getPersonService().getRelationshipType(1005));
+
+        providerManagementService.getPatientsOfProvidersCount(providers, relationshipTypes, new Date());
+    }
+
 
     @Test
     public void getProviderRelationships_shouldReturnAllRelationshipsForPatient() throws Exception {
@@ -1892,14 +2432,73 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
     }
    
     @Test
-    public void transferAllPatients_shouldTransferAllPatientsFromOneProviderToAnother() throws Exception {
-        // first, assign a couple patients to a provider
+    public void transferPatients_shouldTransferSpecifiedPatientsFromOneProviderToAnother() throws Exception {
         Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
         RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
 
-        // first patient
-        Patient patient = Context.getPatientService().getPatient(2);
-        providerManagementService.assignPatientToProvider(patient, oldProvider, relationshipType, DATE);
+        List<Patient> patients = new ArrayList<Patient>();
+        for (Integer patientId : Arrays.asList(2, 7, 8)) {
+            Patient patient = Context.getPatientService().getPatient(patientId);
+            providerManagementService.assignPatientToProvider(patient, oldProvider, relationshipType, DATE);
+            if (patientId != 7) {
+                patients.add(patient);
+            }
+        }
+
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        providerManagementService.transferPatients(patients, oldProvider, newProvider, relationshipType);
+
+        List<Patient> oldProviderPatients = providerManagementService.getPatientsOfProvider(oldProvider, relationshipType, FUTURE_DATE);
+        List<Patient> newProviderPatients = providerManagementService.getPatientsOfProvider(newProvider, relationshipType, FUTURE_DATE);
+        Assert.assertEquals(1, oldProviderPatients.size());
+        Assert.assertEquals(new Integer(7), oldProviderPatients.get(0).getId());
+        Assert.assertEquals(2, newProviderPatients.size());
+
+        // the old relationships should have been ended, not voided
+        List<Relationship> relationships = providerManagementService.getPatientRelationshipsForProvider(oldProvider, relationshipType);
+        Assert.assertEquals(3, relationships.size());
+        for (Relationship relationship : relationships) {
+            if (relationship.getPersonB().getId() != 7) {
+                Assert.assertNotNull(relationship.getEndDate());
+                Assert.assertNotNull(relationship.getChangedBy());
+            }
+        }
+    }
+
+    @Test
+    public void transferPatients_shouldNotTransferAnyPatientsIfAPatientIsNotAssignedToSourceProvider() throws Exception {
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        Patient patient = Context.getPatientService().getPatient(2);
+        providerManagementService.assignPatientToProvider(patient, oldProvider, relationshipType, DATE);
+
+        List<Patient> patients = new ArrayList<Patient>();
+        patients.add(patient);
+        patients.add(Context.getPatientService().getPatient(8));
+
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        try {
+            providerManagementService.transferPatients(patients, oldProvider, newProvider, relationshipType);
+            Assert.fail("Expected PatientNotAssignedToProviderException");
+        }
+        catch (PatientNotAssignedToProviderException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, providerManagementService.getPatientsOfProvider(oldProvider, relationshipType, FUTURE_DATE).size());
+        Assert.assertEquals(0, providerManagementService.getPatientsOfProvider(newProvider, relationshipType, FUTURE_DATE).size());
+    }
+
+    @Test
+    public void transferAllPatients_shouldTransferAllPatientsFromOneProviderToAnother() throws Exception {
+        // first, assign a couple patients to a provider
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        // first patient
+        Patient patient = Context.getPatientService().getPatient(2);
+        providerManagementService.assignPatientToProvider(patient, oldProvider, relationshipType, DATE);
 
         // for the second patient, use a different relationship type
         patient = Context.getPatientService().getPatient(8);
@@ -2024,6 +2623,34 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(new Integer(8), newProviderPatients.get(0).getId());
     }
 
+    @Test
+    public void transferAllPatients_shouldLeaveRelationshipsWithVoidedPatientsWithSourceProvider() throws Exception {
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(8), oldProvider, relationshipType, DATE);
+
+        // assignPatientToProvider won't assign a voided patient, so create the relationship directly
+        Patient voidedPatient = Context.getPatientService().getPatient(999);  // voided patient from the standard test dataset
+        Relationship voidedPatientRelationship = new Relationship();
+        voidedPatientRelationship.setPersonA(oldProvider);
+        voidedPatientRelationship.setPersonB(voidedPatient);
+        voidedPatientRelationship.setRelationshipType(relationshipType);
+        voidedPatientRelationship.setStartDate(PAST_DATE);
+        Context.getPersonService().saveRelationship(voidedPatientRelationship);
+
+        providerManagementService.transferAllPatients(oldProvider, newProvider, relationshipType);
+
+        // the non-voided patient is transferred, but the relationship with the voided patient is left as it was
+        List<Patient> newProviderPatients = providerManagementService.getPatientsOfProvider(newProvider, relationshipType, FUTURE_DATE);
+        Assert.assertEquals(1, newProviderPatients.size());
+        Assert.assertEquals(new Integer(8), newProviderPatients.get(0).getId());
+
+        Assert.assertNull(voidedPatientRelationship.getEndDate());
+        Assert.assertEquals(0, Context.getPersonService().getRelationships(newProvider, voidedPatient, relationshipType).size());
+    }
+
     @Test
     public void transferAllPatients_shouldNotFailIfSourceProviderHasNoPatients() throws Exception {
         Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
@@ -2256,6 +2883,72 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
        providerManagementService.assignProviderToSupervisor(provider, supervisor);
     }
 
+    @Test
+    public void assignProvidersToSupervisor_shouldAssignProvidersToSupervisor() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        Person provider1 = Context.getPersonService().getPerson(6);    // binome
+        Person provider2 = Context.getPersonService().getPerson(7);    // binome
+
+        Map<Person, AssignmentOutcome> outcomes = providerManagementService.assignProvidersToSupervisor(Arrays.asList(provider1, provider2), supervisor, PAST_DATE);
+        Assert.assertEquals(2, outcomes.size());
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(provider1));
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(provider2));
+
+        Context.flushSession();
+
+        List<Relationship> relationships = Context.getPersonService().getRelationships(supervisor, null, providerManagementService.getSupervisorRelationshipType(), DATE);
+        Assert.assertEquals(2, relationships.size());
+        for (Relationship relationship : relationships) {
+            Assert.assertEquals(PAST_DATE, relationship.getStartDate());
+        }
+
+        // the supervision graph should pick up the new relationships
+        Assert.assertEquals(2, providerManagementService.getAllSuperviseesForSupervisor(supervisor, DATE, null).size());
+    }
+
+    @Test
+    public void assignProvidersToSupervisor_shouldSkipProvidersAlreadyAssignedToSupervisor() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        Person provider1 = Context.getPersonService().getPerson(6);    // binome
+        Person provider2 = Context.getPersonService().getPerson(7);    // binome
+        providerManagementService.assignProviderToSupervisor(provider1, supervisor, PAST_DATE);
+
+        Map<Person, AssignmentOutcome> outcomes = providerManagementService.assignProvidersToSupervisor(Arrays.asList(provider1, provider2), supervisor, null);
+        Assert.assertEquals(AssignmentOutcome.ALREADY_ASSIGNED, outcomes.get(provider1));
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(provider2));
+
+        Context.flushSession();
+
+        Assert.assertEquals(1, Context.getPersonService().getRelationships(supervisor, provider1, providerManagementService.getSupervisorRelationshipType()).size());
+    }
+
+    @Test
+    public void assignProvidersToSupervisor_shouldSkipProvidersTheSupervisorCannotSupervise() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        Person provider = Context.getPersonService().getPerson(6);    // binome
+        Person otherProvider = Context.getPersonService().getPerson(9);    // role the binome supervisor can't supervise
+        Person notAProvider = Context.getPersonService().getPerson(502);
+
+        Map<Person, AssignmentOutcome> outcomes = providerManagementService.assignProvidersToSupervisor(Arrays.asList(provider, otherProvider, notAProvider, supervisor),
+                supervisor, null);
+        Assert.assertEquals(4, outcomes.size());
+        Assert.assertEquals(AssignmentOutcome.ASSIGNED, outcomes.get(provider));
+        Assert.assertEquals(AssignmentOutcome.INVALID_SUPERVISOR, outcomes.get(otherProvider));
+        Assert.assertEquals(AssignmentOutcome.NOT_A_PROVIDER, outcomes.get(notAProvider));
+        Assert.assertEquals(AssignmentOutcome.INVALID_SUPERVISOR, outcomes.get(supervisor));
+    }
+
+    @Test(expected = APIException.class)
+    public void assignProvidersToSupervisor_shouldFailIfSupervisorNull() throws Exception {
+        providerManagementService.assignProvidersToSupervisor(Collections.singletonList(Context.getPersonService().getPerson(6)), null, null);
+    }
+
+    @Test(expected = PersonIsNotProviderException.class)
+    public void assignProvidersToSupervisor_shouldFailIfSupervisorNotAProvider() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(502);  // not a provider
+        providerManagementService.assignProvidersToSupervisor(Collections.singletonList(Context.getPersonService().getPerson(6)), supervisor, null);
+    }
+
     @Test
     public void unassignProviderFromSupervisor_shouldUnassignProviderFromSupervisor() throws Exception {
         Person supervisor = Context.getPersonService().getPerson(8);  // binome supervisor
@@ -2392,6 +3085,24 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Person provider = Context.getPersonService().getPerson(502);
         providerManagementService.unassignAllSupervisorsFromProvider(provider);
     }
+
+    @Test
+    public void unassignAllSupervisorsFromProvider_shouldEndAllSupervisorRelationshipsAndClearSessionIfClearSessionIsTrue() throws Exception {
+        Person provider = Context.getPersonService().getPerson(6);    // binome
+        providerManagementService.assignProviderToSupervisor(provider, Context.getPersonService().getPerson(8));
+        providerManagementService.assignProviderToSupervisor(provider, Context.getPersonService().getPerson(501));
+
+        providerManagementService.unassignAllSupervisorsFromProvider(provider, true);
+
+        List<Relationship> relationships = Context.getPersonService().getRelationships(null, provider, providerManagementService.getSupervisorRelationshipType(), DATE);
+        Assert.assertEquals(2, relationships.size());
+        for (Relationship r : relationships) {
+            Assert.assertEquals(ProviderManagementUtils.clearTimeComponent(DATE), r.getEndDate());
+        }
+
+        relationships = Context.getPersonService().getRelationships(null, provider, providerManagementService.getSupervisorRelationshipType(), FUTURE_DATE);
+        Assert.assertEquals(0, relationships.size());
+    }
     
     @Test
     public void unassignAllProvidersFromSupervisor_shouldUnassignAllProvidersFromSupervisor() throws Exception {
@@ -2423,6 +3134,24 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(0, relationships.size());
     }
 
+    @Test
+    public void unassignAllProvidersFromSupervisor_shouldEndAllSuperviseeRelationshipsAndClearSessionIfClearSessionIsTrue() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(7), supervisor);
+
+        providerManagementService.unassignAllProvidersFromSupervisor(supervisor, true);
+
+        List<Relationship> relationships = Context.getPersonService().getRelationships(supervisor, null, providerManagementService.getSupervisorRelationshipType(), DATE);
+        Assert.assertEquals(2, relationships.size());
+        for (Relationship r : relationships) {
+            Assert.assertEquals(ProviderManagementUtils.clearTimeComponent(DATE), r.getEndDate());
+        }
+
+        relationships = Context.getPersonService().getRelationships(supervisor, null, providerManagementService.getSupervisorRelationshipType(), FUTURE_DATE);
+        Assert.assertEquals(0, relationships.size());
+    }
+
     @Test(expected = APIException.class)
     public void unassignAllProvidersFromSupervisor_shouldFailIfSupervisorNull() throws Exception {
         providerManagementService.unassignAllProvidersFromSupervisor(null);
@@ -2613,6 +3342,69 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(0, supervisees.size());
     }
 
+    @Test
+    public void getAllSuperviseesForSupervisor_shouldReturnSuperviseesAtAllLevels() throws Exception {
+        Person nurse = Context.getPersonService().getPerson(501);       // community health nurse
+        Person supervisor = Context.getPersonService().getPerson(8);    // binome supervisor
+        Person provider1 = Context.getPersonService().getPerson(6);     // binome
+        Person provider2 = Context.getPersonService().getPerson(7);     // binome
+
+        providerManagementService.assignProviderToSupervisor(supervisor, nurse);
+        providerManagementService.assignProviderToSupervisor(provider1, supervisor);
+        providerManagementService.assignProviderToSupervisor(provider2, supervisor);
+
+        List<Person> supervisees = providerManagementService.getAllSuperviseesForSupervisor(nurse, null, null);
+
+        // the direct supervisee should come first
+        Assert.assertEquals(3, supervisees.size());
+        Assert.assertEquals(new Integer(8), supervisees.get(0).getId());
+        Assert.assertTrue(supervisees.contains(provider1));
+        Assert.assertTrue(supervisees.contains(provider2));
+    }
+
+    @Test
+    public void getAllSuperviseesForSupervisor_shouldOnlyReturnSuperviseesDownToTheMaximumDepth() throws Exception {
+        Person nurse = Context.getPersonService().getPerson(501);       // community health nurse
+        Person supervisor = Context.getPersonService().getPerson(8);    // binome supervisor
+        Person provider = Context.getPersonService().getPerson(6);      // binome
+
+        providerManagementService.assignProviderToSupervisor(supervisor, nurse);
+        providerManagementService.assignProviderToSupervisor(provider, supervisor);
+
+        List<Person> supervisees = providerManagementService.getAllSuperviseesForSupervisor(nurse, null, 1);
+        Assert.assertEquals(1, supervisees.size());
+        Assert.assertEquals(new Integer(8), supervisees.get(0).getId());
+    }
+
+    @Test
+    public void getAllSupervisorsForProvider_shouldReturnSupervisorsAtAllLevels() throws Exception {
+        Person nurse = Context.getPersonService().getPerson(501);       // community health nurse
+        Person supervisor = Context.getPersonService().getPerson(8);    // binome supervisor
+        Person provider = Context.getPersonService().getPerson(6);      // binome
+
+        providerManagementService.assignProviderToSupervisor(supervisor, nurse);
+        providerManagementService.assignProviderToSupervisor(provider, supervisor);
+
+        List<Person> supervisors = providerManagementService.getAllSupervisorsForProvider(provider, null, null);
+        Assert.assertEquals(2, supervisors.size());
+        Assert.assertEquals(new Integer(8), supervisors.get(0).getId());
+        Assert.assertEquals(new Integer(501), supervisors.get(1).getId());
+    }
+
+    @Test
+    public void wouldCreateSupervisionCycle_shouldReturnTrueIfSupervisorIsSupervisedByProviderAtAnyLevel() throws Exception {
+        Person nurse = Context.getPersonService().getPerson(501);       // community health nurse
+        Person supervisor = Context.getPersonService().getPerson(8);    // binome supervisor
+        Person provider = Context.getPersonService().getPerson(6);      // binome
+
+        providerManagementService.assignProviderToSupervisor(supervisor, nurse);
+        providerManagementService.assignProviderToSupervisor(provider, supervisor);
+
+        Assert.assertTrue(providerManagementService.wouldCreateSupervisionCycle(nurse, provider));
+        Assert.assertTrue(providerManagementService.wouldCreateSupervisionCycle(supervisor, provider));
+        Assert.assertFalse(providerManagementService.wouldCreateSupervisionCycle(provider, nurse));
+    }
+
     @Test
     public void transferSupervisees_shouldTransferSupervisees() throws Exception {
 
@@ -3245,6 +4037,94 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
         Assert.assertEquals(new Integer(9), providers.get(2).getId());
     }
     
+    @Test
+    public void getProvidersQuery_shouldReturnTheRequestedPageOfProviders() throws Exception {
+        List<Person> firstPage = providerManagementService.getProvidersAsPersons("b", null, false, 0, 2);
+        Assert.assertEquals(2, firstPage.size());
+
+        List<Person> secondPage = providerManagementService.getProvidersAsPersons("b", null, false, 2, 2);
+        Assert.assertEquals(1, secondPage.size());
+        Assert.assertFalse(firstPage.contains(secondPage.get(0)));
+
+        // the pages should add up to the unpaged results, in the same order
+        List<Person> allPages = new ArrayList<Person>(firstPage);
+        allPages.addAll(secondPage);
+        Assert.assertEquals(providerManagementService.getProvidersAsPersons("b", null, false), allPages);
+    }
+
+    @Test
+    public void getCountOfProvidersQuery_shouldReturnTheNumberOfMatchingProviders() throws Exception {
+        Assert.assertEquals(new Integer(3), providerManagementService.getCountOfProviders("b", null, false));
+        Assert.assertEquals(new Integer(0), providerManagementService.getCountOfProviders(null, null, false));
+    }
+
+    @Test
+    public void getProvidersQuery_shouldExcludeSuperviseesOfSupervisorAndExcludedProviderBeforePaging() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(7), supervisor);
+
+        // of the five providers matching "2a", only persons 1 and 2 are left, so the first page of two is full
+        List<Person> providers = providerManagementService.getProvidersAsPersons("2a", null, false, supervisor, supervisor, 0, 2);
+        Assert.assertEquals(2, providers.size());
+        Assert.assertTrue(providers.contains(Context.getPersonService().getPerson(1)));
+        Assert.assertTrue(providers.contains(Context.getPersonService().getPerson(2)));
+
+        Assert.assertEquals(0, providerManagementService.getProvidersAsPersons("2a", null, false, supervisor, supervisor, 2, 2).size());
+    }
+
+    @Test
+    public void getCountOfProvidersQuery_shouldNotCountSuperviseesOfSupervisorAndExcludedProvider() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+
+        Assert.assertEquals(new Integer(4), providerManagementService.getCountOfProviders("2a", null, false, supervisor, null));
+        Assert.assertEquals(new Integer(3), providerManagementService.getCountOfProviders("2a", null, false, supervisor, supervisor));
+    }
+
+    @Test
+    public void streamProvidersAsPersons_shouldPassAllMatchingProvidersToTheHandler() throws Exception {
+        final List<Integer> personIds = new ArrayList<Integer>();
+        providerManagementService.streamProvidersAsPersons("b", null, false, new ProviderSearchResultHandler() {
+            @Override
+            public void handle(List<Person> persons) throws IOException {
+                for (Person person : persons) {
+                    personIds.add(person.getId());
+                }
+            }
+        });
+
+        Assert.assertEquals(3, personIds.size());
+        Assert.assertTrue(personIds.containsAll(Arrays.asList(2, 9, 501)));
+    }
+
+    @Test
+    public void streamProvidersAsPersons_shouldNotPassSuperviseesOfSupervisorAndExcludedProviderToTheHandler() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);
+        providerManagementService.assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+
+        final List<Integer> personIds = new ArrayList<Integer>();
+        providerManagementService.streamProvidersAsPersons("2a", null, false, supervisor, Context.getPersonService().getPerson(7),
+                new ProviderSearchResultHandler() {
+            @Override
+            public void handle(List<Person> persons) throws IOException {
+                for (Person person : persons) {
+                    personIds.add(person.getId());
+                }
+            }
+        });
+
+        Assert.assertEquals(3, personIds.size());
+        Assert.assertTrue(personIds.containsAll(Arrays.asList(1, 2, 8)));
+    }
+
+    @Test
+    public void getProviders_shouldReturnTheRequestedPageOfProviders() throws Exception {
+        List<Person> providers = providerManagementService.getProvidersAsPersons(null, "2a", null, null, null, false, 1, 3);
+        Assert.assertEquals(3, providers.size());
+        Assert.assertEquals(new Integer(5), providerManagementService.getCountOfProviders(null, "2a", null, null, null, false));
+    }
+
     @Test (expected = APIException.class)
     public void getPatientRelationshipForProvider_shouldThrowAPIExceptionIfNoProviderOrRelationshipSpecified() throws Exception {
     	List<Relationship> actual = providerManagementService.getPatientRelationshipsForProvider(null, null, new Date());
@@ -3300,5 +4180,239 @@ public class  ProviderManagementServiceTest extends BaseModuleContextSensitiveTe
 	   Assert.assertTrue(accompagnateurRelationships.size() == 1);
 	   Assert.assertTrue(binomeRelationships.size() == 2);
    }
-}
 
+    @Test
+    public void submitBulkJob_shouldProcessJobRightAwayIfItIsNoLargerThanChunkSize() throws Exception {
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        for (Integer patientId : Arrays.asList(2, 8)) {
+            providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(patientId), oldProvider, relationshipType, DATE);
+        }
+
+        BulkJob job = new BulkJob(BulkJobType.TRANSFER_PATIENTS);
+        job.setProvider(oldProvider);
+        job.setDestinationProvider(newProvider);
+        job.setRelationshipType(relationshipType);
+        job.setItemIdList(Arrays.asList(2, 8));
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+        Assert.assertEquals(new Integer(2), job.getProcessedItems());
+        Assert.assertEquals(new Integer(0), job.getFailedItems());
+        Assert.assertNotNull(providerManagementService.getBulkJobByUuid(job.getUuid()));
+        Assert.assertEquals(0, providerManagementService.getPatientsOfProvider(oldProvider, relationshipType, FUTURE_DATE).size());
+        Assert.assertEquals(2, providerManagementService.getPatientsOfProvider(newProvider, relationshipType, FUTURE_DATE).size());
+    }
+
+    @Test
+    public void processBulkJobChunk_shouldProcessNextChunkOfItemsAndRecordFailures() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.bulkJobChunkSize", "1"));
+
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        for (Integer patientId : Arrays.asList(2, 7)) {
+            providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(patientId), oldProvider, relationshipType, DATE);
+        }
+
+        // patient 8 is not assigned to the old provider
+        BulkJob job = new BulkJob(BulkJobType.TRANSFER_PATIENTS);
+        job.setProvider(oldProvider);
+        job.setDestinationProvider(newProvider);
+        job.setRelationshipType(relationshipType);
+        job.setItemIdList(Arrays.asList(2, 8, 7));
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(BulkJobStatus.PENDING, job.getStatus());
+        Assert.assertTrue(providerManagementService.getUnfinishedBulkJobs().contains(job));
+
+        Assert.assertTrue(providerManagementService.processBulkJobChunk(job));
+        Assert.assertEquals(BulkJobStatus.RUNNING, job.getStatus());
+        Assert.assertEquals(new Integer(1), job.getProcessedItems());
+        Assert.assertEquals(33, job.getPercentComplete());
+
+        Assert.assertTrue(providerManagementService.processBulkJobChunk(job));
+        Assert.assertEquals(new Integer(1), job.getFailedItems());
+
+        Assert.assertFalse(providerManagementService.processBulkJobChunk(job));
+        Assert.assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+        Assert.assertEquals(100, job.getPercentComplete());
+        Assert.assertEquals(1, job.getFailureList().size());
+        Assert.assertTrue(job.getFailureList().get(0).startsWith("8: "));
+        Assert.assertFalse(providerManagementService.getUnfinishedBulkJobs().contains(job));
+
+        Assert.assertEquals(0, providerManagementService.getPatientsOfProvider(oldProvider, relationshipType, FUTURE_DATE).size());
+        Assert.assertEquals(2, providerManagementService.getPatientsOfProvider(newProvider, relationshipType, FUTURE_DATE).size());
+    }
+
+    @Test
+    public void getUnfinishedBulkJobs_shouldGetUnfinishedBulkJobsInvolvingProvider() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.bulkJobChunkSize", "1"));
+
+        Person oldProvider = Context.getProviderService().getProvider(1004).getPerson();
+        Person newProvider = Context.getProviderService().getProvider(1005).getPerson();
+        Person otherProvider = Context.getProviderService().getProvider(1006).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        for (Integer patientId : Arrays.asList(2, 7)) {
+            providerManagementService.assignPatientToProvider(Context.getPatientService().getPatient(patientId), oldProvider, relationshipType, DATE);
+        }
+
+        BulkJob job = new BulkJob(BulkJobType.TRANSFER_PATIENTS);
+        job.setProvider(oldProvider);
+        job.setDestinationProvider(newProvider);
+        job.setRelationshipType(relationshipType);
+        job.setItemIdList(Arrays.asList(2, 7));
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(Collections.singletonList(job), providerManagementService.getUnfinishedBulkJobs(oldProvider));
+        Assert.assertEquals(Collections.singletonList(job), providerManagementService.getUnfinishedBulkJobs(newProvider));
+        Assert.assertEquals(0, providerManagementService.getUnfinishedBulkJobs(otherProvider).size());
+
+        while (providerManagementService.processBulkJobChunk(job)) {
+        }
+        Assert.assertEquals(0, providerManagementService.getUnfinishedBulkJobs(oldProvider).size());
+    }
+
+    @Test(expected = APIException.class)
+    public void getUnfinishedBulkJobs_shouldFailIfProviderNull() throws Exception {
+        providerManagementService.getUnfinishedBulkJobs(null);
+    }
+
+    @Test
+    public void processBulkJobChunk_shouldRetireProviderAfterLastChunkOfRetireProviderJob() throws Exception {
+        Person provider = Context.getProviderService().getProvider(1004).getPerson();
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        Patient patient = Context.getPatientService().getPatient(2);
+        providerManagementService.assignPatientToProvider(patient, provider, relationshipType, DATE);
+
+        BulkJob job = new BulkJob(BulkJobType.RETIRE_PROVIDER);
+        job.setProvider(provider);
+        job.setReason("test");
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+        Assert.assertTrue(Context.getProviderService().getProvider(1004).isRetired());
+
+        List<Relationship> relationships = providerManagementService.getProviderRelationshipsForPatient(patient, provider, relationshipType);
+        Assert.assertEquals(1, relationships.size());
+        Assert.assertNotNull(relationships.get(0).getEndDate());
+    }
+
+    @Test
+    public void processBulkJobChunk_shouldNotAssignSuperviseesThatAreNotAssignedToSourceSupervisor() throws Exception {
+        Person provider1 = Context.getPersonService().getPerson(6);    // binome
+        Person provider2 = Context.getPersonService().getPerson(7);    // binome
+        Person oldSupervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        Person newSupervisor = Context.getPersonService().getPerson(501); // a community health nurse
+
+        // only the first provider is assigned to the old supervisor
+        providerManagementService.assignProviderToSupervisor(provider1, oldSupervisor);
+
+        BulkJob job = new BulkJob(BulkJobType.TRANSFER_SUPERVISEES);
+        job.setProvider(oldSupervisor);
+        job.setDestinationProvider(newSupervisor);
+        job.setItemIdList(Arrays.asList(6, 7));
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+        Assert.assertEquals(new Integer(1), job.getFailedItems());
+        Assert.assertTrue(job.getFailureList().get(0).startsWith("7: "));
+
+        Assert.assertEquals(0, providerManagementService.getSuperviseesForSupervisor(oldSupervisor, new Date()).size());
+        List<Person> supervisees = providerManagementService.getSuperviseesForSupervisor(newSupervisor, new Date());
+        Assert.assertEquals(1, supervisees.size());
+        Assert.assertEquals(provider1, supervisees.get(0));
+        Assert.assertEquals(0, providerManagementService.getSupervisorsForProvider(provider2, new Date()).size());
+    }
+
+    @Test
+    public void processBulkJobChunk_shouldRecordChangesAsMadeByUserThatSubmittedJob() throws Exception {
+        Person provider = Context.getPersonService().getPerson(6);    // binome
+        Person oldSupervisor = Context.getPersonService().getPerson(8);  // binome supervisor
+        Person newSupervisor = Context.getPersonService().getPerson(501); // a community health nurse
+        providerManagementService.assignProviderToSupervisor(provider, oldSupervisor);
+
+        // as if the job had been submitted by another user, and is now being processed in the background
+        User submitter = Context.getUserService().getUser(501);
+
+        BulkJob job = new BulkJob(BulkJobType.TRANSFER_SUPERVISEES);
+        job.setProvider(oldSupervisor);
+        job.setDestinationProvider(newSupervisor);
+        job.setItemIdList(Arrays.asList(6));
+        job.setCreator(submitter);
+        job = providerManagementService.submitBulkJob(job);
+
+        Assert.assertEquals(BulkJobStatus.COMPLETED, job.getStatus());
+
+        List<Relationship> newRelationships = providerManagementService.getSuperviseeRelationshipsForSupervisor(newSupervisor, new Date());
+        Assert.assertEquals(1, newRelationships.size());
+        Assert.assertEquals(submitter, newRelationships.get(0).getCreator());
+
+        List<Relationship> oldRelationships = providerManagementService.getSupervisorRelationshipsForProvider(provider, null);
+        boolean found = false;
+        for (Relationship relationship : oldRelationships) {
+            if (relationship.getPersonA().equals(oldSupervisor)) {
+                Assert.assertEquals(submitter, relationship.getChangedBy());
+                found = true;
+            }
+        }
+        Assert.assertTrue(found);
+    }
+
+    @Test
+    public void rebuildProviderNameTokens_shouldIndexProviderNamesSoThatNameSearchUsesThem() throws Exception {
+        Assert.assertTrue(providerManagementService.rebuildProviderNameTokens(false) > 0);
+
+        List<Person> providers = providerManagementService.getProvidersAsPersons("jimmy", null, null, false);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(9), providers.get(0).getId());
+
+        providers = providerManagementService.getProvidersAsPersons("anet oloo", null, null, false);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(8), providers.get(0).getId());
+    }
+
+    @Test
+    public void rebuildProviderNameTokens_shouldDoNothingIfOnlyIfNotBuiltAndTokensHaveBeenBuilt() throws Exception {
+        providerManagementService.rebuildProviderNameTokens(false);
+        Assert.assertEquals(0, providerManagementService.rebuildProviderNameTokens(true));
+    }
+
+    @Test
+    public void rebuildProviderNameTokens_shouldNotUseTokensForNameSearchUntilTheyHaveBeenBuilt() throws Exception {
+        // a provider saved before the index has been built only indexes its own names
+        providerManagementService.updateProviderNameTokens(Context.getPersonService().getPerson(9));
+
+        List<Person> providers = providerManagementService.getProvidersAsPersons("anet oloo", null, null, false);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(8), providers.get(0).getId());
+    }
+
+    @Test
+    public void updateProviderNameTokens_shouldIndexNamesOfProvider() throws Exception {
+        providerManagementService.rebuildProviderNameTokens(false);
+
+        Person person = Context.getPersonService().getPerson(9);
+        person.addName(new PersonName("Zebulon", null, "Quixote"));
+        Context.getPersonService().savePerson(person);
+        providerManagementService.updateProviderNameTokens(person);
+
+        List<Person> providers = providerManagementService.getProvidersAsPersons("zebul quix", null, null, false);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(9), providers.get(0).getId());
+    }
+
+    @Test
+    public void updateProviderNameTokens_shouldDoNothingIfPersonIsNotAProvider() throws Exception {
+        providerManagementService.rebuildProviderNameTokens(false);
+
+        providerManagementService.updateProviderNameTokens(Context.getPersonService().getPerson(502));
+
+        List<List<Object>> rows = Context.getAdministrationService().executeSQL("select count(*) from providermanagement_provider_name_token where person_id = 502", true);
+        Assert.assertEquals(0, ((Number) rows.get(0).get(0)).intValue());
+    }
+}
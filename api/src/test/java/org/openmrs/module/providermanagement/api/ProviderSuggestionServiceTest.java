@@ -19,6 +19,7 @@ import org.hibernate.exception.GenericJDBCException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.RelationshipType;
@@ -33,6 +34,7 @@ import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestion;
 import org.openmrs.module.providermanagement.suggestion.SupervisionSuggestionType;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -330,6 +332,67 @@ public class ProviderSuggestionServiceTest extends BaseModuleContextSensitiveTes
         providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
     }
 
+    @Test
+    public void suggestProvidersForPatient_shouldIgnoreProvidersAlreadyAssignedToPatientWhenUsingStoredResults() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.suggestionCacheSize", "100"));
+
+        Patient patient = Context.getPatientService().getPatient(2);
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        List<Person> providers = providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+        Assert.assertEquals(3, providers.size());
+
+        // the rules aren't re-evaluated, but the assigned provider should still be removed
+        Person provider = Context.getPersonService().getPerson(7);
+        providerManagementService.assignPatientToProvider(patient, provider, relationshipType);
+
+        providers = providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+        Assert.assertEquals(2, providers.size());
+    }
+
+    @Test(expected = SuggestionEvaluationException.class)
+    public void suggestProvidersForPatient_shouldReevaluateStoredResultsIfRulesChange() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.suggestionCacheSize", "100"));
+
+        Patient patient = Context.getPatientService().getPatient(2);
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        List<Person> providers = providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+        Assert.assertEquals(3, providers.size());
+
+        // change the rule so that evaluating it fails
+        ProviderSuggestion suggestion = providerSuggestionService.getProviderSuggestionsByRelationshipType(relationshipType).get(0);
+        suggestion.setCriteria("invalid groovy code");
+        providerSuggestionService.saveProviderSuggestion(suggestion);
+
+        providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+    }
+
+    @Test
+    public void suggestProvidersForPatient_shouldSeeUncommittedChangesIfConfiguredToEvaluateRulesConcurrently() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.suggestionEvaluationThreads", "2"));
+
+        // none of the test data has been committed, so this would come up empty if the rules were evaluated in other sessions
+        Patient patient = Context.getPatientService().getPatient(2);
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+
+        List<Person> providers = providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+
+        Assert.assertEquals(3, providers.size());
+        for (Person provider : providers) {
+            Assert.assertTrue(Arrays.asList(2, 7, 8).contains(provider.getId()));
+        }
+    }
+
+    @Test
+    public void refreshStoredProviderSuggestions_shouldRefreshNothingIfSuggestionResultsAreNotStored() throws Exception {
+        Patient patient = Context.getPatientService().getPatient(2);
+        RelationshipType relationshipType = Context.getPersonService().getRelationshipType(1001);
+        providerSuggestionService.suggestProvidersForPatient(patient, relationshipType);
+
+        Assert.assertEquals(0, providerSuggestionService.refreshStoredProviderSuggestions(100));
+    }
+
     @Test
     public void getSupervisionSuggestion_shouldGetSupervisionSuggestionById() {
         SupervisionSuggestion suggestion = providerSuggestionService.getSupervisionSuggestion(1);
@@ -522,6 +585,18 @@ public class ProviderSuggestionServiceTest extends BaseModuleContextSensitiveTes
         Assert.assertEquals(new Integer(8), providers.get(0).getId());
     }
 
+    @Test
+    public void suggestSupervisorsForProvider_shouldSeeUncommittedChangesIfConfiguredToEvaluateRulesConcurrently() throws Exception {
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("providermanagement.suggestionEvaluationThreads", "2"));
+
+        Person provider = Context.getPersonService().getPerson(2);
+
+        List<Person> providers = providerSuggestionService.suggestSupervisorsForProvider(provider);
+
+        Assert.assertEquals(1, providers.size());
+        Assert.assertEquals(new Integer(8), providers.get(0).getId());
+    }
+
     @Test
     public void suggestSupervisorsForProvider_shouldIgnoreProvidersAlreadyAssignedToSupervise() throws Exception {
         // this does the same thing as the above test, but assigned person 8 to supervise person 2 first
@@ -24,8 +24,16 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class SuggestionTest extends BaseModuleContextSensitiveTest {
 
@@ -176,4 +184,174 @@ public class SuggestionTest extends BaseModuleContextSensitiveTest {
         // list should now be empty
         Assert.assertEquals(0, persons.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldEvaluateUpdatedCriteriaForSameSuggestion() {
+
+        Suggestion suggestion = new SupervisionSuggestion();
+        suggestion.setEvaluator("org.openmrs.module.providermanagement.suggestion.GroovySuggestionEvaluator");
+
+        suggestion.setCriteria("Set<org.openmrs.Person> persons = new HashSet<org.openmrs.Person>();" +
+                "persons.add(personService.getPerson(2));" +
+                "return persons;");
+        Collection<Person> persons = suggestion.instantiateEvaluator().evaluate(suggestion, null);
+        Assert.assertEquals(1, persons.size());
+        Assert.assertEquals(new Integer(2), persons.iterator().next().getId());
+
+        // the compiled version of the old criteria must not be reused
+        suggestion.setCriteria("Set<org.openmrs.Person> persons = new HashSet<org.openmrs.Person>();" +
+                "persons.add(personService.getPerson(6));" +
+                "return persons;");
+        persons = suggestion.instantiateEvaluator().evaluate(suggestion, null);
+        Assert.assertEquals(1, persons.size());
+        Assert.assertEquals(new Integer(6), persons.iterator().next().getId());
+    }
+
+    @Test
+    public void shouldNotShareBindingsBetweenEvaluationsOfSameSuggestion() {
+
+        Suggestion suggestion = new SupervisionSuggestion();
+        suggestion.setEvaluator("org.openmrs.module.providermanagement.suggestion.GroovySuggestionEvaluator");
+        suggestion.setCriteria("Set<org.openmrs.Person> persons = new HashSet<org.openmrs.Person>();" +
+                "persons.add(provider);" +
+                "return persons;");
+
+        Collection<Person> persons = suggestion.instantiateEvaluator().evaluate(suggestion, Context.getPersonService().getPerson(6));
+        Assert.assertEquals(new Integer(6), persons.iterator().next().getId());
+
+        persons = suggestion.instantiateEvaluator().evaluate(suggestion, Context.getPersonService().getPerson(7));
+        Assert.assertEquals(new Integer(7), persons.iterator().next().getId());
+    }
+
+    @Test
+    public void shouldSkipSuggestionsThatExceedTimeLimit() throws Exception {
+
+        // the slow rule is held until the test is done with it, so only the time limit can get it skipped
+        final CountDownLatch release = new CountDownLatch(1);
+
+        SuggestionEvaluationExecutor.Evaluation<Suggestion> evaluation = new SuggestionEvaluationExecutor.Evaluation<Suggestion>() {
+            @Override
+            public Set<Person> evaluate(Suggestion suggestion) throws Exception {
+                Set<Person> persons = new HashSet<Person>();
+                if ("slow".equals(suggestion.getName())) {
+                    release.await();
+                    persons.add(new Person(6));
+                }
+                else {
+                    persons.add(new Person(2));
+                }
+                return persons;
+            }
+        };
+
+        try {
+            Set<Integer> personIds = SuggestionEvaluationExecutor.evaluate(Arrays.asList(newSuggestion("slow"), newSuggestion("fast")),
+                    evaluation, 2, 200);
+
+            Assert.assertEquals(1, personIds.size());
+            Assert.assertTrue(personIds.contains(2));
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldMeasureTimeLimitFromWhenEachSuggestionStarts() throws Exception {
+
+        // the first two rules take up both threads until the batch deadline (had there been one) has passed, so the
+        // third one only starts after that; each rule still completes well within its own time limit
+        final long timeout = 2000;
+        final long submittedAt = System.currentTimeMillis();
+        final CountDownLatch notReleased = new CountDownLatch(1);
+
+        SuggestionEvaluationExecutor.Evaluation<Suggestion> evaluation = new SuggestionEvaluationExecutor.Evaluation<Suggestion>() {
+            @Override
+            public Set<Person> evaluate(Suggestion suggestion) throws Exception {
+                if (!"7".equals(suggestion.getName())) {
+                    notReleased.await(timeout * 3 / 5, TimeUnit.MILLISECONDS);
+                }
+                else if (System.currentTimeMillis() - submittedAt < timeout) {
+                    notReleased.await(submittedAt + timeout - System.currentTimeMillis() + 100, TimeUnit.MILLISECONDS);
+                }
+                Set<Person> persons = new HashSet<Person>();
+                persons.add(new Person(Integer.valueOf(suggestion.getName())));
+                return persons;
+            }
+        };
+
+        Set<Integer> personIds = SuggestionEvaluationExecutor.evaluate(
+                Arrays.asList(newSuggestion("2"), newSuggestion("6"), newSuggestion("7")), evaluation, 2, timeout);
+
+        Assert.assertTrue(System.currentTimeMillis() - submittedAt > timeout);
+        Assert.assertEquals(3, personIds.size());
+        Assert.assertTrue(personIds.containsAll(Arrays.asList(2, 6, 7)));
+    }
+
+    @Test
+    public void shouldUnionResultsOfSuggestionsEvaluatedConcurrently() throws Exception {
+
+        // every rule waits for all of them to have started, so this only completes if they really run concurrently
+        final CountDownLatch started = new CountDownLatch(2);
+
+        SuggestionEvaluationExecutor.Evaluation<Suggestion> evaluation = new SuggestionEvaluationExecutor.Evaluation<Suggestion>() {
+            @Override
+            public Set<Person> evaluate(Suggestion suggestion) throws Exception {
+                started.countDown();
+                Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+                Set<Person> persons = new HashSet<Person>();
+                persons.add(new Person(Integer.valueOf(suggestion.getName())));
+                return persons;
+            }
+        };
+
+        Set<Integer> personIds = SuggestionEvaluationExecutor.evaluate(Arrays.asList(newSuggestion("2"), newSuggestion("6")),
+                evaluation, 2, 0);
+
+        Assert.assertEquals(2, personIds.size());
+        Assert.assertTrue(personIds.containsAll(Arrays.asList(2, 6)));
+    }
+
+    @Test
+    public void shouldEvaluateSuggestionsInTheCallersThreadOnceTheQueueIsFull() throws Exception {
+
+        // hold both threads, and fill the queue, so that any further rule has to be evaluated by the caller
+        final Thread caller = Thread.currentThread();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Set<String> evaluatedByCaller = Collections.synchronizedSet(new HashSet<String>());
+
+        SuggestionEvaluationExecutor.Evaluation<Suggestion> evaluation = new SuggestionEvaluationExecutor.Evaluation<Suggestion>() {
+            @Override
+            public Set<Person> evaluate(Suggestion suggestion) throws Exception {
+                if (Thread.currentThread() == caller) {
+                    evaluatedByCaller.add(suggestion.getName());
+                    // the rules ahead of this one can go now
+                    release.countDown();
+                }
+                else {
+                    Assert.assertTrue(release.await(10, TimeUnit.SECONDS));
+                }
+                Set<Person> persons = new HashSet<Person>();
+                persons.add(new Person(Integer.valueOf(suggestion.getName())));
+                return persons;
+            }
+        };
+
+        // two running, eight queued, and one more
+        List<Suggestion> suggestions = new ArrayList<Suggestion>();
+        for (int i = 1; i <= 11; i++) {
+            suggestions.add(newSuggestion(String.valueOf(i)));
+        }
+
+        Set<Integer> personIds = SuggestionEvaluationExecutor.evaluate(suggestions, evaluation, 2, 0);
+
+        Assert.assertEquals(11, personIds.size());
+        Assert.assertFalse(evaluatedByCaller.isEmpty());
+    }
+
+    private Suggestion newSuggestion(String name) {
+        Suggestion suggestion = new ProviderSuggestion();
+        suggestion.setName(name);
+        return suggestion;
+    }
+}
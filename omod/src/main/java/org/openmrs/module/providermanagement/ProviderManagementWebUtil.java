@@ -23,6 +23,7 @@ import org.openmrs.ui.framework.UiUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class ProviderManagementWebUtil {
 
@@ -73,7 +74,18 @@ public class ProviderManagementWebUtil {
     public static Provider getProvider(Person person)
             throws PersonIsNotProviderException {
 
-        List<Provider> providers = Context.getService(ProviderManagementService.class).getProvidersByPerson(person, true);
+        return getSingleProvider(Context.getService(ProviderManagementService.class).getProvidersByPerson(person, true));
+    }
+
+    /**
+     * Returns the single provider in the passed list of providers associated with a person
+     * Throws an exception if the list is empty or contains more than one provider
+     *
+     * @param providers
+     * @return
+     */
+    private static Provider getSingleProvider(List<Provider> providers)
+            throws PersonIsNotProviderException {
 
         // check to make sure this person is really a provider
         if (providers == null || providers.size() == 0) {
@@ -94,6 +106,9 @@ public class ProviderManagementWebUtil {
      * The key thing this method handles that the SimpleObject.fromCollection does
      * not is the ability reference fields of the provider associated with the person
      *
+     * The result fields are compiled once (see {@link ResultFieldProjection}) rather than parsed and resolved
+     * by reflection for each person
+     *
      * @param persons
      * @param resultFields
      * @param ui
@@ -103,40 +118,70 @@ public class ProviderManagementWebUtil {
     public static List<SimpleObject> convertPersonListToSimpleObjectList(List<Person> persons, UiUtils ui, String [] resultFields)
             throws PersonIsNotProviderException {
 
-        // separate the person object fields from the provider object fields
-        List<String> personResultFields = new ArrayList<String>();
-        List<String> providerResultFields = new ArrayList<String>();
+        ResultFieldProjection projection = ResultFieldProjection.forFields(resultFields);
 
-        for (String resultField : resultFields) {
-            if (resultField.startsWith("provider.")) {
-                StringBuilder builder = new StringBuilder(resultField);
-                builder.delete(0,9); // delete the "provider" prefix
-                providerResultFields.add(builder.toString());
-            }
-            else {
-                personResultFields.add(resultField);
-            }
+        // if any provider fields have been requested, fetch the providers for the whole list of persons at once,
+        // rather than one query per person
+        Map<Person, List<Provider>> providersByPerson = null;
+        if (projection.hasProviderFields()) {
+            providersByPerson = Context.getService(ProviderManagementService.class).getProvidersByPersons(persons, true);
         }
 
-        // always want to return the id of the result objects
-        personResultFields.add("id");
+        return convertPersonListToSimpleObjectList(persons, providersByPerson, ui, projection);
+    }
+
+    /**
+     * Converts a list of persons to a SimpleObject with the fields of the specified projection, as
+     * {@link #convertPersonListToSimpleObjectList(List, UiUtils, String[])} does, for callers that have already fetched
+     * the providers associated with the persons
+     *
+     * @param persons
+     * @param providersByPerson the providers of each person; only used (and required) if the projection has provider fields
+     * @param ui
+     * @param projection
+     * @return
+     * @throws PersonIsNotProviderException
+     */
+    public static List<SimpleObject> convertPersonListToSimpleObjectList(List<Person> persons, Map<Person, List<Provider>> providersByPerson,
+                                                                         UiUtils ui, ResultFieldProjection projection)
+            throws PersonIsNotProviderException {
 
-        List<SimpleObject> simpleProviders;
+        List<SimpleObject> simpleProviders = new ArrayList<SimpleObject>();
 
         // if any provider fields have been requested, we must manually add them to the simpleObject we are returning
-        if (providerResultFields.size() > 0) {
-            simpleProviders = new ArrayList<SimpleObject>();
+        if (projection.hasProviderFields()) {
             for (Person person : persons) {
-                SimpleObject simpleProvider = SimpleObject.fromObject(person, ui,  personResultFields.toArray(new String[0]));
-                simpleProvider.put("provider", SimpleObject.fromObject(getProvider(person), ui, providerResultFields.toArray(new String[0])));
+                SimpleObject simpleProvider = ResultFieldProjection.toSimpleObject(person, projection.getPersonFields(), ui);
+                simpleProvider.put("provider", ResultFieldProjection.toSimpleObject(getSingleProvider(providersByPerson.get(person)), projection.getProviderFields(), ui));
                 simpleProviders.add(simpleProvider);
             }
         }
         // otherwise, just create the simpleProviders from the persons object
         else {
-            simpleProviders = SimpleObject.fromCollection(persons, ui, personResultFields.toArray(new String[0]));
+            for (Person person : persons) {
+                simpleProviders.add(ResultFieldProjection.toSimpleObject(person, projection.getPersonFields(), ui));
+            }
         }
 
         return simpleProviders;
     }
+
+    /**
+     * Wraps a page of search results, along with the position of the page and the total number of results, for
+     * returning to a paging search widget
+     *
+     * @param results the results on the page
+     * @param start the index of the first result on the page
+     * @param length the requested page size
+     * @param totalCount the total number of results
+     * @return
+     */
+    public static SimpleObject toPagedResult(List<SimpleObject> results, Integer start, Integer length, Integer totalCount) {
+        SimpleObject page = new SimpleObject();
+        page.put("results", results);
+        page.put("start", start);
+        page.put("length", length);
+        page.put("totalCount", totalCount);
+        return page;
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.Person;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.module.providermanagement.exception.PersonIsNotProviderException;
+import org.openmrs.module.providermanagement.search.ProviderSearchResultHandler;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the results of a streamed provider search straight to an output stream as a JSON array, one row per person
+ * converted by {@link ProviderManagementWebUtil#convertPersonListToSimpleObjectList} (so in exactly the same shape
+ * and format as the providerSearch fragment's getProviders action), flushing after each batch; the providers fetched
+ * for "provider." result fields are evicted from the session once written
+ *
+ * Call {@link #start()} before the search, and {@link #finish()} after it
+ */
+public class ProviderSearchStreamWriter implements ProviderSearchResultHandler {
+
+    private final JsonGenerator generator;
+
+    private final ResultFieldProjection projection;
+
+    private final UiUtils ui;
+
+    public ProviderSearchStreamWriter(OutputStream out, String[] resultFields, UiUtils ui) throws IOException {
+        generator = new ObjectMapper().getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+        projection = ResultFieldProjection.forFields(resultFields);
+        this.ui = ui;
+    }
+
+    public void start() throws IOException {
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void handle(List<Person> persons) throws IOException {
+
+        // fetch the providers for the whole batch at once, rather than one query per person
+        Map<Person, List<Provider>> providersByPerson = null;
+        if (projection.hasProviderFields()) {
+            providersByPerson = Context.getService(ProviderManagementService.class).getProvidersByPersons(persons, true);
+        }
+
+        List<SimpleObject> rows;
+        try {
+            rows = ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, providersByPerson, ui, projection);
+        }
+        catch (PersonIsNotProviderException e) {
+            // can't happen, as the search only returns providers
+            throw new APIException("Provider search returned a person that is not a provider", e);
+        }
+
+        for (SimpleObject row : rows) {
+            generator.writeObject(row);
+        }
+
+        generator.flush();
+
+        if (providersByPerson != null) {
+            for (List<Provider> providers : providersByPerson.values()) {
+                for (Provider provider : providers) {
+                    Context.evictFromSession(provider);
+                }
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        generator.writeEndArray();
+        generator.flush();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of result fields (such as those configured by the providermanagement.*DisplayFields global properties),
+ * parsed once into accessor chains that are reused for every row of every request
+ *
+ * Fields starting with "provider." are read from the provider associated with a person, all others from the person
+ * itself (or whatever object is being converted); nested fields like "personName.givenName" become nested objects,
+ * as with {@link SimpleObject#fromObject}. The getter for each step of a chain is looked up once per class.
+ *
+ * Compiled projections are cached by their list of fields, so a change to one of the display fields global properties
+ * simply leads to a different entry rather than a stale one
+ */
+public class ResultFieldProjection {
+
+    // result fields come from request parameters, so don't let the cache grow unbounded
+    private static final int MAX_CACHED_PROJECTIONS = 100;
+
+    private static final Map<List<String>, ResultFieldProjection> cache = Collections.synchronizedMap(
+            new LinkedHashMap<List<String>, ResultFieldProjection>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, ResultFieldProjection> eldest) {
+                    return size() > MAX_CACHED_PROJECTIONS;
+                }
+            });
+
+    private final List<FieldAccessor> personFields = new ArrayList<FieldAccessor>();
+
+    private final List<FieldAccessor> providerFields = new ArrayList<FieldAccessor>();
+
+    /**
+     * Gets the compiled projection for the specified result fields
+     *
+     * @param resultFields
+     * @return
+     */
+    public static ResultFieldProjection forFields(String[] resultFields) {
+        List<String> key = new ArrayList<String>(Arrays.asList(resultFields));
+        ResultFieldProjection projection = cache.get(key);
+        if (projection == null) {
+            projection = new ResultFieldProjection(resultFields);
+            cache.put(key, projection);
+        }
+        return projection;
+    }
+
+    private ResultFieldProjection(String[] resultFields) {
+
+        // separate the person object fields from the provider object fields
+        for (String resultField : resultFields) {
+            if (resultField.startsWith("provider.")) {
+                providerFields.add(new FieldAccessor(resultField.substring(9)));
+            }
+            else {
+                personFields.add(new FieldAccessor(resultField));
+            }
+        }
+
+        // always want to return the id of the result objects
+        personFields.add(new FieldAccessor("id"));
+    }
+
+    /**
+     * @return the accessors for the fields of the person
+     */
+    public List<FieldAccessor> getPersonFields() {
+        return personFields;
+    }
+
+    /**
+     * @return the accessors for the fields of the provider associated with the person
+     */
+    public List<FieldAccessor> getProviderFields() {
+        return providerFields;
+    }
+
+    public boolean hasProviderFields() {
+        return providerFields.size() > 0;
+    }
+
+    /**
+     * Converts the specified object to a SimpleObject containing the specified fields, formatted via ui
+     *
+     * @param object
+     * @param fields
+     * @param ui
+     * @return
+     */
+    public static SimpleObject toSimpleObject(Object object, List<FieldAccessor> fields, UiUtils ui) {
+
+        if (object == null) {
+            return null;
+        }
+
+        SimpleObject simpleObject = new SimpleObject();
+
+        for (FieldAccessor field : fields) {
+
+            // nested fields are added as nested objects
+            Map<String, Object> parent = simpleObject;
+            String[] path = field.getPath();
+            for (int i = 0; i < path.length - 1; i++) {
+                Object child = parent.get(path[i]);
+                if (!(child instanceof Map)) {
+                    child = new SimpleObject();
+                    parent.put(path[i], child);
+                }
+                parent = (Map<String, Object>) child;
+            }
+
+            Object value = field.getValue(object);
+            parent.put(path[path.length - 1], value != null ? ui.format(value) : null);
+        }
+
+        return simpleObject;
+    }
+
+    /**
+     * A property path (e.g. "personName.givenName") compiled into a chain of getters
+     */
+    public static class FieldAccessor {
+
+        private final String[] path;
+
+        // the getter for each step of the path, by the class of the object it is called on
+        private final List<Map<Class<?>, Method>> getters = new ArrayList<Map<Class<?>, Method>>();
+
+        private FieldAccessor(String field) {
+            path = field.split("\\.");
+            for (int i = 0; i < path.length; i++) {
+                getters.add(new ConcurrentHashMap<Class<?>, Method>());
+            }
+        }
+
+        public String[] getPath() {
+            return path;
+        }
+
+        /**
+         * @param object
+         * @return the value of the field for the specified object, or null if any step of the path is null
+         */
+        public Object getValue(Object object) {
+            Object value = object;
+            for (int i = 0; i < path.length && value != null; i++) {
+                try {
+                    value = getGetter(i, value.getClass()).invoke(value);
+                }
+                catch (Exception e) {
+                    throw new IllegalArgumentException("Unable to get " + path[i] + " from " + value, e);
+                }
+            }
+            return value;
+        }
+
+        private Method getGetter(int step, Class<?> clazz) throws Exception {
+            Method getter = getters.get(step).get(clazz);
+            if (getter == null) {
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                    if (descriptor.getName().equals(path[step]) && descriptor.getReadMethod() != null) {
+                        getter = descriptor.getReadMethod();
+                        break;
+                    }
+                }
+                if (getter == null) {
+                    throw new NoSuchMethodException("No property " + path[step] + " on " + clazz.getName());
+                }
+                getter.setAccessible(true);
+                getters.get(step).put(clazz, getter);
+            }
+            return getter;
+        }
+    }
+}
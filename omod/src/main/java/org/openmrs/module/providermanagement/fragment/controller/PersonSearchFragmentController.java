@@ -26,6 +26,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class PersonSearchFragmentController {
 
@@ -47,10 +48,11 @@ public class PersonSearchFragmentController {
         List<Person> people = Context.getPersonService().getPeople(searchValue, false);
 
         // exclude anyone who is already a provider
+        Set<Integer> providerPersonIds = Context.getService(ProviderManagementService.class).getProviderPersonIds(people);
         Iterator<Person> i = people.iterator();
         while (i.hasNext()) {
             Person p = i.next();
-            if (Context.getService(ProviderManagementService.class).isProvider(p)) {
+            if (providerPersonIds.contains(p.getId())) {
                 i.remove();
             }
         }
@@ -20,11 +20,11 @@ import org.openmrs.PersonAttribute;
 import org.openmrs.PersonAttributeType;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.module.providermanagement.ProviderManagementWebUtil;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.exception.PersonIsNotProviderException;
-import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiUtils;
 import org.openmrs.ui.framework.annotation.BindParams;
 import org.openmrs.ui.framework.annotation.MethodParam;
@@ -49,6 +49,10 @@ public class ProviderAdvancedSearchFragmentController {
 
         private String [] resultFields;
 
+        private Integer start;
+
+        private Integer length;
+
         public String getName() {
             return name;
         }
@@ -96,12 +100,28 @@ public class ProviderAdvancedSearchFragmentController {
         public void setResultFields(String[] resultFields) {
             this.resultFields = resultFields;
         }
+
+        public Integer getStart() {
+            return start;
+        }
+
+        public void setStart(Integer start) {
+            this.start = start;
+        }
+
+        public Integer getLength() {
+            return length;
+        }
+
+        public void setLength(Integer length) {
+            this.length = length;
+        }
     }
 
 
     public AdvancedSearchCommand initializeCommand() {
 
-        PersonAttributeType personAttributeType =  ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE();
+        PersonAttributeType personAttributeType =  ProviderManagementGlobalProperties.getSnapshot().getAdvancedSearchPersonAttributeType();
 
         AdvancedSearchCommand command = new AdvancedSearchCommand();
         command.getAttribute().setAttributeType(personAttributeType);
@@ -109,7 +129,12 @@ public class ProviderAdvancedSearchFragmentController {
         return command;
     }
 
-    public List<SimpleObject> getProviders(@MethodParam("initializeCommand") @BindParams() AdvancedSearchCommand command,
+    /**
+     * Searches for providers matching the command; if a length is specified, only that many results (starting at the
+     * specified start index) are fetched, and the page is returned along with the total number of matches, as
+     * "results" and "totalCount"; otherwise a list of all the matches is returned
+     */
+    public Object getProviders(@MethodParam("initializeCommand") @BindParams() AdvancedSearchCommand command,
                                              UiUtils ui)
                     throws PersonIsNotProviderException {
 
@@ -122,15 +147,23 @@ public class ProviderAdvancedSearchFragmentController {
         if (command.getProviderRole() != null) {
             roles.add(command.getProviderRole());
         }
-        else if (ProviderManagementGlobalProperties.GLOBAL_PROPERTY_RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES() != null
-                && ProviderManagementGlobalProperties.GLOBAL_PROPERTY_RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES()) {
+        else if (ProviderManagementGlobalProperties.getSnapshot().isRestrictSearchToProvidersWithProviderRoles()) {
             roles.addAll(Context.getService(ProviderManagementService.class).getAllProviderRoles(true));
         }
 
-        List<Person> persons = Context.getService(ProviderManagementService.class).getProvidersAsPersons(command.getName(), command.getIdentifier(), command.getPersonAddress(), command.getAttribute(), roles, false);
+        if (command.getLength() == null) {
+            List<Person> persons = Context.getService(ProviderManagementService.class).getProvidersAsPersons(command.getName(), command.getIdentifier(), command.getPersonAddress(), command.getAttribute(), roles, false);
 
-         // convert to a simple object list
-        return ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, command.getResultFields());
+            // convert to a simple object list
+            return ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, command.getResultFields());
+        }
+
+        // otherwise, just fetch the requested page
+        int start = command.getStart() != null ? Math.max(command.getStart(), 0) : 0;
+        List<Person> persons = Context.getService(ProviderManagementService.class).getProvidersAsPersons(command.getName(), command.getIdentifier(), command.getPersonAddress(), command.getAttribute(), roles, false, start, command.getLength());
+
+        return ProviderManagementWebUtil.toPagedResult(ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, command.getResultFields()),
+                start, command.getLength(), Context.getService(ProviderManagementService.class).getCountOfProviders(command.getName(), command.getIdentifier(), command.getPersonAddress(), command.getAttribute(), roles, false));
     }
 
     public void controller(FragmentModel model) {
@@ -138,12 +171,14 @@ public class ProviderAdvancedSearchFragmentController {
         // add the possible provider roles
         model.addAttribute("providerRoles", Context.getService(ProviderManagementService.class).getAllProviderRoles(false));
 
+        ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
+
         // add the person attribute type we want to include on this page
-        PersonAttributeType personAttributeType =  ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADVANCED_SEARCH_PERSON_ATTRIBUTE_TYPE();
+        PersonAttributeType personAttributeType =  globalProperties.getAdvancedSearchPersonAttributeType();
         model.addAttribute("advancedSearchPersonAttributeType", personAttributeType);
 
         // add the address widget to use
-        model.addAttribute("addressWidget", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADDRESS_WIDGET());
+        model.addAttribute("addressWidget", globalProperties.getAddressWidget());
 
         // add the empty command object
         model.addAttribute("command", initializeCommand());
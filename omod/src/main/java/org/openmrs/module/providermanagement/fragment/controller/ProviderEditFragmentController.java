@@ -28,11 +28,16 @@ import org.openmrs.RelationshipType;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.Provider;
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.module.providermanagement.ProviderManagementUtils;
 import org.openmrs.module.providermanagement.ProviderManagementWebUtil;
 import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.exception.PersonIsNotProviderException;
+import org.openmrs.module.providermanagement.job.BulkJob;
+import org.openmrs.module.providermanagement.job.BulkJobStatus;
+import org.openmrs.module.providermanagement.job.BulkJobType;
+import org.openmrs.module.providermanagement.relationship.AssignmentOutcome;
 import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.annotation.BindParams;
 import org.openmrs.ui.framework.annotation.FragmentParam;
@@ -115,14 +120,16 @@ public class ProviderEditFragmentController {
         model.addAttribute("person", person);
         model.addAttribute("provider", provider);
 
+        ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
+
         // also add the person attribute types we want to display
-        model.addAttribute("personAttributeTypes", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES());
+        model.addAttribute("personAttributeTypes", globalProperties.getPersonAttributeTypes());
 
         // add the possible provider roles
         model.addAttribute("providerRoles", Context.getService(ProviderManagementService.class).getAllProviderRoles(false));
 
         // add the address widget to use
-        model.addAttribute("addressWidget", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_ADDRESS_WIDGET());
+        model.addAttribute("addressWidget", globalProperties.getAddressWidget());
 
     }
 
@@ -144,7 +151,7 @@ public class ProviderEditFragmentController {
             person.getAddresses().add(new PersonAddress());
         }
 
-        for (PersonAttributeType attributeType : ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES()) {
+        for (PersonAttributeType attributeType : ProviderManagementGlobalProperties.getSnapshot().getPersonAttributeTypes()) {
             if (person.getAttribute(attributeType) == null) {
                 PersonAttribute attr = new PersonAttribute(attributeType, null);
                 attr.setPerson(person);
@@ -240,7 +247,7 @@ public class ProviderEditFragmentController {
         }
 
         // need to manually remove any person attributes that have no value
-        for (PersonAttributeType attributeType : ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES()) {
+        for (PersonAttributeType attributeType : ProviderManagementGlobalProperties.getSnapshot().getPersonAttributeTypes()) {
             if (person.getAttribute(attributeType) != null  && StringUtils.isBlank(person.getAttribute(attributeType).getValue())) {
                 person.removeAttribute(person.getAttribute(attributeType));
             }
@@ -258,25 +265,18 @@ public class ProviderEditFragmentController {
                                                @RequestParam(value = "reason", required = false) String reason) {
 
         try {
-            Provider p = ProviderManagementWebUtil.getProvider(provider);   // get actual provider object associated with this provider
+            ProviderManagementWebUtil.getProvider(provider);   // make sure there is a single provider associated with this person
 
-            // unassign all patients, supervisors, and supervisees from the provider
-            Context.getService(ProviderManagementService.class).unassignAllPatientsFromProvider(provider);
-            Context.getService(ProviderManagementService.class).unassignAllProvidersFromSupervisor(provider);
-            Context.getService(ProviderManagementService.class).unassignAllSupervisorsFromProvider(provider);
+            // unassign all patients, supervisors, and supervisees from the provider, and then retire the provider
+            BulkJob job = new BulkJob(BulkJobType.RETIRE_PROVIDER);
+            job.setProvider(provider);
+            job.setReason(StringUtils.isNotBlank(reason) ? reason : "retired via Provider Management UI");
 
-            // now retire the provider
-            String retireReason = "retired via Provider Management UI";
-            if (StringUtils.isNotBlank(reason)) {
-                retireReason = reason;
-            }
-            Context.getProviderService().retireProvider(p, retireReason);
+            return bulkJobResult(Context.getService(ProviderManagementService.class).submitBulkJob(job));
         }
         catch (Exception e) {
             return new FailureResult(e.getLocalizedMessage());
         }
-
-        return new SuccessResult();
     }
 
     public FragmentActionResult unretireProvider(@RequestParam(value = "provider", required = true) Person provider) {
@@ -393,10 +393,31 @@ public class ProviderEditFragmentController {
 
         // if validation passed, try to assign the supervisees to the supervisor
         try {
-            for (Person supervisee : supervisees) {
-                Context.getService(ProviderManagementService.class).assignProviderToSupervisor(supervisee, supervisor);
+            Map<Person, AssignmentOutcome> outcomes = Context.getService(ProviderManagementService.class).assignProvidersToSupervisor(supervisees, supervisor, new Date());
+
+            // the valid supervisees have been assigned (and committed), so this is a success even if some were skipped;
+            // any that were are listed as a warning
+            List<String> errors = new ArrayList<String>();
+            for (Map.Entry<Person, AssignmentOutcome> outcome : outcomes.entrySet()) {
+                Person supervisee = outcome.getKey();
+                switch (outcome.getValue()) {
+                    case NOT_A_PROVIDER:
+                        errors.add(supervisee.getPersonName() + " is not a provider");
+                        break;
+                    case INVALID_SUPERVISOR:
+                        errors.add(supervisor.getPersonName() + " is not a valid supervisor for " + supervisee.getPersonName());
+                        break;
+                    case ALREADY_ASSIGNED:
+                        errors.add(supervisee.getPersonName() + " is already assigned to " + supervisor.getPersonName());
+                        break;
+                }
             }
-            return new SuccessResult();
+
+            if (errors.isEmpty()) {
+                return new SuccessResult();
+            }
+            return new SuccessResult(Context.getMessageSourceService().getMessage("providermanagement.superviseesSkipped",
+                    new Object[] { StringUtils.join(errors, "; ") }, Context.getLocale()));
         }
         catch (Exception e) {
             return new FailureResult(e.getLocalizedMessage());
@@ -510,14 +531,13 @@ public class ProviderEditFragmentController {
 
         // attempt to transfer all the supervisees
         try {
-            List<Person> supervisees = new ArrayList<Person>();
+            BulkJob job = new BulkJob(BulkJobType.TRANSFER_SUPERVISEES);
+            job.setProvider(oldSupervisor);
+            job.setDestinationProvider(newSupervisor);
+            job.setDate(date);
+            job.setItemIdList(getPersonBIds(superviseeRelationships));
 
-            for (Relationship relationship : superviseeRelationships) {
-                supervisees.add(relationship.getPersonB());
-            }
-
-            Context.getService(ProviderManagementService.class).transferSupervisees(supervisees, oldSupervisor, newSupervisor);
-            return new SuccessResult();
+            return bulkJobResult(Context.getService(ProviderManagementService.class).submitBulkJob(job));
         }
         catch (Exception e) {
             return new FailureResult(e.getLocalizedMessage());
@@ -627,11 +647,13 @@ public class ProviderEditFragmentController {
 
         // try to unassign all the patients from the provider
         try {
-            for (Relationship patientRelationship : patientRelationships) {
-                Patient patient = Context.getPatientService().getPatient(patientRelationship.getPersonB().getId());
-                Context.getService(ProviderManagementService.class).unassignPatientFromProvider(patient, provider, relationshipType, date);
-            }
-            return new SuccessResult();
+            BulkJob job = new BulkJob(BulkJobType.REMOVE_PATIENTS);
+            job.setProvider(provider);
+            job.setRelationshipType(relationshipType);
+            job.setDate(date);
+            job.setItemIdList(getPersonBIds(patientRelationships));
+
+            return bulkJobResult(Context.getService(ProviderManagementService.class).submitBulkJob(job));
         }
         catch (Exception e) {
             return new FailureResult(e.getLocalizedMessage());
@@ -686,14 +708,14 @@ public class ProviderEditFragmentController {
 
         // attempt to transfer all the patients
         try {
-            List<Patient> patients = new ArrayList<Patient>();
+            BulkJob job = new BulkJob(BulkJobType.TRANSFER_PATIENTS);
+            job.setProvider(oldProvider);
+            job.setDestinationProvider(newProvider);
+            job.setRelationshipType(relationshipType);
+            job.setDate(date);
+            job.setItemIdList(getPersonBIds(patientRelationships));
 
-            for (Relationship patientRelationship : patientRelationships) {
-                patients.add(Context.getPatientService().getPatient(patientRelationship.getPersonB().getId()));
-            }
-
-            Context.getService(ProviderManagementService.class).transferPatients(patients,oldProvider, newProvider, relationshipType, date);
-            return new SuccessResult();
+            return bulkJobResult(Context.getService(ProviderManagementService.class).submitBulkJob(job));
         }
         catch (Exception e) {
             return new FailureResult(e.getLocalizedMessage());
@@ -723,5 +745,52 @@ public class ProviderEditFragmentController {
             return new FailureResult(e.getLocalizedMessage());
         }
     }
+
+    public FragmentActionResult getBulkJobStatus(@RequestParam(value = "job", required = true) String jobUuid) {
+
+        BulkJob job = Context.getService(ProviderManagementService.class).getBulkJobByUuid(jobUuid);
+
+        if (job == null) {
+            return new FailureResult("Job " + jobUuid + " not found");
+        }
+
+        SimpleObject status = new SimpleObject();
+        status.put("uuid", job.getUuid());
+        status.put("jobType", job.getJobType().toString());
+        status.put("status", job.getStatus().toString());
+        status.put("totalItems", job.getTotalItems());
+        status.put("processedItems", job.getProcessedItems());
+        status.put("failedItems", job.getFailedItems());
+        status.put("percentComplete", job.getPercentComplete());
+        status.put("failures", job.getFailureList());
+        return new ObjectResult(status);
+    }
+
+    /**
+     * Utility methods
+     */
+
+    private List<Integer> getPersonBIds(List<Relationship> relationships) {
+        List<Integer> personIds = new ArrayList<Integer>();
+        for (Relationship relationship : relationships) {
+            personIds.add(relationship.getPersonB().getId());
+        }
+        return personIds;
+    }
+
+    private FragmentActionResult bulkJobResult(BulkJob job) {
+
+        if (!job.isFinished()) {
+            // the job is too large to process within the request; the status of the job can be polled via getBulkJobStatus
+            return new SuccessResult(Context.getMessageSourceService().getMessage("providermanagement.bulkJobSubmitted",
+                    new Object[] { job.getUuid() }, Context.getLocale()));
+        }
+        else if (job.getStatus() == BulkJobStatus.FAILED || job.getFailedItems() > 0) {
+            return new FailureResult(StringUtils.join(job.getFailureList(), "; "));
+        }
+        else {
+            return new SuccessResult();
+        }
+    }
 }
 
@@ -29,7 +29,6 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -52,31 +51,63 @@ public class ProviderSearchFragmentController {
         // default is to not include retired providers
         includeRetired = includeRetired != null ? includeRetired : false;
 
-        List<ProviderRole> providerRoleList = null;
-        if (providerRoles != null && providerRoles.length > 0) {
-            providerRoleList = Arrays.asList(providerRoles);
-        }
-        else if (ProviderManagementGlobalProperties.GLOBAL_PROPERTY_RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES() != null
-                && ProviderManagementGlobalProperties.GLOBAL_PROPERTY_RESTRICT_SEARCH_TO_PROVIDERS_WITH_PROVIDER_ROLES()) {
-            providerRoleList = Context.getService(ProviderManagementService.class).getAllProviderRoles(true);
-        }
-
         // now fetch the results
-        List<Person> persons = Context.getService(ProviderManagementService.class).getProvidersAsPersons(searchValue, providerRoleList, includeRetired);
+        List<Person> persons = Context.getService(ProviderManagementService.class).getProvidersAsPersons(searchValue,
+                getProviderRoleList(providerRoles), includeRetired, excludeSuperviseesOf, excludeProvider, null, null);
 
-        // exclude supervisees of a provider if needed
-        if (excludeSuperviseesOf != null) {
-            List<Person> supervisees = Context.getService(ProviderManagementService.class).getSuperviseesForSupervisor(excludeSuperviseesOf, new Date());
-            persons.removeAll(supervisees);
-        }
+        // convert to a simple object list
+        return ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, resultFields);
+    }
 
-        // exclude any specified provider
-        if (excludeProvider != null) {
-            persons.remove(excludeProvider);
+    /**
+     * Same search as getProviders, but only fetches the requested page of the results; the page is returned as
+     * "results", along with the total number of matches as "totalCount" (the excluded providers are left out of both)
+     */
+    public SimpleObject getProvidersPage(@RequestParam(value="searchValue", required=true) String searchValue,
+                                         @RequestParam(value="includeRetired", required=false) Boolean includeRetired,
+                                         @RequestParam(value="excludeSuperviseesOf", required=false) Person excludeSuperviseesOf,
+                                         @RequestParam(value="excludeProvider", required=false) Person excludeProvider,
+                                         @RequestParam(value="providerRoles[]", required=false) ProviderRole[] providerRoles,
+                                         @RequestParam(value="resultFields[]", required=false) String[] resultFields,
+                                         @RequestParam(value="start", required=false) Integer start,
+                                         @RequestParam(value="length", required=false) Integer length,
+                                         UiUtils ui)
+            throws PersonIsNotProviderException {
+
+        if (resultFields == null || resultFields.length == 0) {
+            resultFields = new String[] {"personName"};
         }
 
-        // convert to a simple object list
-        return ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, resultFields);
+        // default is to not include retired providers
+        includeRetired = includeRetired != null ? includeRetired : false;
+
+        start = start != null ? Math.max(start, 0) : 0;
+
+        List<ProviderRole> providerRoleList = getProviderRoleList(providerRoles);
+        ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
+
+        // the exclusions are part of the query, so the page and the count always agree
+        List<Person> persons = providerManagementService.getProvidersAsPersons(searchValue, providerRoleList, includeRetired,
+                excludeSuperviseesOf, excludeProvider, start, length);
+        Integer totalCount = providerManagementService.getCountOfProviders(searchValue, providerRoleList, includeRetired,
+                excludeSuperviseesOf, excludeProvider);
+
+        return ProviderManagementWebUtil.toPagedResult(ProviderManagementWebUtil.convertPersonListToSimpleObjectList(persons, ui, resultFields),
+                start, length, totalCount);
+    }
+
+    /**
+     * Returns the roles to restrict a provider search to: the specified ones if any, otherwise all the provider roles
+     * if searches are restricted to providers with a role, otherwise null
+     */
+    private List<ProviderRole> getProviderRoleList(ProviderRole[] providerRoles) {
+        if (providerRoles != null && providerRoles.length > 0) {
+            return Arrays.asList(providerRoles);
+        }
+        else if (ProviderManagementGlobalProperties.getSnapshot().isRestrictSearchToProvidersWithProviderRoles()) {
+            return Context.getService(ProviderManagementService.class).getAllProviderRoles(true);
+        }
+        return null;
     }
 
     /**
@@ -46,7 +46,7 @@ public class ProviderViewFragmentController {
         model.addAttribute("provider", provider);
 
         // also add the person attribute types we want to display
-        model.addAttribute("personAttributeTypes", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_ATTRIBUTE_TYPES());
+        model.addAttribute("personAttributeTypes", ProviderManagementGlobalProperties.getSnapshot().getPersonAttributeTypes());
     }
 
     public SimpleObject getCodedConcepts(@RequestParam("conceptId") Concept concept) {
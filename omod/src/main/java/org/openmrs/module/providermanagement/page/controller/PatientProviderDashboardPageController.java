@@ -19,6 +19,7 @@ import org.openmrs.Person;
 import org.openmrs.RelationshipType;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.module.providermanagement.ProviderManagementWebUtil;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.api.ProviderSuggestionService;
@@ -46,13 +47,16 @@ public class PatientProviderDashboardPageController {
         Map<RelationshipType, List<SimpleObject>> providerMap = new HashMap<RelationshipType, List<SimpleObject>>();
         Map<RelationshipType,List<SimpleObject>> providerSuggestionMap = new HashMap<RelationshipType, List<SimpleObject>>();
 
+        ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
+        String[] providerListDisplayFields = globalProperties.getProviderListDisplayFields().values().toArray(new String[0]);
+
         // first find the provider (or list of providers) for each relationship type
         for (RelationshipType relationshipType : pmService.getAllProviderRoleRelationshipTypes(false)) {
             List<Person> p = pmService.getProvidersAsPersonsForPatient(patient, relationshipType, new Date());
 
             // if we have existing providers, add them to the results list
             if (p != null && p.size() > 0) {
-                providerMap.put(relationshipType, ProviderManagementWebUtil.convertPersonListToSimpleObjectList(p, ui, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS().values().toArray(new String[0])));
+                providerMap.put(relationshipType, ProviderManagementWebUtil.convertPersonListToSimpleObjectList(p, ui, providerListDisplayFields));
             }
             // otherwise, get suggestions for this relationship type
             else {
@@ -63,7 +67,7 @@ public class PatientProviderDashboardPageController {
                 providerSuggestionMap.put(relationshipType,
                         ProviderManagementWebUtil.convertPersonListToSimpleObjectList(
                                 Context.getService(ProviderSuggestionService.class).suggestProvidersForPatient(patient, relationshipType),
-                                ui, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS().values().toArray(new String[0])));
+                                ui, providerListDisplayFields));
             }
         }
 
@@ -73,8 +77,8 @@ public class PatientProviderDashboardPageController {
         pageModel.addAttribute("providerSuggestionMap", providerSuggestionMap);
 
         // add the global properties that specifies the fields to display in the provider and patient field and search results
-        pageModel.addAttribute("providerSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS());
-        pageModel.addAttribute("providerListDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS());
+        pageModel.addAttribute("providerSearchDisplayFields", globalProperties.getProviderSearchDisplayFields());
+        pageModel.addAttribute("providerListDisplayFields", globalProperties.getProviderListDisplayFields());
     }
 
 
@@ -23,6 +23,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.Provider;
 import org.openmrs.module.providermanagement.ProviderManagementConstants;
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.module.providermanagement.ProviderManagementUtils;
 import org.openmrs.module.providermanagement.ProviderManagementWebUtil;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
@@ -38,10 +39,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ProviderDashboardPageController {
 
@@ -70,32 +74,49 @@ public class ProviderDashboardPageController {
 
 
             if (provider.getProviderRole() != null && provider.getProviderRole().getRelationshipTypes() != null) {
-                for (RelationshipType relationshipType : provider.getProviderRole().getRelationshipTypes() ) {
 
+                // first collect the relationships of each type, so that we can fetch all the patients and programs in bulk
+                Map<RelationshipType, List<Relationship>> relationshipMap = new HashMap<RelationshipType, List<Relationship>>();
+                Set<Integer> patientIds = new HashSet<Integer>();
+
+                for (RelationshipType relationshipType : provider.getProviderRole().getRelationshipTypes() ) {
                     if (!relationshipType.isRetired()) {
-                        patientMap.put(relationshipType, new HashMap<String,List<PatientAndRelationshipAndPatientPrograms>>());
-                        patientMap.get(relationshipType).put("currentPatients", new ArrayList<PatientAndRelationshipAndPatientPrograms>());
-                        patientMap.get(relationshipType).put("historicalPatients", new ArrayList<PatientAndRelationshipAndPatientPrograms>());
+                        List<Relationship> relationships = pmService.getPatientRelationshipsForProvider(person, relationshipType, null);
+                        relationshipMap.put(relationshipType, relationships);
+                        for (Relationship relationship : relationships) {
+                            patientIds.add(relationship.getPersonB().getId());
+                        }
+                    }
+                }
+
+                Map<Integer, Patient> patients = pmService.getPatients(patientIds);
 
+                // gets all programs for the patients (including completed programs)
+                Map<Integer, List<PatientProgram>> programs = pmService.getPatientPrograms(patientIds, true);
 
-                        for (Relationship relationship : pmService.getPatientRelationshipsForProvider(person, relationshipType, null)) {
+                for (Map.Entry<RelationshipType, List<Relationship>> entry : relationshipMap.entrySet()) {
 
-                            Patient patient = Context.getPatientService().getPatient(relationship.getPersonB().getId());
+                    RelationshipType relationshipType = entry.getKey();
+                    patientMap.put(relationshipType, new HashMap<String,List<PatientAndRelationshipAndPatientPrograms>>());
+                    patientMap.get(relationshipType).put("currentPatients", new ArrayList<PatientAndRelationshipAndPatientPrograms>());
+                    patientMap.get(relationshipType).put("historicalPatients", new ArrayList<PatientAndRelationshipAndPatientPrograms>());
 
-                            // gets all programs for the patient
-                            List<PatientProgram> programs = Context.getProgramWorkflowService().getPatientPrograms(patient, null, null, null, null, null, false);
+                    for (Relationship relationship : entry.getValue()) {
 
-                            if (ProviderManagementUtils.isRelationshipActive(relationship)) {
-                                patientMap.get(relationshipType).get("currentPatients").add(new PatientAndRelationshipAndPatientPrograms(patient, relationship, programs));
-                            }
-                            else {
-                                patientMap.get(relationshipType).get("historicalPatients").add(new PatientAndRelationshipAndPatientPrograms(patient, relationship, programs));
-                            }
+                        Patient patient = patients.get(relationship.getPersonB().getId());
 
+                        // skip voided patients
+                        if (patient == null) {
+                            continue;
                         }
 
+                        if (ProviderManagementUtils.isRelationshipActive(relationship)) {
+                            patientMap.get(relationshipType).get("currentPatients").add(new PatientAndRelationshipAndPatientPrograms(patient, relationship, programs.get(patient.getId())));
+                        }
+                        else {
+                            patientMap.get(relationshipType).get("historicalPatients").add(new PatientAndRelationshipAndPatientPrograms(patient, relationship, programs.get(patient.getId())));
+                        }
                     }
-
                 }
             }
             pageModel.addAttribute("patientMap", patientMap);
@@ -104,11 +125,17 @@ public class ProviderDashboardPageController {
         else {
             Map<RelationshipType, Integer> patientCount = new HashMap<RelationshipType,Integer>();
             if (provider.getProviderRole() != null && provider.getProviderRole().getRelationshipTypes() != null) {
+                List<RelationshipType> relationshipTypes = new ArrayList<RelationshipType>();
                 for (RelationshipType relationshipType : provider.getProviderRole().getRelationshipTypes() ) {
                     if (!relationshipType.isRetired()) {
-                        patientCount.put(relationshipType, pmService.getPatientsOfProviderCount(person, relationshipType, new Date()));
+                        relationshipTypes.add(relationshipType);
                     }
                 }
+
+                // fetch the counts for all the relationship types with a single aggregate query
+                if (relationshipTypes.size() > 0) {
+                    patientCount.putAll(pmService.getPatientsOfProvidersCount(Collections.singletonList(person), relationshipTypes, new Date()).get(person));
+                }
             }
             pageModel.addAttribute("patientCount", patientCount);
         }
@@ -155,13 +182,18 @@ public class ProviderDashboardPageController {
             pageModel.addAttribute("historicalSupervisees", historicalSupervisees);
         }
 
+        // add any transfers, unassignments or retirements involving the provider that are still being processed in the
+        // background, so that the page can show their progress
+        pageModel.addAttribute("bulkJobs", pmService.getUnfinishedBulkJobs(person));
+
+        ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
 
         if (Context.hasPrivilege(ProviderManagementConstants.PROVIDER_MANAGEMENT_DASHBOARD_EDIT_PROVIDERS_PRIVILEGE)) {
             // calculate suggested supervisees
             if (provider.getProviderRole() != null && provider.getProviderRole().isSupervisorRole()) {
                 List<Person> suggestedSupervisees = Context.getService(ProviderSuggestionService.class).suggestSuperviseesForProvider(person);
                 if (suggestedSupervisees != null && suggestedSupervisees.size() > 0) {
-                    pageModel.addAttribute("suggestedSupervisees", ProviderManagementWebUtil.convertPersonListToSimpleObjectList(suggestedSupervisees, ui, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS().values().toArray(new String[0])));
+                    pageModel.addAttribute("suggestedSupervisees", ProviderManagementWebUtil.convertPersonListToSimpleObjectList(suggestedSupervisees, ui, globalProperties.getProviderSearchDisplayFields().values().toArray(new String[0])));
                 }
                 else {
                     pageModel.addAttribute("suggestedSupervisees", null);
@@ -176,11 +208,11 @@ public class ProviderDashboardPageController {
         pageModel.addAttribute("paneId", paneId);
 
         // add the global properties that specifies the fields to display in the provider and patient field and search results
-        pageModel.addAttribute("providerSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS());
-        pageModel.addAttribute("providerListDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_LIST_DISPLAY_FIELDS());
-        pageModel.addAttribute("patientSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PATIENT_SEARCH_DISPLAY_FIELDS());
-        pageModel.addAttribute("patientListDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PATIENT_LIST_DISPLAY_FIELDS());
-        pageModel.addAttribute("historicalPatientListDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_HISTORICAL_PATIENT_LIST_DISPLAY_FIELDS());
-        pageModel.addAttribute("historicalProviderListDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_HISTORICAL_PROVIDER_LIST_DISPLAY_FIELDS());
+        pageModel.addAttribute("providerSearchDisplayFields", globalProperties.getProviderSearchDisplayFields());
+        pageModel.addAttribute("providerListDisplayFields", globalProperties.getProviderListDisplayFields());
+        pageModel.addAttribute("patientSearchDisplayFields", globalProperties.getPatientSearchDisplayFields());
+        pageModel.addAttribute("patientListDisplayFields", globalProperties.getPatientListDisplayFields());
+        pageModel.addAttribute("historicalPatientListDisplayFields", globalProperties.getHistoricalPatientListDisplayFields());
+        pageModel.addAttribute("historicalProviderListDisplayFields", globalProperties.getHistoricalProviderListDisplayFields());
     }
 }
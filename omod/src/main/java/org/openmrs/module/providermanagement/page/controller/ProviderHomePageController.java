@@ -15,13 +15,16 @@
 package org.openmrs.module.providermanagement.page.controller;
 
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.ui.framework.page.PageModel;
 
 public class ProviderHomePageController {
 
     public void controller(PageModel pageModel) {
+        ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
+
         // add the global properties that specify the fields to display in the provider and person search results
-        pageModel.addAttribute("providerSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS());
-        pageModel.addAttribute("personSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_SEARCH_DISPLAY_FIELDS());
+        pageModel.addAttribute("providerSearchDisplayFields", globalProperties.getProviderSearchDisplayFields());
+        pageModel.addAttribute("personSearchDisplayFields", globalProperties.getPersonSearchDisplayFields());
     }
 }
@@ -17,6 +17,7 @@ package org.openmrs.module.providermanagement.page.controller;
 import org.openmrs.Person;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalPropertySnapshot;
 import org.openmrs.module.providermanagement.ProviderManagementWebUtil;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.comparator.PersonByFirstNameComparator;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class SimilarPeoplePageController {
 
@@ -51,10 +53,11 @@ public class SimilarPeoplePageController {
             }
 
             // otherwise, split into two lists, one of providers and the other of persons
+            Set<Integer> providerPersonIds = Context.getService(ProviderManagementService.class).getProviderPersonIds(similarPeople);
             Iterator<Person> i = similarPeople.iterator();
             while (i.hasNext()) {
                 Person p = i.next();
-                if (Context.getService(ProviderManagementService.class).isProvider(p)) {
+                if (providerPersonIds.contains(p.getId())) {
                     similarProviders.add(p);
                     i.remove();
                 }
@@ -66,13 +69,14 @@ public class SimilarPeoplePageController {
 
             // add the lists, as well as the original name, to the page model
             // (note that we have to convert similarProviders to a simple object so that we can pick up the associated provider attributes; similarPersons is fine as-is)
+            ProviderManagementGlobalPropertySnapshot globalProperties = ProviderManagementGlobalProperties.getSnapshot();
             pageModel.addAttribute("similarPeople",similarPeople);
-            pageModel.addAttribute("similarProviders", ProviderManagementWebUtil.convertPersonListToSimpleObjectList(similarProviders, ui, ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS().values().toArray(new String [0])));
+            pageModel.addAttribute("similarProviders", ProviderManagementWebUtil.convertPersonListToSimpleObjectList(similarProviders, ui, globalProperties.getProviderSearchDisplayFields().values().toArray(new String [0])));
             pageModel.addAttribute("name",name);
 
             // add the global properties that specifies the fields to display in the provider and patient search results
-            pageModel.addAttribute("providerSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PROVIDER_SEARCH_DISPLAY_FIELDS());
-            pageModel.addAttribute("personSearchDisplayFields", ProviderManagementGlobalProperties.GLOBAL_PROPERTY_PERSON_SEARCH_DISPLAY_FIELDS());
+            pageModel.addAttribute("providerSearchDisplayFields", globalProperties.getProviderSearchDisplayFields());
+            pageModel.addAttribute("personSearchDisplayFields", globalProperties.getPersonSearchDisplayFields());
 
             // in this case we just want to use the default page view, so return null
             return null;
@@ -0,0 +1,97 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement.web.controller;
+
+import org.openmrs.Person;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.ProviderManagementGlobalProperties;
+import org.openmrs.module.providermanagement.ProviderRole;
+import org.openmrs.module.providermanagement.ProviderSearchStreamWriter;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.ui.framework.UiUtils;
+import org.openmrs.ui.framework.formatter.FormatterService;
+import org.openmrs.ui.framework.fragment.FragmentActionUiUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming counterpart of the providerSearch fragment's getProviders action, for exports and other searches with
+ * too many results to build in memory: it takes the same parameters (roles and persons by id), and the results are
+ * scrolled through and written straight to the response as a JSON array, in the same format as the fragment action
+ */
+@Controller
+public class ProviderSearchStreamController {
+
+    @Autowired
+    private FormatterService formatterService;
+
+    @RequestMapping("/module/providermanagement/streamProviders.form")
+    public void streamProviders(@RequestParam(value="searchValue", required=true) String searchValue,
+                                @RequestParam(value="includeRetired", required=false) Boolean includeRetired,
+                                @RequestParam(value="excludeSuperviseesOf", required=false) Integer excludeSuperviseesOf,
+                                @RequestParam(value="excludeProvider", required=false) Integer excludeProvider,
+                                @RequestParam(value="providerRoles[]", required=false) Integer[] providerRoles,
+                                @RequestParam(value="resultFields[]", required=false) String[] resultFields,
+                                HttpServletResponse response)
+            throws IOException {
+
+        if (resultFields == null || resultFields.length == 0) {
+            resultFields = new String[] {"personName"};
+        }
+
+        // default is to not include retired providers
+        includeRetired = includeRetired != null ? includeRetired : false;
+
+        ProviderManagementService providerManagementService = Context.getService(ProviderManagementService.class);
+
+        List<ProviderRole> providerRoleList = null;
+        if (providerRoles != null && providerRoles.length > 0) {
+            providerRoleList = new ArrayList<ProviderRole>();
+            for (Integer providerRoleId : providerRoles) {
+                providerRoleList.add(providerManagementService.getProviderRole(providerRoleId));
+            }
+        }
+        else if (ProviderManagementGlobalProperties.getSnapshot().isRestrictSearchToProvidersWithProviderRoles()) {
+            providerRoleList = providerManagementService.getAllProviderRoles(true);
+        }
+
+        Person excludeSuperviseesOfPerson = excludeSuperviseesOf != null ? Context.getPersonService().getPerson(excludeSuperviseesOf) : null;
+        Person excludeProviderPerson = excludeProvider != null ? Context.getPersonService().getPerson(excludeProvider) : null;
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        // only the formatting of the ui utils is used, as for the fragment action's results
+        UiUtils ui = new FragmentActionUiUtils(null, null, null, formatterService);
+
+        ProviderSearchStreamWriter writer = new ProviderSearchStreamWriter(response.getOutputStream(), resultFields, ui);
+        writer.start();
+        providerManagementService.streamProvidersAsPersons(searchValue, providerRoleList, includeRetired,
+                excludeSuperviseesOfPerson, excludeProviderPerson, writer);
+        writer.finish();
+    }
+
+    public void setFormatterService(FormatterService formatterService) {
+        this.formatterService = formatterService;
+    }
+}
@@ -19,6 +19,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.openmrs.GlobalProperty;
+import org.openmrs.Person;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.openmrs.module.providermanagement.fragment.controller.ProviderSearchFragmentController;
@@ -30,6 +31,7 @@ import org.openmrs.ui.framework.UiUtils;
 import org.openmrs.ui.framework.formatter.FormatterService;
 import org.openmrs.ui.framework.fragment.FragmentActionUiUtils;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -74,6 +76,37 @@ public class ProviderSearchFragmentControllerTest extends BaseModuleContextSensi
         Assert.assertEquals("Binome", ((Map<String,Object>) results.get(0).get("provider")).get("providerRole"));
     }
 
+    @Test
+    public void getProvidersPage_shouldReturnRequestedPageWithTotalCount() throws Exception {
+        ProviderSearchFragmentController controller = new ProviderSearchFragmentController();
+        String [] resultFields = new String[] {"provider.identifier"};
+
+        SimpleObject page = controller.getProvidersPage("2a", null, null, null, null, resultFields, 1, 3, ui);
+        Assert.assertEquals(3, ((List<SimpleObject>) page.get("results")).size());
+        Assert.assertEquals(1, page.get("start"));
+        Assert.assertEquals(3, page.get("length"));
+        Assert.assertEquals(5, page.get("totalCount"));
+    }
+
+    @Test
+    public void getProvidersPage_shouldLeaveExcludedProvidersOutOfPageAndTotalCount() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);
+        Context.getService(ProviderManagementService.class).assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+        Context.getService(ProviderManagementService.class).assignProviderToSupervisor(Context.getPersonService().getPerson(7), supervisor);
+
+        ProviderSearchFragmentController controller = new ProviderSearchFragmentController();
+        String [] resultFields = new String[] {"provider.identifier"};
+
+        SimpleObject page = controller.getProvidersPage("2a", null, supervisor, supervisor, null, resultFields, 0, 2, ui);
+        List<SimpleObject> results = (List<SimpleObject>) page.get("results");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(2, page.get("totalCount"));
+        for (SimpleObject result : results) {
+            String identifier = (String) ((Map<String,Object>) result.get("provider")).get("identifier");
+            Assert.assertFalse(Arrays.asList("2a6", "2a7", "2a8").contains(identifier));
+        }
+    }
+
     @Test
     public void getProviders_shouldExcludeProvidersWithoutProviderRoleIfGlobalPropSetToFalse() throws Exception {
 
@@ -0,0 +1,89 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.Person;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.module.providermanagement.fragment.controller.ProviderSearchFragmentController;
+import org.openmrs.module.providermanagement.web.controller.ProviderSearchStreamController;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.openmrs.ui.framework.Formatter;
+import org.openmrs.ui.framework.FormatterImpl;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+import org.openmrs.ui.framework.formatter.FormatterService;
+import org.openmrs.ui.framework.fragment.FragmentActionUiUtils;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+public class ProviderSearchStreamControllerTest extends BaseModuleContextSensitiveTest {
+
+    protected static final String XML_DATASET_PATH = "org/openmrs/module/providermanagement/include/";
+
+    protected static final String XML_DATASET = "providerManagement-dataset.xml";
+
+    private UiUtils ui;
+
+    private ProviderSearchStreamController controller;
+
+    @Before
+    public void init() throws Exception {
+        FormatterService fs = Mockito.mock(FormatterService.class);
+        Formatter f = new FormatterImpl(Context.getMessageSourceService(), null);
+        Mockito.when(fs.getFormatter()).thenReturn(f);
+        this.ui = new FragmentActionUiUtils(null, null, null, fs);
+
+        controller = new ProviderSearchStreamController();
+        controller.setFormatterService(fs);
+
+        // execute the provider management test dataset
+        executeDataSet(XML_DATASET_PATH + XML_DATASET);
+    }
+
+    @Test
+    public void streamProviders_shouldWriteSameResultsAsFragmentAction() throws Exception {
+        String [] resultFields = new String[] {"gender", "personName.givenName", "personAddress.cityVillage", "provider.identifier", "provider.providerRole"};
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.streamProviders("2a7", null, null, null, null, resultFields, response);
+
+        List<SimpleObject> expected = new ProviderSearchFragmentController().getProviders("2a7", null, null, null, null, resultFields, ui);
+        Assert.assertEquals(1, expected.size());
+        Assert.assertEquals(expected, new ObjectMapper().readValue(response.getContentAsString(), List.class));
+    }
+
+    @Test
+    public void streamProviders_shouldLeaveOutSuperviseesOfSupervisorAndExcludedProvider() throws Exception {
+        Person supervisor = Context.getPersonService().getPerson(8);
+        Context.getService(ProviderManagementService.class).assignProviderToSupervisor(Context.getPersonService().getPerson(6), supervisor);
+        String [] resultFields = new String[] {"gender", "personName.givenName"};
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.streamProviders("2a", null, 8, 7, null, resultFields, response);
+
+        List<SimpleObject> expected = new ProviderSearchFragmentController().getProviders("2a", null, supervisor,
+                Context.getPersonService().getPerson(7), null, resultFields, ui);
+        Assert.assertEquals(3, expected.size());
+        Assert.assertEquals(expected, new ObjectMapper().readValue(response.getContentAsString(), List.class));
+    }
+}
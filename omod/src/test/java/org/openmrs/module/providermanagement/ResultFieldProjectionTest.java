@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.providermanagement;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+
+import java.util.Map;
+
+public class ResultFieldProjectionTest {
+
+    private UiUtils ui;
+
+    @Before
+    public void init() {
+        // format everything as its string value
+        ui = Mockito.mock(UiUtils.class);
+        Mockito.when(ui.format(Mockito.any())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return String.valueOf(invocation.getArguments()[0]);
+            }
+        });
+    }
+
+    @Test
+    public void toSimpleObject_shouldWriteNestedFieldsAsNestedObjects() throws Exception {
+        ResultFieldProjection projection = ResultFieldProjection.forFields(new String[] {"gender", "personName.givenName", "personName.familyName"});
+
+        SimpleObject result = ResultFieldProjection.toSimpleObject(createPerson(), projection.getPersonFields(), ui);
+
+        Assert.assertEquals("F", result.get("gender"));
+        Assert.assertEquals("7", result.get("id"));
+        Map<String, Object> personName = (Map<String, Object>) result.get("personName");
+        Assert.assertEquals(2, personName.size());
+        Assert.assertEquals("Collet", personName.get("givenName"));
+        Assert.assertEquals("Test", personName.get("familyName"));
+    }
+
+    @Test
+    public void toSimpleObject_shouldReturnNullForFieldsWithANullIntermediateValue() throws Exception {
+        ResultFieldProjection projection = ResultFieldProjection.forFields(new String[] {"personAddress.cityVillage"});
+
+        // the person has no address
+        SimpleObject result = ResultFieldProjection.toSimpleObject(createPerson(), projection.getPersonFields(), ui);
+
+        Map<String, Object> personAddress = (Map<String, Object>) result.get("personAddress");
+        Assert.assertTrue(personAddress.containsKey("cityVillage"));
+        Assert.assertNull(personAddress.get("cityVillage"));
+    }
+
+    @Test
+    public void forFields_shouldSeparateProviderFieldsFromPersonFields() throws Exception {
+        ResultFieldProjection projection = ResultFieldProjection.forFields(new String[] {"gender", "provider.identifier", "provider.person.gender"});
+
+        Assert.assertTrue(projection.hasProviderFields());
+        Assert.assertEquals(2, projection.getPersonFields().size()); // gender and id
+        Assert.assertEquals(2, projection.getProviderFields().size());
+
+        Provider provider = new Provider();
+        provider.setIdentifier("2a7");
+        provider.setPerson(createPerson());
+
+        SimpleObject result = ResultFieldProjection.toSimpleObject(provider, projection.getProviderFields(), ui);
+        Assert.assertEquals("2a7", result.get("identifier"));
+        Assert.assertEquals("F", ((Map<String, Object>) result.get("person")).get("gender"));
+        Assert.assertFalse(result.containsKey("provider"));
+    }
+
+    @Test
+    public void forFields_shouldNotHaveProviderFieldsIfNoneRequested() throws Exception {
+        Assert.assertFalse(ResultFieldProjection.forFields(new String[] {"gender"}).hasProviderFields());
+    }
+
+    private Person createPerson() {
+        Person person = new Person(7);
+        person.setGender("F");
+        person.addName(new PersonName("Collet", null, "Test"));
+        return person;
+    }
+}